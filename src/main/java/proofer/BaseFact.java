@@ -27,6 +27,11 @@ public enum BaseFact implements Statable {
     public Statable[] getOperands() {
         return new Statable[] {this};
     }
+
+    @Override
+    public boolean isAtomic() {
+        return true;
+    }
     
     @Override
     public String toString() {
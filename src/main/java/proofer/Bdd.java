@@ -0,0 +1,480 @@
+package proofer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A reduced ordered binary decision diagram package. Nodes are ints indexing
+ * into parallel arrays, and every node is made unique through a hash table,
+ * so two formulas are logically equivalent exactly when they convert to the
+ * same node and a formula is a tautology exactly when it converts to TRUE.
+ *
+ * All operators are built on if-then-else, whose results are memoized in a
+ * direct mapped computed table. Nodes stay put until gc() is called; callers
+ * that keep nodes across calls to fromStatable() must ref() them, since
+ * fromStatable() may collect everything that is not referenced.
+ *
+ * @author Ryan Kenney
+ */
+public class Bdd {
+
+    public static final int FALSE = 0;
+    public static final int TRUE = 1;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private static final int CACHE_BITS = 12;
+    private static final int FREE = -1;
+    private final BaseFact[] order;
+    private final int[] levelOf;
+    private int[] level, low, high, next, refs;
+    private int[] table;
+    private int capacity, used, live, freeList = FREE;
+    private final int[] cacheF, cacheG, cacheH, cacheR;
+    private long cacheHits, cacheLookups;
+    private int gcThreshold, gcRuns;
+    private long freed;
+
+    /**
+     * Creates a BDD package over the variables in the given order
+     *
+     * @param order The variables, the first one being tested at the root
+     */
+    public Bdd(List<BaseFact> order) {
+	this.order = order.toArray(new BaseFact[order.size()]);
+	levelOf = new int[BaseFact.values().length];
+	Arrays.fill(levelOf, -1);
+	for (int i = 0; i < this.order.length; i++) {
+	    levelOf[this.order[i].ordinal()] = i;
+	}
+	allocate(INITIAL_CAPACITY);
+	int cacheSize = 1 << CACHE_BITS;
+	cacheF = new int[cacheSize];
+	cacheG = new int[cacheSize];
+	cacheH = new int[cacheSize];
+	cacheR = new int[cacheSize];
+	Arrays.fill(cacheF, FREE);
+	gcThreshold = INITIAL_CAPACITY / 2;
+	reset();
+    }
+
+    /**
+     * Creates a BDD package whose variable order is picked for the given
+     * formulas
+     *
+     * @param formulas The formulas that will be converted
+     * @return The package
+     */
+    public static Bdd forFormulas(List<Statable> formulas) {
+	return new Bdd(orderFor(formulas));
+    }
+
+    /**
+     * Picks a variable order by first appearance in a depth first walk of
+     * the formulas. Variables that occur close together in a formula end up
+     * close together in the order, which keeps most diagrams small. Unused
+     * variables go last.
+     *
+     * @param formulas The formulas to order for
+     * @return Every variable, in the picked order
+     */
+    public static List<BaseFact> orderFor(List<Statable> formulas) {
+	List<BaseFact> ret = new ArrayList<>();
+	for (Statable s : formulas) {
+	    collect(s, ret);
+	}
+	for (BaseFact b : BaseFact.values()) {
+	    if (!ret.contains(b)) {
+		ret.add(b);
+	    }
+	}
+	return ret;
+    }
+
+    /**
+     * @return the variable order, the first one being tested at the root
+     */
+    public List<BaseFact> getOrder() {
+	return Collections.unmodifiableList(Arrays.asList(order));
+    }
+
+    /**
+     * Converts s into a node. May collect unreferenced nodes first.
+     *
+     * @param s The formula to convert
+     * @return The node of s
+     */
+    public int fromStatable(Statable s) {
+	if (live > gcThreshold) {
+	    gc();
+	    // Grow the threshold if most nodes survived
+	    if (live > gcThreshold / 2) {
+		gcThreshold *= 2;
+	    }
+	}
+	return build(s);
+    }
+
+    /**
+     * @param s The formula to check
+     * @return True if s holds under every assignment, false otherwise
+     */
+    public boolean isTautology(Statable s) {
+	return fromStatable(s) == TRUE;
+    }
+
+    /**
+     * Checks if a and b hold under exactly the same assignments
+     *
+     * @param a The first formula
+     * @param b The second formula
+     * @return True if a and b are logically equivalent, false otherwise
+     */
+    public boolean isEquivalent(Statable a, Statable b) {
+	int na = ref(fromStatable(a));
+	int nb = fromStatable(b);
+	deref(na);
+	return na == nb;
+    }
+
+    /**
+     * @param v The variable
+     * @return The node testing v
+     */
+    public int var(BaseFact v) {
+	return mk(levelOf[v.ordinal()], FALSE, TRUE);
+    }
+
+    public int not(int f) {
+	return ite(f, FALSE, TRUE);
+    }
+
+    public int and(int f, int g) {
+	return ite(f, g, FALSE);
+    }
+
+    public int or(int f, int g) {
+	return ite(f, TRUE, g);
+    }
+
+    public int cond(int f, int g) {
+	return ite(f, g, TRUE);
+    }
+
+    public int bicond(int f, int g) {
+	return ite(f, g, not(g));
+    }
+
+    /**
+     * If f then g else h, the operator every other one is built on
+     *
+     * @param f The condition
+     * @param g The node for when f holds
+     * @param h The node for when f does not hold
+     * @return The resulting node
+     */
+    public int ite(int f, int g, int h) {
+	// Terminal cases
+	if (f == TRUE) {
+	    return g;
+	} else if (f == FALSE) {
+	    return h;
+	} else if (g == h) {
+	    return g;
+	} else if (g == TRUE && h == FALSE) {
+	    return f;
+	}
+
+	int slot = cacheSlot(f, g, h);
+	cacheLookups++;
+	if (cacheF[slot] == f && cacheG[slot] == g && cacheH[slot] == h) {
+	    cacheHits++;
+	    return cacheR[slot];
+	}
+
+	int top = Math.min(level[f], Math.min(level[g], level[h]));
+	int lo = ite(cofactor(f, top, false), cofactor(g, top, false),
+		cofactor(h, top, false));
+	int hi = ite(cofactor(f, top, true), cofactor(g, top, true),
+		cofactor(h, top, true));
+	int r = mk(top, lo, hi);
+
+	cacheF[slot] = f;
+	cacheG[slot] = g;
+	cacheH[slot] = h;
+	cacheR[slot] = r;
+	return r;
+    }
+
+    /**
+     * Protects a node and everything below it from gc()
+     *
+     * @param node The node
+     * @return node, for chaining
+     */
+    public int ref(int node) {
+	refs[node]++;
+	return node;
+    }
+
+    /**
+     * Releases a node protected by ref()
+     *
+     * @param node The node
+     */
+    public void deref(int node) {
+	if (refs[node] > 0) {
+	    refs[node]--;
+	}
+    }
+
+    /**
+     * Frees every node not reachable from a referenced node and empties the
+     * computed table. Node ids of the survivors do not change.
+     */
+    public void gc() {
+	boolean[] marked = new boolean[used];
+	marked[FALSE] = marked[TRUE] = true;
+	for (int i = 2; i < used; i++) {
+	    if (refs[i] > 0 && level[i] >= 0) {
+		mark(i, marked);
+	    }
+	}
+
+	// Sweep into the free list and rebuild the unique table
+	Arrays.fill(table, FREE);
+	freeList = FREE;
+	int survivors = 2;
+	for (int i = used - 1; i >= 2; i--) {
+	    if (marked[i]) {
+		insert(i);
+		survivors++;
+	    } else {
+		if (level[i] >= 0) {
+		    freed++;
+		}
+		level[i] = FREE;
+		next[i] = freeList;
+		freeList = i;
+	    }
+	}
+	live = survivors;
+	Arrays.fill(cacheF, FREE);
+	gcRuns++;
+    }
+
+    /**
+     * Frees every node, referenced or not
+     */
+    public void clear() {
+	Arrays.fill(refs, 0);
+	reset();
+    }
+
+    /**
+     * @return the number of nodes in use, including the two terminals
+     */
+    public int getNodeCount() {
+	return live;
+    }
+
+    /**
+     * @return the number of nodes the arrays can hold before growing
+     */
+    public int getCapacity() {
+	return capacity;
+    }
+
+    /**
+     * @return the number of buckets in the unique table
+     */
+    public int getTableSize() {
+	return table.length;
+    }
+
+    /**
+     * @return the number of entries in the computed table
+     */
+    public int getCacheSize() {
+	return cacheR.length;
+    }
+
+    /**
+     * @return the fraction of computed table lookups that hit
+     */
+    public double getCacheHitRate() {
+	return (cacheLookups == 0) ? 0 : (double) cacheHits / cacheLookups;
+    }
+
+    /**
+     * @return the number of times gc() ran
+     */
+    public int getGcRuns() {
+	return gcRuns;
+    }
+
+    /**
+     * @return the number of nodes freed by gc() so far
+     */
+    public long getFreed() {
+	return freed;
+    }
+
+    /**
+     * @return the number of bytes held by the node arrays and both tables
+     */
+    public long sizeInBytes() {
+	return 4L * (5L * capacity + table.length + 4L * cacheR.length);
+    }
+
+    @Override
+    public String toString() {
+	return getNodeCount() + " nodes, " + getTableSize()
+		+ " unique table buckets, " + getCacheSize()
+		+ " computed table entries, " + getGcRuns() + " collections";
+    }
+
+    private int build(Statable s) {
+	Operator op = s.getOperator();
+	if (op == null) {
+	    if (s instanceof BaseFact) {
+		return var((BaseFact) s);
+	    }
+	    return build(s.getOperands()[0]);
+	} else if (op == Operator.NOT) {
+	    return not(build(s.getOperands()[0]));
+	}
+
+	int l = build(s.getOperands()[0]);
+	int r = build(s.getOperands()[1]);
+	switch (op) {
+	    case AND:
+		return and(l, r);
+	    case OR:
+		return or(l, r);
+	    case COND:
+		return cond(l, r);
+	    default:
+		return bicond(l, r);
+	}
+    }
+
+    /**
+     * Finds or creates the node testing the variable at lvl
+     */
+    private int mk(int lvl, int lo, int hi) {
+	if (lo == hi) {
+	    return lo;
+	}
+	int bucket = hash(lvl, lo, hi) & (table.length - 1);
+	for (int n = table[bucket]; n != FREE; n = next[n]) {
+	    if (level[n] == lvl && low[n] == lo && high[n] == hi) {
+		return n;
+	    }
+	}
+
+	int n;
+	if (freeList != FREE) {
+	    n = freeList;
+	    freeList = next[n];
+	} else {
+	    if (used == capacity) {
+		grow();
+		bucket = hash(lvl, lo, hi) & (table.length - 1);
+	    }
+	    n = used++;
+	}
+	level[n] = lvl;
+	low[n] = lo;
+	high[n] = hi;
+	refs[n] = 0;
+	next[n] = table[bucket];
+	table[bucket] = n;
+	live++;
+	return n;
+    }
+
+    private int cofactor(int f, int lvl, boolean value) {
+	if (level[f] != lvl) {
+	    return f;
+	}
+	return value ? high[f] : low[f];
+    }
+
+    private void mark(int n, boolean[] marked) {
+	while (!marked[n]) {
+	    marked[n] = true;
+	    mark(low[n], marked);
+	    n = high[n];
+	}
+    }
+
+    private void insert(int n) {
+	int bucket = hash(level[n], low[n], high[n]) & (table.length - 1);
+	next[n] = table[bucket];
+	table[bucket] = n;
+    }
+
+    private void allocate(int cap) {
+	capacity = cap;
+	level = new int[cap];
+	low = new int[cap];
+	high = new int[cap];
+	next = new int[cap];
+	refs = new int[cap];
+	table = new int[cap];
+    }
+
+    private void reset() {
+	Arrays.fill(table, FREE);
+	Arrays.fill(cacheF, FREE);
+	freeList = FREE;
+	// Terminals sit below every variable
+	level[FALSE] = level[TRUE] = order.length;
+	used = live = 2;
+    }
+
+    private void grow() {
+	int[] oldLevel = level, oldLow = low, oldHigh = high, oldRefs = refs;
+	allocate(capacity * 2);
+	System.arraycopy(oldLevel, 0, level, 0, used);
+	System.arraycopy(oldLow, 0, low, 0, used);
+	System.arraycopy(oldHigh, 0, high, 0, used);
+	System.arraycopy(oldRefs, 0, refs, 0, used);
+	Arrays.fill(table, FREE);
+	for (int i = 2; i < used; i++) {
+	    if (level[i] >= 0) {
+		insert(i);
+	    }
+	}
+    }
+
+    private int cacheSlot(int f, int g, int h) {
+	return hash(f, g, h) >>> (32 - CACHE_BITS);
+    }
+
+    private static int hash(int a, int b, int c) {
+	int h = a * 0x9E3779B1;
+	h = (h ^ b) * 0x85EBCA6B;
+	h = (h ^ c) * 0xC2B2AE35;
+	return h ^ (h >>> 16);
+    }
+
+    private static void collect(Statable s, List<BaseFact> out) {
+	Operator op = s.getOperator();
+	if (op == null) {
+	    if (s instanceof BaseFact) {
+		if (!out.contains(s)) {
+		    out.add((BaseFact) s);
+		}
+	    } else {
+		collect(s.getOperands()[0], out);
+	    }
+	    return;
+	}
+	collect(s.getOperands()[0], out);
+	if (op != Operator.NOT) {
+	    collect(s.getOperands()[1], out);
+	}
+    }
+}
@@ -0,0 +1,175 @@
+package proofer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A Bloom filter over 64 bit hashes. Answers "definitely absent" or "maybe
+ * present". The bits live either on the heap or in a memory-mapped file, so
+ * large filters need not count against the heap.
+ *
+ * @author Ryan Kenney
+ */
+public class BloomFilter {
+
+    private static final double LN2 = Math.log(2);
+    private static final long MAX_BITS = 8L * Integer.MAX_VALUE;
+    private final LongBuffer words;
+    private final long bitCount;
+    private final int hashes;
+    private final RandomAccessFile file;
+    private long insertions = 0;
+
+    private BloomFilter(LongBuffer words, long bitCount, int hashes,
+	    RandomAccessFile file) {
+	this.words = words;
+	this.bitCount = bitCount;
+	this.hashes = hashes;
+	this.file = file;
+    }
+
+    /**
+     * Creates a filter on the heap
+     *
+     * @param expected The number of insertions the filter is sized for
+     * @param fpp The false positive probability wanted at that size
+     * @return The empty filter
+     */
+    public static BloomFilter inMemory(long expected, double fpp) {
+	long bits = optimalBits(expected, fpp);
+	return new BloomFilter(LongBuffer.allocate((int) (bits / 64)), bits,
+		optimalHashes(expected, bits), null);
+    }
+
+    /**
+     * Creates a filter whose bits are mapped from a file. The file is
+     * created or truncated, so the filter starts out empty.
+     *
+     * @param path The file to map
+     * @param expected The number of insertions the filter is sized for
+     * @param fpp The false positive probability wanted at that size
+     * @return The empty filter
+     * @throws IOException The file could not be mapped
+     */
+    public static BloomFilter mapped(File path, long expected, double fpp)
+	    throws IOException {
+	long bits = optimalBits(expected, fpp);
+	RandomAccessFile raf = new RandomAccessFile(path, "rw");
+	try {
+	    raf.setLength(0);
+	    LongBuffer words = raf.getChannel()
+		    .map(FileChannel.MapMode.READ_WRITE, 0, bits / 8)
+		    .asLongBuffer();
+	    return new BloomFilter(words, bits, optimalHashes(expected, bits), raf);
+	} catch (IOException ex) {
+	    raf.close();
+	    throw ex;
+	}
+    }
+
+    /**
+     * Records hash as present
+     *
+     * @param hash The hash to add
+     */
+    public void add(long hash) {
+	long h2 = spread(hash);
+	for (int i = 0; i < hashes; i++) {
+	    long bit = Long.remainderUnsigned(hash + i * h2, bitCount);
+	    int word = (int) (bit >>> 6);
+	    words.put(word, words.get(word) | (1L << bit));
+	}
+	insertions++;
+    }
+
+    /**
+     * Checks for hash
+     *
+     * @param hash The hash to look for
+     * @return False if hash was definitely never added, true otherwise
+     */
+    public boolean mightContain(long hash) {
+	long h2 = spread(hash);
+	for (int i = 0; i < hashes; i++) {
+	    long bit = Long.remainderUnsigned(hash + i * h2, bitCount);
+	    if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Empties the filter
+     */
+    public void clear() {
+	for (int i = 0; i < words.capacity(); i++) {
+	    words.put(i, 0L);
+	}
+	insertions = 0;
+    }
+
+    /**
+     * @return the number of add() calls since the filter was created or
+     * cleared
+     */
+    public long getInsertions() {
+	return insertions;
+    }
+
+    /**
+     * @return the number of bytes used by the bit array
+     */
+    public long sizeInBytes() {
+	return bitCount / 8;
+    }
+
+    /**
+     * Releases the mapped file, if any. The filter must not be used after.
+     *
+     * @throws IOException The file could not be closed
+     */
+    public void close() throws IOException {
+	if (file != null) {
+	    file.close();
+	}
+    }
+
+    /**
+     * Hashes a String to 64 bits (FNV-1a) for use as a filter key
+     *
+     * @param key The String to hash
+     * @return The hash of key
+     */
+    public static long hash(String key) {
+	long h = 0xCBF29CE484222325L;
+	for (int i = 0; i < key.length(); i++) {
+	    h = (h ^ key.charAt(i)) * 0x100000001B3L;
+	}
+	return h;
+    }
+
+    private static long optimalBits(long expected, double fpp) {
+	long bits = (long) (-Math.max(expected, 1) * Math.log(fpp) / (LN2 * LN2));
+	// Round up to whole words
+	bits = Math.max(64, (bits + 63) & ~63L);
+	return Math.min(bits, MAX_BITS);
+    }
+
+    private static int optimalHashes(long expected, long bits) {
+	return Math.max(1, (int) Math.round((double) bits / Math.max(expected, 1) * LN2));
+    }
+
+    /**
+     * Derives the second hash for double hashing, forced odd so successive
+     * probes never collapse onto one bit
+     */
+    private static long spread(long h) {
+	h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+	h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+	return (h ^ (h >>> 33)) | 1L;
+    }
+}
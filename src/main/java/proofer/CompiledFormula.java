@@ -0,0 +1,260 @@
+package proofer;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A formula compiled into a tree of MethodHandles that evaluates 64 truth
+ * assignments per call. Each variable is passed in as a long whose bit k is
+ * the variable's value in assignment k, and the result holds the formula's
+ * value for each of the 64 assignments. The JIT compiles the handle tree down
+ * to straight-line bitwise code, so enumerating models costs a few
+ * instructions per 64 assignments instead of a tree walk per assignment.
+ *
+ * @author Ryan Kenney
+ */
+public class CompiledFormula {
+
+    /**
+     * Bit patterns that enumerate the 64 assignments of the first six
+     * variables within one block
+     */
+    private static final long[] PATTERNS = {
+	0xAAAAAAAAAAAAAAAAL, 0xCCCCCCCCCCCCCCCCL, 0xF0F0F0F0F0F0F0F0L,
+	0xFF00FF00FF00FF00L, 0xFFFF0000FFFF0000L, 0xFFFFFFFF00000000L
+    };
+    private static final MethodHandle GET, NOT, AND, OR, COND, BICOND;
+
+    static {
+	MethodHandles.Lookup lookup = MethodHandles.lookup();
+	MethodType unary = MethodType.methodType(long.class, long.class);
+	MethodType binary = MethodType.methodType(long.class, long.class, long.class);
+	try {
+	    GET = MethodHandles.arrayElementGetter(long[].class);
+	    NOT = lookup.findStatic(CompiledFormula.class, "not", unary);
+	    AND = lookup.findStatic(CompiledFormula.class, "and", binary);
+	    OR = lookup.findStatic(CompiledFormula.class, "or", binary);
+	    COND = lookup.findStatic(CompiledFormula.class, "cond", binary);
+	    BICOND = lookup.findStatic(CompiledFormula.class, "bicond", binary);
+	} catch (NoSuchMethodException | IllegalAccessException ex) {
+	    throw new ExceptionInInitializerError(ex);
+	}
+    }
+    private final MethodHandle handle;
+    private final List<BaseFact> variables;
+
+    private CompiledFormula(MethodHandle handle, List<BaseFact> variables) {
+	this.handle = handle;
+	this.variables = variables;
+    }
+
+    /**
+     * Compiles a formula
+     *
+     * @param s The formula
+     * @return The compiled formula
+     */
+    public static CompiledFormula compile(Statable s) {
+	List<BaseFact> variables = new ArrayList<>();
+	collectVariables(s, variables);
+	Collections.sort(variables);
+	return new CompiledFormula(build(s, variables), variables);
+    }
+
+    /**
+     * Checks if conclusion follows from premises, by compiling
+     * (premise ^ ... ^ premise) -> conclusion and checking that it is a
+     * tautology
+     *
+     * @param premises The premises
+     * @param conclusion The conclusion
+     * @return True if the argument is valid, false otherwise
+     */
+    public static boolean isValid(List<Statable> premises, Statable conclusion) {
+	return compile(implication(premises, conclusion)).isTautology();
+    }
+
+    /**
+     * Builds (premise ^ ... ^ premise) -> conclusion, or just conclusion when
+     * there are no premises
+     *
+     * @param premises The premises
+     * @param conclusion The conclusion
+     * @return The implication
+     */
+    public static Statable implication(List<Statable> premises, Statable conclusion) {
+	if (premises.isEmpty()) {
+	    return conclusion;
+	}
+	Statable conj = premises.get(premises.size() - 1);
+	for (int i = premises.size() - 2; i >= 0; i--) {
+	    conj = Statement.compose(Operator.AND, premises.get(i), conj);
+	}
+	return Statement.compose(Operator.COND, conj, conclusion);
+    }
+
+    /**
+     * @return the variables of the formula, in the order evaluate() expects
+     * their values
+     */
+    public List<BaseFact> getVariables() {
+	return Collections.unmodifiableList(variables);
+    }
+
+    /**
+     * Evaluates the formula over 64 assignments at once
+     *
+     * @param values values[i] holds the 64 values of variable i
+     * @return Bit k is the value of the formula under assignment k
+     */
+    public long evaluate(long[] values) {
+	try {
+	    return (long) handle.invokeExact(values);
+	} catch (RuntimeException | Error ex) {
+	    throw ex;
+	} catch (Throwable ex) {
+	    throw new IllegalStateException(ex);
+	}
+    }
+
+    /**
+     * @return True if the formula holds under every assignment, false
+     * otherwise
+     */
+    public boolean isTautology() {
+	return findAssignment(false) < 0;
+    }
+
+    /**
+     * @return True if the formula holds under some assignment, false
+     * otherwise
+     */
+    public boolean isSatisfiable() {
+	return findAssignment(true) >= 0;
+    }
+
+    /**
+     * Finds an assignment under which the formula takes the given value
+     *
+     * @param value The value to look for
+     * @return The assignment, bit i holding the value of variable i, or -1 if
+     * there is none
+     */
+    public long findAssignment(boolean value) {
+	int n = variables.size();
+	long[] values = new long[n];
+	long blocks = (n <= 6) ? 1 : 1L << (n - 6);
+	long valid = (n >= 6) ? -1L : (1L << (1 << n)) - 1;
+	for (long block = 0; block < blocks; block++) {
+	    fill(values, block);
+	    long result = evaluate(values);
+	    long hits = (value ? result : ~result) & valid;
+	    if (hits != 0) {
+		return (block << 6) | Long.numberOfTrailingZeros(hits);
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * @return the number of assignments to the formula's variables under
+     * which the formula holds
+     */
+    public long countModels() {
+	int n = variables.size();
+	long[] values = new long[n];
+	long blocks = (n <= 6) ? 1 : 1L << (n - 6);
+	long valid = (n >= 6) ? -1L : (1L << (1 << n)) - 1;
+	long count = 0;
+	for (long block = 0; block < blocks; block++) {
+	    fill(values, block);
+	    count += Long.bitCount(evaluate(values) & valid);
+	}
+	return count;
+    }
+
+    /**
+     * Sets up the values of every variable for one block of 64 assignments
+     */
+    private static void fill(long[] values, long block) {
+	for (int i = 0; i < values.length; i++) {
+	    values[i] = (i < 6) ? PATTERNS[i]
+		    : (((block >>> (i - 6)) & 1) != 0) ? -1L : 0L;
+	}
+    }
+
+    private static MethodHandle build(Statable s, List<BaseFact> variables) {
+	Operator op = s.getOperator();
+	if (op == null) {
+	    if (s instanceof BaseFact) {
+		return MethodHandles.insertArguments(GET, 1, variables.indexOf(s));
+	    }
+	    return build(s.getOperands()[0], variables);
+	}
+	MethodHandle left = build(s.getOperands()[0], variables);
+	if (op == Operator.NOT) {
+	    return MethodHandles.filterReturnValue(left, NOT);
+	}
+	MethodHandle right = build(s.getOperands()[1], variables);
+	MethodHandle combine;
+	switch (op) {
+	    case AND:
+		combine = AND;
+		break;
+	    case OR:
+		combine = OR;
+		break;
+	    case COND:
+		combine = COND;
+		break;
+	    default:
+		combine = BICOND;
+		break;
+	}
+	// (long[], long[])long, then feed the same array to both sides
+	MethodHandle both = MethodHandles.filterArguments(combine, 0, left, right);
+	return MethodHandles.permuteArguments(both,
+		MethodType.methodType(long.class, long[].class), 0, 0);
+    }
+
+    private static void collectVariables(Statable s, List<BaseFact> out) {
+	if (s.getOperator() == null) {
+	    if (s instanceof BaseFact) {
+		if (!out.contains(s)) {
+		    out.add((BaseFact) s);
+		}
+	    } else {
+		collectVariables(s.getOperands()[0], out);
+	    }
+	    return;
+	}
+	collectVariables(s.getOperands()[0], out);
+	if (s.getOperator() != Operator.NOT) {
+	    collectVariables(s.getOperands()[1], out);
+	}
+    }
+
+    private static long not(long a) {
+	return ~a;
+    }
+
+    private static long and(long a, long b) {
+	return a & b;
+    }
+
+    private static long or(long a, long b) {
+	return a | b;
+    }
+
+    private static long cond(long a, long b) {
+	return ~a | b;
+    }
+
+    private static long bicond(long a, long b) {
+	return ~(a ^ b);
+    }
+}
@@ -0,0 +1,148 @@
+package proofer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs another Prover with Conditional Proof. To prove (A -> B) it assumes A,
+ * searches for a proof of B from the premises and A, and closes the
+ * sub-proof with CP. Consequents that are conditionals themselves are
+ * handled the same way, so (A -> (B -> C)) becomes a search for C with both
+ * A and B assumed.
+ *
+ * Searching for B is far cheaper than searching for (A -> B): A is there to
+ * be used directly instead of being reached through Hypothetical Syllogism
+ * or Absorption chains, and the goal is smaller. If the conditional search
+ * fails, the conclusion is searched for directly.
+ *
+ * @author Ryan Kenney
+ */
+public class ConditionalProver implements Prover {
+
+    private final Prover prover;
+
+    /**
+     * @param prover The prover to run on the consequents
+     */
+    public ConditionalProver(Prover prover) {
+	this.prover = prover;
+    }
+
+    @Override
+    public Proof search(List<Statable> premises, Statable conclusion)
+	    throws IOException {
+	Statable c = unwrap(conclusion);
+	if (c.getOperator() == Operator.COND && !isPremise(premises, conclusion)) {
+	    Statable antecedent = c.getOperands()[0];
+	    Statable consequent = c.getOperands()[1];
+	    List<Statable> assumed = new ArrayList<>(premises);
+	    assumed.add(antecedent);
+	    Proof sub = search(assumed, consequent);
+	    Proof proof = (sub == null) ? null
+		    : discharge(sub, antecedent, conclusion);
+	    if (proof != null) {
+		return proof;
+	    }
+	    if (Thread.currentThread().isInterrupted()) {
+		return null;
+	    }
+	}
+	return prover.search(premises, conclusion);
+    }
+
+    /**
+     * Turns a proof of the consequent that takes the antecedent as a premise
+     * into a proof of the conditional. The other premises come first, then
+     * the antecedent as an assumption, then the derived lines in their
+     * original order, then the CP line.
+     *
+     * @param sub The proof of the consequent
+     * @param antecedent The antecedent, a premise of sub
+     * @param conclusion The conditional
+     * @return The proof of the conditional, or null if sub never derives
+     * the consequent
+     */
+    private static Proof discharge(Proof sub, Statable antecedent,
+	    Statable conclusion) {
+	int size = sub.size();
+	int[] renumber = new int[size + 1];
+	List<ProofStep> steps = new ArrayList<>();
+	int assumed = 0;
+	for (int line = 1; line <= size; line++) {
+	    ProofStep step = sub.getStep(line);
+	    if (step.getRule() != null) {
+		continue;
+	    }
+	    if (assumed == 0 && !step.isAssumption()
+		    && step.getFact().toString().equals(antecedent.toString())) {
+		assumed = line;
+	    } else if (step.isPremise()) {
+		steps.add(step);
+		renumber[line] = steps.size();
+	    }
+	}
+
+	steps.add(ProofStep.assumption(antecedent));
+	int assumption = steps.size();
+	if (assumed != 0) {
+	    renumber[assumed] = assumption;
+	}
+	int goal = 0;
+	String goalKey = sub.getConclusion().toString();
+	for (int line = 1; line <= size; line++) {
+	    ProofStep step = sub.getStep(line);
+	    if (step.isPremise() || line == assumed) {
+		continue;
+	    }
+	    int[] refs = step.getReferences().clone();
+	    for (int i = 0; i < refs.length; i++) {
+		refs[i] = renumber[refs[i]];
+	    }
+	    steps.add(step.isAssumption() ? step : new ProofStep(step.getFact(),
+		    step.getRule(), refs, step.getCoordinates()));
+	    renumber[line] = steps.size();
+	    if (goal == 0 && sub.isVisible(line, size + 1)
+		    && step.getFact().toString().equals(goalKey)) {
+		goal = steps.size();
+	    }
+	}
+	if (goal == 0) {
+	    // The consequent was already a premise
+	    for (int line = 1; line <= size && goal == 0; line++) {
+		if (sub.isVisible(line, size + 1) && sub.getStep(line)
+			.getFact().toString().equals(goalKey)) {
+		    goal = renumber[line];
+		}
+	    }
+	}
+	if (goal == 0) {
+	    return null;
+	}
+
+	Statable result = Statement.compose(Operator.COND, antecedent,
+		steps.get(goal - 1).getFact());
+	steps.add(new ProofStep(result, Rule.CP, assumption, goal));
+	return new Proof(steps, conclusion);
+    }
+
+    private static boolean isPremise(List<Statable> premises, Statable s) {
+	for (Statable premise : premises) {
+	    if (premise.toString().equals(s.toString())) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Skips the operator-less Statements the parser wraps around
+     * sub-formulas
+     */
+    private static Statable unwrap(Statable s) {
+	while (s.getOperator() == null && !s.isAtomic()) {
+	    s = s.getOperands()[0];
+	}
+	return s;
+    }
+}
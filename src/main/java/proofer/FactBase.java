@@ -1,8 +1,14 @@
 package proofer;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  *
@@ -12,25 +18,592 @@ public class FactBase extends HashMap<Integer, Statable> {
 
     private Statable conclusion;
     private int index = 1;
+    private final Map<String, Integer> lines = new HashMap<>();
+    private final Map<String, Integer> normalized = new HashMap<>();
+    private final List<Statable> archive = new ArrayList<>();
+    private final Set<String> citable = new HashSet<>();
+    private final Map<Integer, ProofStep> justifications = new HashMap<>();
+    private final List<Integer> frames = new ArrayList<>();
+    private final TermIndex terms = new TermIndex();
+    private SessionBudget budget = new SessionBudget();
+    private boolean redundancyFilter = false;
+    private boolean canonical = false;
+    private BloomFilter filter = BloomFilter.inMemory(FILTER_CAPACITY, FILTER_FPP);
+    private long filterCapacity = FILTER_CAPACITY;
+    private Bdd bdd;
     public static final String WILDCARD = "*";
+    private static final long FILTER_CAPACITY = 1024;
+    private static final double FILTER_FPP = 0.01;
 
     /**
-     * Adds e to the FactBase
+     * Adds e to the FactBase as a premise
      *
      * @param e The Statable to add
      * @return True if e was added, false otherwise
      */
     public boolean add(Statable e) {
-	for (Statable s : this.values()) {
-	    if (s.equals(e)) {
-		return false;
-	    }
+	return add(e, new ProofStep(e));
+    }
+
+    /**
+     * Adds e to the FactBase along with its justification
+     *
+     * @param e The Statable to add
+     * @param step The justification of e
+     * @return True if e was added, false otherwise
+     */
+    private boolean add(Statable e, ProofStep step) {
+	String key = keyOf(e);
+	if (isKnown(key)) {
+	    return false;
+	}
+	// Premises are what the user asserts and will cite, so only derived
+	// facts are filtered
+	if (redundancyFilter && !step.isPremise() && isRedundant(e)) {
+	    archive.add(e);
+	    return false;
+	}
+	if (!budget.admit(e)) {
+	    return false;
 	}
 
+	index(e, index);
+	terms.add(e);
+	justifications.put(index, step);
 	super.put(index++, e);
 	return true;
     }
 
+    /**
+     * Puts back a fact along with the justification it had before, ie when a
+     * saved session is loaded. The fact gets the next line even if it is
+     * already known, so steps restored in order keep the lines they were
+     * saved with, even when switching equality modes had left two lines
+     * holding the same fact.
+     *
+     * @param step The fact and its justification
+     * @return The line of the fact
+     */
+    public int restore(ProofStep step) {
+	if (step.isAssumption()) {
+	    return push(step.getFact());
+	} else if (step.getRule() != null && step.getRule().isDischarge()) {
+	    pop();
+	}
+	return place(step.getFact(), step);
+    }
+
+    /**
+     * Opens a sub-proof by assuming s. Until the assumption is discharged,
+     * s and everything derived from it are facts like any other, and lines
+     * outside the sub-proof stay available.
+     *
+     * @param s The assumption
+     * @return The line of the assumption
+     */
+    public int assume(Statable s) {
+	return push(s);
+    }
+
+    /**
+     * Closes the innermost sub-proof. Its lines are dropped from the facts,
+     * since they depend on the assumption, and the result of the rule is
+     * added in their place: (A -> B) for Conditional Proof, where line holds
+     * B, or ~A for Indirect Proof, where line holds a contradiction. The
+     * result gets a line even if it is already known, so the proof always
+     * shows where the sub-proof ends.
+     *
+     * @param rule CP or IP
+     * @param line The line the rule is applied to along with the assumption
+     * @return The line of the result
+     * @throws RuleFormatException There is no sub-proof to close, the line is
+     * not available or the rule does not apply to it
+     */
+    public int discharge(Rule rule, int line) throws RuleFormatException {
+	if (!rule.isDischarge()) {
+	    throw new RuleFormatException(rule.toString(),
+		    "Only CP and IP discharge an assumption");
+	} else if (frames.isEmpty()) {
+	    throw new RuleFormatException(rule.toString(),
+		    "There is no assumption to discharge");
+	}
+	int assumption = frames.get(frames.size() - 1);
+	Statable s = get(line);
+	if (s == null) {
+	    throw new RuleFormatException(rule.toString(),
+		    "Line " + line + " is not available");
+	}
+	Statable result = rule.apply(get(assumption), s);
+	pop();
+	return place(result, new ProofStep(result, rule, assumption, line));
+    }
+
+    /**
+     * Applies Universal or Existential Instantiation, dropping the quantifier
+     * of a line and putting a term in for its variable. Existential
+     * Instantiation must use a constant that occurs nowhere in the proof so
+     * far, nor in the conclusion, since all that is known is that something
+     * satisfies the formula.
+     *
+     * @param rule UI or EI
+     * @param line The quantified line
+     * @param term The term to put in for the variable
+     * @return True if the result was added, false if it was already known
+     * @throws RuleFormatException The line is not available, is not
+     * quantified the way the rule needs or the term may not be used
+     */
+    public boolean instantiate(Rule rule, int line, Term term)
+	    throws RuleFormatException {
+	if (rule != Rule.UI && rule != Rule.EI) {
+	    throw new RuleFormatException(rule.toString(),
+		    "Only UI and EI instantiate a line");
+	}
+	Quantified q = quantified(rule, line, rule == Rule.UI
+		? Quantifier.UNIVERSAL : Quantifier.EXISTENTIAL);
+	if (Quantifiers.binds(q.getBody(), term)) {
+	    throw new RuleFormatException(rule.toString(),
+		    term + " would be captured by a quantifier of line " + line);
+	}
+	if (rule == Rule.EI) {
+	    if (term.isVariable()) {
+		throw new RuleFormatException(rule.toString(),
+			"EI needs a constant, not a variable");
+	    } else if (terms.getConstants().contains(term) || (conclusion != null
+		    && Quantifiers.constants(conclusion).contains(term))) {
+		throw new RuleFormatException(rule.toString(),
+			"The constant " + term + " already occurs in the proof");
+	    }
+	}
+	Statable result = Quantifiers.substitute(q.getBody(), q.getVariable(),
+		term);
+	return add(result, new ProofStep(result, rule, line));
+    }
+
+    /**
+     * Finds the terms Universal Instantiation of a line could usefully put in
+     * for its variable: those that make some predicate of the line match an
+     * atom already among the facts. The term index narrows the atoms each
+     * predicate is tried against.
+     *
+     * @param line The universally quantified line
+     * @return The terms, in the order found, or an empty list if the line is
+     * not universally quantified
+     */
+    public List<Term> instantiationTerms(int line) {
+	List<Term> ret = new ArrayList<>();
+	Statable s = get(line);
+	if (s == null || !(Quantifiers.unwrap(s) instanceof Quantified)) {
+	    return ret;
+	}
+	Quantified q = (Quantified) Quantifiers.unwrap(s);
+	if (q.getQuantifier() != Quantifier.UNIVERSAL) {
+	    return ret;
+	}
+	Set<Term> found = new LinkedHashSet<>();
+	Set<Term> open = new LinkedHashSet<>();
+	open.add(q.getVariable());
+	collectTerms(q.getBody(), q.getVariable(), open, found);
+	for (Term t : found) {
+	    if (!Quantifiers.binds(q.getBody(), t)) {
+		ret.add(t);
+	    }
+	}
+	return ret;
+    }
+
+    /**
+     * Matches the predicates of s that mention variable against the index,
+     * with the variables bound inside s open as well
+     */
+    private void collectTerms(Statable s, Term variable, Set<Term> open,
+	    Set<Term> found) {
+	if (s instanceof Predicate) {
+	    Predicate p = (Predicate) s;
+	    for (Map<Term, Term> binding : terms.match(p, open)) {
+		Term t = binding.get(variable);
+		if (t != null) {
+		    found.add(t);
+		}
+	    }
+	} else if (s instanceof Quantified) {
+	    Quantified q = (Quantified) s;
+	    if (q.getVariable() == variable) {
+		return;
+	    }
+	    Set<Term> inner = new LinkedHashSet<>(open);
+	    inner.add(q.getVariable());
+	    collectTerms(q.getBody(), variable, inner, found);
+	} else if (!s.isAtomic()) {
+	    collectTerms(s.getOperands()[0], variable, open, found);
+	    if (s.getOperator() != null && s.getOperator() != Operator.NOT) {
+		collectTerms(s.getOperands()[1], variable, open, found);
+	    }
+	}
+    }
+
+    /**
+     * Applies Universal or Existential Generalization, binding every free
+     * occurrence of a term of a line to a new quantifier. Universal
+     * Generalization must generalize a variable that is not free in any
+     * premise or open assumption, or it would hold for more than the
+     * arbitrary individual it was shown for. Nor may it be free in a line
+     * obtained by Existential Instantiation, since the constant picked there
+     * may depend on it: from (x)(Ey)Lxy, UI, EI and UG would otherwise yield
+     * (x)Lxa and so (Ey)(x)Lxy.
+     *
+     * @param rule UG or EG
+     * @param line The line to generalize
+     * @param term The term to replace
+     * @param variable The variable of the new quantifier
+     * @return True if the result was added, false if it was already known
+     * @throws RuleFormatException The line is not available or the terms may
+     * not be used
+     */
+    public boolean generalize(Rule rule, int line, Term term, Term variable)
+	    throws RuleFormatException {
+	if (rule != Rule.UG && rule != Rule.EG) {
+	    throw new RuleFormatException(rule.toString(),
+		    "Only UG and EG generalize a line");
+	} else if (!variable.isVariable()) {
+	    throw new RuleFormatException(rule.toString(),
+		    variable + " is not a variable");
+	}
+	Statable s = get(line);
+	if (s == null) {
+	    throw new RuleFormatException(rule.toString(),
+		    "Line " + line + " is not available");
+	} else if (Quantifiers.binds(s, variable) || (variable != term
+		&& Quantifiers.freeVariables(s).contains(variable))) {
+	    throw new RuleFormatException(rule.toString(),
+		    variable + " already occurs in line " + line);
+	}
+	if (rule == Rule.UG) {
+	    if (!term.isVariable()) {
+		throw new RuleFormatException(rule.toString(),
+			"UG needs a variable, not a constant");
+	    }
+	    for (int l = 1; l < index; l++) {
+		ProofStep step = justifications.get(l);
+		if (((step.isPremise() || (step.isAssumption()
+			&& frames.contains(l))) && containsKey(l)
+			|| step.getRule() == Rule.EI)
+			&& Quantifiers.freeVariables(step.getFact()).contains(term)) {
+		    throw new RuleFormatException(rule.toString(),
+			    term + " is free in line " + l);
+		}
+	    }
+	}
+	Statable result = new Quantified(rule == Rule.UG ? Quantifier.UNIVERSAL
+		: Quantifier.EXISTENTIAL, variable,
+		Quantifiers.substitute(Quantifiers.unwrap(s), term, variable));
+	return add(result, new ProofStep(result, rule, line));
+    }
+
+    /**
+     * @return the quantified formula on line, if it has the quantifier the
+     * rule needs
+     */
+    private Quantified quantified(Rule rule, int line, Quantifier quantifier)
+	    throws RuleFormatException {
+	Statable s = get(line);
+	if (s == null) {
+	    throw new RuleFormatException(rule.toString(),
+		    "Line " + line + " is not available");
+	}
+	s = Quantifiers.unwrap(s);
+	if (!(s instanceof Quantified)
+		|| ((Quantified) s).getQuantifier() != quantifier) {
+	    throw new RuleFormatException(rule.toString(), "Line " + line
+		    + " is not " + (quantifier == Quantifier.UNIVERSAL
+		    ? "universally" : "existentially") + " quantified");
+	}
+	return (Quantified) s;
+    }
+
+    /**
+     * @return the number of open sub-proofs
+     */
+    public int getDepth() {
+	return frames.size();
+    }
+
+    /**
+     * @return the line of the innermost open assumption, or 0 if there is
+     * none
+     */
+    public int getAssumption() {
+	return frames.isEmpty() ? 0 : frames.get(frames.size() - 1);
+    }
+
+    /**
+     * Opens a frame. A frame is only the line it starts at: its facts go in
+     * the same map and indexes as the rest, so nothing is copied.
+     */
+    private int push(Statable s) {
+	frames.add(index);
+	return place(s, ProofStep.assumption(s));
+    }
+
+    /**
+     * Gives e a line whether or not it is already known, indexing it only if
+     * it is not
+     */
+    private int place(Statable e, ProofStep step) {
+	if (!isKnown(keyOf(e))) {
+	    index(e, index);
+	}
+	terms.add(e);
+	budget.charge(e);
+	justifications.put(index, step);
+	super.put(index, e);
+	return index++;
+    }
+
+    /**
+     * Closes the innermost frame, unindexing its lines, dropping their atoms
+     * from the term index and giving back what they were charged. Their
+     * justifications are kept so toProof() still shows the sub-proof, and
+     * line numbers are never reused. The membership filter keeps their bits,
+     * which only costs the odd false positive that the index then rules out.
+     */
+    private void pop() {
+	int mark = frames.remove(frames.size() - 1);
+	for (int line = mark; line < index; line++) {
+	    Statable e = super.remove(line);
+	    if (e == null) {
+		continue;
+	    }
+	    budget.release(e);
+	    terms.remove(e);
+	    String key = keyOf(e);
+	    if (Integer.valueOf(line).equals(lines.get(key))) {
+		lines.remove(key);
+	    }
+	    String dnKey = Normalizer.key(e, true, canonical);
+	    if (Integer.valueOf(line).equals(normalized.get(dnKey))) {
+		normalized.remove(dnKey);
+	    }
+	}
+    }
+
+    /**
+     * Checks if s is in the FactBase. In canonical mode facts that are equal
+     * modulo commutation and association count as the same fact.
+     *
+     * @param s The Statable to look for
+     * @return True if s is in the FactBase, false otherwise
+     */
+    public boolean contains(Statable s) {
+	return s != null && isKnown(keyOf(s));
+    }
+
+    /**
+     * Finds the line holding s
+     *
+     * @param s The Statable to look for
+     * @return The line of s, or null if s is not in the FactBase
+     */
+    public Integer lineOf(Statable s) {
+	String key = keyOf(s);
+	return isKnown(key) ? lines.get(key) : null;
+    }
+
+    /**
+     * Finds the first line holding a fact logically equivalent to s
+     *
+     * @param s The Statable to look for
+     * @return The line, or null if no fact is equivalent to s
+     */
+    public Integer findEquivalent(Statable s) {
+	Bdd b = getBdd();
+	int node = b.ref(b.fromStatable(s));
+	try {
+	    for (int line = 1; line < index; line++) {
+		Statable fact = get(line);
+		if (fact != null && b.fromStatable(fact) == node) {
+		    return line;
+		}
+	    }
+	    return null;
+	} finally {
+	    b.deref(node);
+	}
+    }
+
+    /**
+     * @return the decision diagram package used for equivalence checks, or
+     * null if no check has been made yet
+     */
+    public Bdd getBddIfPresent() {
+	return bdd;
+    }
+
+    /**
+     * Creates the decision diagram package on first use, ordering variables
+     * for the facts and conclusion present at that time
+     */
+    private Bdd getBdd() {
+	if (bdd == null) {
+	    List<Statable> formulas = getFacts();
+	    if (conclusion != null) {
+		formulas.add(conclusion);
+	    }
+	    bdd = Bdd.forFormulas(formulas);
+	}
+	return bdd;
+    }
+
+    /**
+     * @return the number of bytes used by the membership filter
+     */
+    public long getFilterSizeInBytes() {
+	return filter.sizeInBytes();
+    }
+
+    /**
+     * Checks the membership filter before the index, so most lookups of
+     * absent facts never touch the index.
+     *
+     * @param key The key of the fact to look for
+     * @return True if a fact with that key is present, false otherwise
+     */
+    private boolean isKnown(String key) {
+	return filter.mightContain(BloomFilter.hash(key)) && lines.containsKey(key);
+    }
+
+    /**
+     * Rebuilds the membership filter from the index, growing it if it is
+     * full
+     */
+    private void rebuildFilter() {
+	while (filterCapacity < 2L * lines.size()) {
+	    filterCapacity *= 2;
+	}
+	filter = BloomFilter.inMemory(filterCapacity, FILTER_FPP);
+	for (String key : lines.keySet()) {
+	    filter.add(BloomFilter.hash(key));
+	}
+    }
+
+    /**
+     * Turns canonical equality on or off. While on, the operands of AND, OR
+     * and BICOND are flattened and sorted before facts are compared, so
+     * (p ^ q) and (q ^ p) are the same fact. Switching re-indexes the facts
+     * already present; facts that become duplicates keep their lines.
+     *
+     * @param canonical True for AC canonical equality, false for syntactic
+     */
+    public void setCanonicalEquality(boolean canonical) {
+	if (this.canonical == canonical) {
+	    return;
+	}
+	this.canonical = canonical;
+	lines.clear();
+	normalized.clear();
+	filter.clear();
+	for (int line = 1; line < index; line++) {
+	    Statable e = get(line);
+	    if (e != null) {
+		index(e, line);
+	    }
+	}
+    }
+
+    /**
+     * @return True if canonical equality is on, false otherwise
+     */
+    public boolean isCanonicalEquality() {
+	return canonical;
+    }
+
+    /**
+     * Records the line of e in the lookup indexes, keeping the earliest line
+     * when several facts share a key.
+     */
+    private void index(Statable e, int line) {
+	String key = keyOf(e);
+	if (!lines.containsKey(key)) {
+	    lines.put(key, line);
+	    filter.add(BloomFilter.hash(key));
+	    if (filter.getInsertions() > filterCapacity) {
+		rebuildFilter();
+	    }
+	}
+	String dnKey = Normalizer.key(e, true, canonical);
+	if (!normalized.containsKey(dnKey)) {
+	    normalized.put(dnKey, line);
+	}
+	if (redundancyFilter) {
+	    cite(e, false);
+	}
+    }
+
+    /**
+     * Records the sub-formulas of s as facts a later step could cite, ie the
+     * antecedent of a conditional for Modus Ponens
+     *
+     * @param s The formula
+     * @param self True to record s itself as well
+     */
+    private void cite(Statable s, boolean self) {
+	s = Quantifiers.unwrap(s);
+	if (self) {
+	    citable.add(s.toString());
+	}
+	if (s instanceof Quantified) {
+	    cite(((Quantified) s).getBody(), true);
+	} else if (!s.isAtomic()) {
+	    cite(s.getOperands()[0], true);
+	    if (s.getOperator() != Operator.NOT) {
+		cite(s.getOperands()[1], true);
+	    }
+	}
+    }
+
+    /**
+     * @return the key identifying s under the current equality mode
+     */
+    private String keyOf(Statable s) {
+	return canonical ? Normalizer.acKey(s) : s.toString();
+    }
+
+    /**
+     * Checks if e is subsumed by the facts already present. A fact is
+     * redundant when it is a double negation (or, in canonical mode, AC)
+     * variant of a known fact, a conjunction of two known facts, or a
+     * disjunction with a known disjunct. The conclusion and the sub-formulas
+     * of the facts are never redundant, since a later step may need them
+     * as they are written.
+     *
+     * @param e The Statable to check
+     * @return True if e adds nothing to the FactBase, false otherwise
+     */
+    private boolean isRedundant(Statable e) {
+	if (citable.contains(Quantifiers.unwrap(e).toString())) {
+	    return false;
+	} else if (knows(e)) {
+	    return true;
+	}
+
+	Statable[] operands = e.getOperands();
+	if (e.getOperator() == Operator.AND) {
+	    return knows(operands[0]) && knows(operands[1]);
+	} else if (e.getOperator() == Operator.OR) {
+	    return knows(operands[0]) || knows(operands[1]);
+	}
+	return false;
+    }
+
+    /**
+     * Checks if s, or a normalized variant of it, is in the FactBase
+     *
+     * @param s The Statable to look for
+     * @return True if s is known, false otherwise
+     */
+    private boolean knows(Statable s) {
+	return normalized.containsKey(Normalizer.key(s, true, canonical));
+    }
+
     /**
      * Attempts to add all members of li to the list.
      *
@@ -47,15 +620,148 @@ public class FactBase extends HashMap<Integer, Statable> {
 	return allEntered;
     }
 
+    /**
+     * Attempts to add the results of a rule application to the list.
+     *
+     * @param li The list of Statables to add
+     * @param rule The rule that derived them
+     * @param references The lines the rule was applied to, 0 for a wildcard
+     * @param coordinates Where a Rule of Replacement was applied, or null
+     * @return True if ALL members of li were entered, false otherwise
+     */
+    public boolean add(List<Statable> li, Rule rule, int[] references,
+	    int[] coordinates) {
+	boolean allEntered = true;
+
+	for (Statable s : li) {
+	    allEntered &= add(s, new ProofStep(s, rule, references, coordinates));
+	}
+
+	return allEntered;
+    }
+
+    /**
+     * Pulls results from a lazy rule application and adds them one at a
+     * time, each justified by the rule and the lines it was applied to.
+     * Nothing past the point where adding stops is ever computed.
+     *
+     * @param results The results, ie from Rule.results()
+     * @param rule The rule that produced them
+     * @param references The lines the rule was applied to
+     * @param coordinates Where a Rule of Replacement was applied, or null
+     * @param goal Stop as soon as this is in the FactBase, or null to never
+     * stop early
+     * @param limit Stop after adding this many facts
+     * @return The number of facts added. Adding also stops at the first
+     * fact the budget rejects.
+     */
+    public int addUntil(Iterator<Statable> results, Rule rule, int[] references,
+	    int[] coordinates, Statable goal, int limit) {
+	int added = 0;
+	long rejected = budget.getRejected();
+	while (added < limit && !contains(goal) && !budget.isExhausted()
+		&& budget.getRejected() == rejected && results.hasNext()) {
+	    Statable s = results.next();
+	    if (add(s, new ProofStep(s, rule, references, coordinates))) {
+		added++;
+	    }
+	}
+	return added;
+    }
+
+    /**
+     * Builds a Proof of the conclusion out of the facts and the way each of
+     * them was justified. Lines of the proof match the lines of the FactBase.
+     *
+     * @return The proof, which may include lines the conclusion does not need
+     */
+    public Proof toProof() {
+	List<ProofStep> steps = new ArrayList<>();
+	for (int line = 1; line < index; line++) {
+	    steps.add(justifications.get(line));
+	}
+	return new Proof(steps, conclusion);
+    }
+
     /**
      * Resets the FactBase to empty
      */
     @Override
     public void clear() {
 	super.clear();
+	lines.clear();
+	normalized.clear();
+	archive.clear();
+	citable.clear();
+	if (redundancyFilter && conclusion != null) {
+	    cite(conclusion, true);
+	}
+	justifications.clear();
+	frames.clear();
+	terms.clear();
+	budget.reset();
+	filter.clear();
+	bdd = null;
 	index = 1;
     }
 
+    /**
+     * Replaces the session's budget. Facts already present are charged to
+     * the new one, whether or not they fit in it.
+     *
+     * @param budget The budget
+     */
+    public void setBudget(SessionBudget budget) {
+	budget.reset();
+	for (Statable s : values()) {
+	    budget.charge(s);
+	}
+	this.budget = budget;
+    }
+
+    /**
+     * @return the budget facts are admitted against
+     */
+    public SessionBudget getBudget() {
+	return budget;
+    }
+
+    /**
+     * Turns the redundancy filter on or off. While on, facts subsumed by the
+     * facts already present are archived instead of added, which keeps the
+     * working set small during wildcard heavy use. Premises, and facts a
+     * later step could cite, the conclusion and the sub-formulas of the
+     * facts, are always added.
+     *
+     * @param redundancyFilter True to filter redundant facts, false otherwise
+     */
+    public void setRedundancyFilter(boolean redundancyFilter) {
+	if (redundancyFilter && !this.redundancyFilter) {
+	    citable.clear();
+	    for (Statable s : values()) {
+		cite(s, false);
+	    }
+	    if (conclusion != null) {
+		cite(conclusion, true);
+	    }
+	}
+	this.redundancyFilter = redundancyFilter;
+    }
+
+    /**
+     * @return True if the redundancy filter is on, false otherwise
+     */
+    public boolean isRedundancyFilter() {
+	return redundancyFilter;
+    }
+
+    /**
+     * @return the facts rejected by the redundancy filter, in arrival order
+     */
+    public List<Statable> getArchive() {
+	return Collections.unmodifiableList(archive);
+    }
+
     /**
      * Retrieves a list of all facts with op as their main operator
      *
@@ -74,6 +780,20 @@ public class FactBase extends HashMap<Integer, Statable> {
 	return ret;
     }
 
+    /**
+     * @return every fact, in line order
+     */
+    public List<Statable> getFacts() {
+	List<Statable> ret = new ArrayList<>(size());
+	for (int line = 1; line < index; line++) {
+	    Statable s = get(line);
+	    if (s != null) {
+		ret.add(s);
+	    }
+	}
+	return ret;
+    }
+
     /**
      * @return the conclusion
      */
@@ -115,5 +835,8 @@ public class FactBase extends HashMap<Integer, Statable> {
      */
     public void setConclusion(Statable conclusion) {
 	this.conclusion = conclusion;
+	if (redundancyFilter && conclusion != null) {
+	    cite(conclusion, true);
+	}
     }
 }
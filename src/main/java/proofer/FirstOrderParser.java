@@ -0,0 +1,128 @@
+package proofer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses first-order formulas, ie "(x)(Fx -> Gx)", "(Ey)(Fy ^ ~Gya)" or
+ * "Fa V p". Predicates are a predicate letter followed by its terms, the
+ * universal quantifier is written (x) and the existential one (Ex).
+ * BaseFacts may be mixed in freely.
+ *
+ * Negation and quantifiers bind to the smallest formula that follows them,
+ * as the quantifier rules need (x)Fx -> Gx to mean ((x)Fx -> Gx), and binary
+ * operators group to the right. Formulas therefore read back the way their
+ * toString() prints them.
+ *
+ * @author Ryan Kenney
+ */
+public final class FirstOrderParser {
+
+    private final String text;
+    private int pos;
+
+    private FirstOrderParser(String text) {
+	this.text = text;
+    }
+
+    /**
+     * Converts a String into a formula
+     *
+     * @param s The String to parse
+     * @return The formula
+     * @throws StatementParsingException The String is not a formula
+     */
+    public static Statable parse(String s) throws StatementParsingException {
+	FirstOrderParser parser = new FirstOrderParser(s.replaceAll(" ", ""));
+	Statable ret = parser.parseBinary();
+	if (parser.pos != parser.text.length()) {
+	    throw new StatementParsingException("Error - Unexpected '"
+		    + parser.text.charAt(parser.pos) + "'");
+	}
+	return ret;
+    }
+
+    private Statable parseBinary() throws StatementParsingException {
+	Statable left = parseUnary();
+	Operator op = parseOperator();
+	if (op == null) {
+	    return left;
+	}
+	return Statement.compose(op, left, parseBinary());
+    }
+
+    private Statable parseUnary() throws StatementParsingException {
+	if (pos >= text.length()) {
+	    throw new StatementParsingException("Error - Expected a statement");
+	}
+	char c = text.charAt(pos);
+	if (c == '~') {
+	    pos++;
+	    return Statement.negation(parseUnary());
+	} else if (c == '(') {
+	    Quantified q = parseQuantifier();
+	    if (q != null) {
+		return q;
+	    }
+	    pos++;
+	    Statable inner = parseBinary();
+	    if (pos >= text.length() || text.charAt(pos) != ')') {
+		throw new StatementParsingException("No matching parenthesis");
+	    }
+	    pos++;
+	    return inner;
+	} else if (Predicate.isPredicate(c)) {
+	    pos++;
+	    List<Term> arguments = new ArrayList<>();
+	    Term t;
+	    while (pos < text.length() && (t = Term.of(text.charAt(pos))) != null) {
+		arguments.add(t);
+		pos++;
+	    }
+	    if (arguments.isEmpty()) {
+		throw new StatementParsingException("Error - Predicate " + c
+			+ " needs at least one term");
+	    }
+	    return new Predicate(c, arguments.toArray(new Term[arguments.size()]));
+	}
+	for (BaseFact bf : BaseFact.values()) {
+	    if (bf.equals(c)) {
+		pos++;
+		return bf;
+	    }
+	}
+	throw new StatementParsingException("Error - Unrecognized token");
+    }
+
+    /**
+     * Reads "(x)" or "(Ex)" and the formula after it
+     *
+     * @return The quantified formula, or null if no quantifier starts at the
+     * current position
+     */
+    private Quantified parseQuantifier() throws StatementParsingException {
+	int start = pos + 1;
+	Quantifier quantifier = Quantifier.UNIVERSAL;
+	if (start < text.length() && text.charAt(start) == 'E') {
+	    quantifier = Quantifier.EXISTENTIAL;
+	    start++;
+	}
+	if (start + 1 >= text.length() || !Term.isVariable(text.charAt(start))
+		|| text.charAt(start + 1) != ')') {
+	    return null;
+	}
+	pos = start + 2;
+	return new Quantified(quantifier, Term.of(text.charAt(start)),
+		parseUnary());
+    }
+
+    private Operator parseOperator() {
+	for (Operator op : Operator.values()) {
+	    if (op != Operator.NOT && text.startsWith(op.toString(), pos)) {
+		pos += op.toString().length();
+		return op;
+	    }
+	}
+	return null;
+    }
+}
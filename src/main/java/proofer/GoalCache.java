@@ -0,0 +1,310 @@
+package proofer;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of what proof searches learned about goals, shared by every search
+ * in the process: goals that failed within some depth, and lemmas, ie goals
+ * that were proven along with the rule and arguments that proved them.
+ *
+ * Entries are keyed by the canonical hash of the goal and a fingerprint of
+ * the context the search ran in, so what is learned in one proof is reused
+ * by later proofs over the same premises. An entry also keeps the goal's
+ * text, and only answers for that exact goal; a goal that merely shares its
+ * canonical hash is a miss.
+ *
+ * The cache is split into stripes, each its own LRU map behind its own lock,
+ * so threads working on different goals rarely wait for each other. Each
+ * stripe holds at most its share of the capacity and drops its least
+ * recently used entry when full.
+ *
+ * @author Ryan Kenney
+ */
+public class GoalCache {
+
+    private static final int STRIPES = 16;
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final GoalCache SHARED = new GoalCache(DEFAULT_CAPACITY);
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * How a goal was proven: the rule that yields it and the facts the rule
+     * was applied to
+     */
+    public static final class Lemma {
+
+	private final Rule rule;
+	private final Statable[] arguments;
+
+	Lemma(Rule rule, Statable[] arguments) {
+	    this.rule = rule;
+	    this.arguments = arguments.clone();
+	}
+
+	public Rule getRule() {
+	    return rule;
+	}
+
+	public Statable[] getArguments() {
+	    return arguments.clone();
+	}
+    }
+
+    /**
+     * Where a cached goal stands
+     */
+    private static final class Slot {
+
+	final String goal;
+	int failedDepth;
+	Lemma lemma;
+
+	Slot(String goal) {
+	    this.goal = goal;
+	}
+    }
+
+    /**
+     * The identity of a cached goal: its canonical hash and its context
+     */
+    private static final class Key {
+
+	final long goal;
+	final long context;
+
+	Key(long goal, long context) {
+	    this.goal = goal;
+	    this.context = context;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+	    if (!(obj instanceof Key)) {
+		return false;
+	    }
+	    Key other = (Key) obj;
+	    return goal == other.goal && context == other.context;
+	}
+
+	@Override
+	public int hashCode() {
+	    return Long.hashCode(goal * 31 + context);
+	}
+    }
+
+    /**
+     * One LRU map of the cache
+     */
+    @SuppressWarnings("serial")
+    private final class Stripe extends LinkedHashMap<Key, Slot> {
+
+	private final int capacity;
+
+	Stripe(int capacity) {
+	    super(16, 0.75f, true);
+	    this.capacity = capacity;
+	}
+
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<Key, Slot> eldest) {
+	    if (size() > capacity) {
+		evictions.incrementAndGet();
+		return true;
+	    }
+	    return false;
+	}
+    }
+
+    /**
+     * @param capacity The most goals the cache holds
+     */
+    public GoalCache(int capacity) {
+	int share = Math.max(1, capacity / STRIPES);
+	for (int i = 0; i < STRIPES; i++) {
+	    stripes[i] = new Stripe(share);
+	}
+    }
+
+    /**
+     * @return the cache shared by the searches of the process
+     */
+    public static GoalCache shared() {
+	return SHARED;
+    }
+
+    /**
+     * Fingerprints a set of formulas, ie the premises of a search. The order
+     * and repeats of the formulas do not matter, their syntax does.
+     *
+     * @param formulas The formulas
+     * @return The fingerprint
+     */
+    public static long fingerprint(List<Statable> formulas) {
+	long[] hashes = new long[formulas.size()];
+	for (int i = 0; i < hashes.length; i++) {
+	    hashes[i] = BloomFilter.hash(formulas.get(i).toString());
+	}
+	Arrays.sort(hashes);
+	long h = hashes.length;
+	for (int i = 0; i < hashes.length; i++) {
+	    if (i == 0 || hashes[i] != hashes[i - 1]) {
+		h = h * 0x9E3779B97F4A7C15L + hashes[i];
+	    }
+	}
+	return h;
+    }
+
+    /**
+     * @param goal The goal
+     * @param context The fingerprint of the search's context
+     * @return the depth the goal is known to fail within, or 0 if it is not
+     * known to fail
+     */
+    public int getFailedDepth(Statable goal, long context) {
+	Key key = key(goal, context);
+	Stripe stripe = stripe(key);
+	synchronized (stripe) {
+	    Slot e = find(stripe, key, goal);
+	    return (e == null) ? 0 : e.failedDepth;
+	}
+    }
+
+    /**
+     * Remembers that a goal cannot be proven within some depth
+     *
+     * @param goal The goal
+     * @param context The fingerprint of the search's context
+     * @param depth The depth the search failed within
+     */
+    public void putFailure(Statable goal, long context, int depth) {
+	Key key = key(goal, context);
+	Stripe stripe = stripe(key);
+	synchronized (stripe) {
+	    Slot e = slot(stripe, key, goal);
+	    e.failedDepth = Math.max(e.failedDepth, depth);
+	}
+    }
+
+    /**
+     * Finds how a goal was proven before
+     *
+     * @param goal The goal
+     * @param context The fingerprint of the search's context
+     * @return the lemma, or null if the goal was not proven before
+     */
+    public Lemma getLemma(Statable goal, long context) {
+	Key key = key(goal, context);
+	Stripe stripe = stripe(key);
+	synchronized (stripe) {
+	    Slot e = find(stripe, key, goal);
+	    return (e == null) ? null : e.lemma;
+	}
+    }
+
+    /**
+     * Remembers how a goal was proven
+     *
+     * @param goal The goal
+     * @param context The fingerprint of the search's context
+     * @param rule The rule that yields the goal
+     * @param arguments The facts the rule was applied to
+     */
+    public void putLemma(Statable goal, long context, Rule rule,
+	    Statable[] arguments) {
+	Key key = key(goal, context);
+	Stripe stripe = stripe(key);
+	synchronized (stripe) {
+	    slot(stripe, key, goal).lemma = new Lemma(rule, arguments);
+	}
+    }
+
+    /**
+     * @return the number of lookups that found their goal
+     */
+    public long getHits() {
+	return hits.get();
+    }
+
+    /**
+     * @return the number of lookups that did not
+     */
+    public long getMisses() {
+	return misses.get();
+    }
+
+    /**
+     * @return the number of goals dropped to make room
+     */
+    public long getEvictions() {
+	return evictions.get();
+    }
+
+    /**
+     * @return the number of goals held
+     */
+    public int size() {
+	int size = 0;
+	for (Stripe stripe : stripes) {
+	    synchronized (stripe) {
+		size += stripe.size();
+	    }
+	}
+	return size;
+    }
+
+    /**
+     * Forgets every goal
+     */
+    public void clear() {
+	for (Stripe stripe : stripes) {
+	    synchronized (stripe) {
+		stripe.clear();
+	    }
+	}
+    }
+
+    @Override
+    public String toString() {
+	return size() + " goals, " + hits.get() + " hits, " + misses.get()
+		+ " misses, " + evictions.get() + " evictions";
+    }
+
+    private static Key key(Statable goal, long context) {
+	return new Key(Normalizer.canonicalHash(goal), context);
+    }
+
+    private Stripe stripe(Key key) {
+	long h = key.goal ^ key.context;
+	return stripes[(int) ((h ^ (h >>> 32)) & (STRIPES - 1))];
+    }
+
+    private Slot find(Stripe stripe, Key key, Statable goal) {
+	Slot e = stripe.get(key);
+	if (e == null || !e.goal.equals(goal.toString())) {
+	    misses.incrementAndGet();
+	    return null;
+	}
+	hits.incrementAndGet();
+	return e;
+    }
+
+    /**
+     * Finds the goal's slot, replacing the slot of another goal with the
+     * same key
+     */
+    private Slot slot(Stripe stripe, Key key, Statable goal) {
+	Slot e = stripe.get(key);
+	if (e == null || !e.goal.equals(goal.toString())) {
+	    e = new Slot(goal.toString());
+	    stripe.put(key, e);
+	}
+	return e;
+    }
+}
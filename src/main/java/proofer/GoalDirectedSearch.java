@@ -0,0 +1,430 @@
+package proofer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Automated backward proof search over the Rules of Inference.
+ *
+ * Rather than saturating the premises, the search starts from the conclusion
+ * and asks which rule could have produced it, turning each way into subgoals
+ * that are proven the same way until every subgoal is a premise. Candidate
+ * arguments are drawn from the sub-formulas of the premises and conclusion,
+ * so the search only looks at facts related to the goal. Depth is deepened
+ * iteratively and goals that failed at some depth are not retried at that
+ * depth or below.
+ *
+ * The search is sound but not complete: a goal that fails only because it
+ * would repeat one of its ancestors is remembered as failed as well.
+ * Interrupting the searching thread makes the search give up and return null.
+ *
+ * What one search learns is kept in a GoalCache for the next ones, shared
+ * by default. Proven goals are kept as lemmas keyed by the premises, and a
+ * cached lemma is tried before the other candidates for its goal, checked
+ * against its rule like any candidate. Failed goals are keyed by the premises
+ * and conclusion, since candidate arguments come from both, and only
+ * failures that did not depend on the goals being tried around them are
+ * shared.
+ *
+ * @author Ryan Kenney
+ */
+public class GoalDirectedSearch implements Prover {
+
+    private int maxDepth = 8;
+    private SearchProfiler profiler = null;
+    private GoalCache cache = GoalCache.shared();
+    // Per search state
+    private final Map<String, List<Statable>> byConsequent = new HashMap<>();
+    private final Map<String, List<Statable>> byAntecedent = new HashMap<>();
+    private final Map<String, List<Statable>> byLeftConjunct = new HashMap<>();
+    private final Map<String, List<Statable>> byRightDisjunct = new HashMap<>();
+    private final List<Statable> conjunctions = new ArrayList<>();
+    private final Map<String, Derivation> proven = new HashMap<>();
+    private final Map<String, Integer> failed = new HashMap<>();
+    private final Set<String> onPath = new HashSet<>();
+    private final Set<String> tainted = new HashSet<>();
+    private long lemmaContext;
+    private long failureContext;
+    private long cutoffs;
+    // Statistics of the last search
+    private long nodes;
+
+    /**
+     * How a proven goal was obtained: a premise when rule is null, otherwise
+     * the rule and the facts it was applied to
+     */
+    private static class Derivation {
+
+	final Statable fact;
+	final Rule rule;
+	final Statable[] arguments;
+
+	Derivation(Statable fact, Rule rule, Statable[] arguments) {
+	    this.fact = fact;
+	    this.rule = rule;
+	    this.arguments = arguments;
+	}
+    }
+
+    /**
+     * @param maxDepth The deepest chain of rules the search tries
+     */
+    public void setMaxDepth(int maxDepth) {
+	this.maxDepth = Math.max(1, maxDepth);
+    }
+
+    /**
+     * @param profiler Records where the search spends its time, or null to
+     * not profile
+     */
+    public void setProfiler(SearchProfiler profiler) {
+	this.profiler = profiler;
+    }
+
+    /**
+     * @param cache Where to share what searches learn about goals, or null
+     * to keep it to each search
+     */
+    public void setCache(GoalCache cache) {
+	this.cache = cache;
+    }
+
+    /**
+     * @return the number of goals expanded by the last search
+     */
+    public long getNodes() {
+	return nodes;
+    }
+
+    @Override
+    public Proof search(List<Statable> premises, Statable conclusion) {
+	reset();
+	nodes = 0;
+	for (Statable premise : premises) {
+	    String key = premise.toString();
+	    if (!proven.containsKey(key)) {
+		proven.put(key, new Derivation(premise, null, null));
+	    }
+	    index(premise);
+	}
+	index(conclusion);
+	lemmaContext = GoalCache.fingerprint(premises);
+	List<Statable> context = new ArrayList<>(premises);
+	context.add(conclusion);
+	failureContext = GoalCache.fingerprint(context);
+	cutoffs = 0;
+
+	String goalKey = conclusion.toString();
+	for (Statable premise : premises) {
+	    if (premise.toString().equals(goalKey)) {
+		return buildProof(premises, premise);
+	    }
+	}
+
+	if (profiler != null) {
+	    profiler.enter("GoalDirectedSearch");
+	}
+	try {
+	    for (int depth = 1; depth <= maxDepth; depth++) {
+		if (prove(conclusion, depth)) {
+		    return buildProof(premises, conclusion);
+		}
+		if (Thread.currentThread().isInterrupted()) {
+		    return null;
+		}
+	    }
+	    return null;
+	} finally {
+	    if (profiler != null) {
+		profiler.exit();
+	    }
+	    reset();
+	}
+    }
+
+    /**
+     * Proves goal using at most depth rules in a row
+     */
+    private boolean prove(Statable goal, int depth) {
+	String key = goal.toString();
+	if (proven.containsKey(key)) {
+	    return true;
+	}
+	Integer failedAt = failed.get(key);
+	if (depth == 0) {
+	    return false;
+	} else if (failedAt != null && failedAt >= depth) {
+	    if (tainted.contains(key)) {
+		cutoffs++;
+	    }
+	    return false;
+	} else if (cache != null
+		&& cache.getFailedDepth(goal, failureContext) >= depth) {
+	    failed.put(key, depth);
+	    return false;
+	} else if (Thread.currentThread().isInterrupted() || !onPath.add(key)) {
+	    // Cut off by the goals around it, not by the goal itself
+	    cutoffs++;
+	    return false;
+	}
+	nodes++;
+	long cutoffsBefore = cutoffs;
+	if (profiler != null) {
+	    profiler.enter(SearchProfiler.shape(goal));
+	}
+
+	try {
+	    for (Derivation candidate : candidates(goal)) {
+		if (profiler != null) {
+		    profiler.generated(candidate.rule, isSettled(candidate, depth - 1));
+		    profiler.enter(candidate.rule);
+		}
+		boolean ok = true;
+		try {
+		    for (Statable subgoal : candidate.arguments) {
+			if (!prove(subgoal, depth - 1)) {
+			    ok = false;
+			    break;
+			}
+		    }
+		} finally {
+		    if (profiler != null) {
+			profiler.exit();
+		    }
+		}
+		if (ok) {
+		    proven.put(key, candidate);
+		    if (cache != null) {
+			cache.putLemma(goal, lemmaContext, candidate.rule,
+				candidate.arguments);
+		    }
+		    return true;
+		}
+	    }
+	    failed.put(key, depth);
+	    if (cutoffs != cutoffsBefore) {
+		tainted.add(key);
+	    } else if (cache != null) {
+		cache.putFailure(goal, failureContext, depth);
+	    }
+	    return false;
+	} finally {
+	    onPath.remove(key);
+	    if (profiler != null) {
+		profiler.exit();
+	    }
+	}
+    }
+
+    /**
+     * Checks if every subgoal of a candidate is already proven or known to
+     * fail at the given depth, so trying the candidate learns nothing new
+     */
+    private boolean isSettled(Derivation candidate, int depth) {
+	for (Statable subgoal : candidate.arguments) {
+	    String key = subgoal.toString();
+	    Integer failedAt = failed.get(key);
+	    if (!proven.containsKey(key)
+		    && (failedAt == null || failedAt < depth)) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Lists the ways goal could be the result of a rule. Every candidate is
+     * checked against the rule itself, so the subgoals really do yield goal.
+     */
+    private List<Derivation> candidates(Statable goal) {
+	List<Derivation> ret = new ArrayList<>();
+	GoalCache.Lemma lemma = (cache == null) ? null
+		: cache.getLemma(goal, lemmaContext);
+	if (lemma != null) {
+	    offer(ret, goal, lemma.getRule(), lemma.getArguments());
+	}
+	String key = goal.toString();
+	Statable g = unwrap(goal);
+	Operator op = g.getOperator();
+
+	for (Statable imp : lookup(byConsequent, key)) {
+	    offer(ret, goal, Rule.MP, imp, operand(imp, 0));
+	}
+	for (Statable conj : lookup(byLeftConjunct, key)) {
+	    offer(ret, goal, Rule.SIMP, conj);
+	}
+	for (Statable disj : lookup(byRightDisjunct, key)) {
+	    offer(ret, goal, Rule.DS, disj,
+		    Statement.negation(operand(disj, 0)));
+	}
+	if (op == Operator.NOT) {
+	    for (Statable imp : lookup(byAntecedent, operand(g, 0).toString())) {
+		offer(ret, goal, Rule.MT, imp,
+			Statement.negation(operand(imp, 1)));
+	    }
+	} else if (op == Operator.AND) {
+	    offer(ret, goal, Rule.CONJ, operand(g, 0), operand(g, 1));
+	} else if (op == Operator.COND) {
+	    Statable ant = operand(g, 0);
+	    Statable con = operand(g, 1);
+	    for (Statable imp0 : lookup(byAntecedent, ant.toString())) {
+		String middle = operand(imp0, 1).toString();
+		for (Statable imp1 : lookup(byConsequent, con.toString())) {
+		    if (operand(imp1, 0).toString().equals(middle)) {
+			offer(ret, goal, Rule.HS, imp0, imp1);
+		    }
+		}
+	    }
+	    if (con.getOperator() == Operator.AND) {
+		offer(ret, goal, Rule.ABS, Statement.compose(Operator.COND,
+			ant, operand(con, 1)));
+	    }
+	} else if (op == Operator.OR) {
+	    for (Statable conj : conjunctions) {
+		Statable imp0 = operand(conj, 0);
+		Statable imp1 = operand(conj, 1);
+		if (imp0.getOperator() == Operator.COND
+			&& imp1.getOperator() == Operator.COND) {
+		    offer(ret, goal, Rule.CD, conj, Statement.compose(Operator.OR,
+			    operand(imp0, 0), operand(imp1, 0)));
+		}
+	    }
+	}
+	return ret;
+    }
+
+    /**
+     * Adds the candidate if the rule applied to the arguments yields goal
+     */
+    private static void offer(List<Derivation> out, Statable goal, Rule rule,
+	    Statable... arguments) {
+	try {
+	    Statable result = rule.apply(arguments[0],
+		    (arguments.length > 1) ? arguments[1] : null);
+	    if (result.toString().equals(goal.toString())) {
+		out.add(new Derivation(goal, rule, arguments));
+	    }
+	} catch (RuleFormatException ex) {
+	    // Not a way to reach goal after all
+	}
+    }
+
+    /**
+     * Indexes s and every sub-formula of s as candidate arguments
+     */
+    private void index(Statable s) {
+	s = unwrap(s);
+	Operator op = s.getOperator();
+	if (op == null) {
+	    return;
+	}
+	index(operand(s, 0));
+	if (op == Operator.NOT) {
+	    return;
+	}
+	index(operand(s, 1));
+	String left = operand(s, 0).toString();
+	String right = operand(s, 1).toString();
+	switch (op) {
+	    case COND:
+		put(byConsequent, right, s);
+		put(byAntecedent, left, s);
+		break;
+	    case AND:
+		put(byLeftConjunct, left, s);
+		if (!conjunctions.contains(s)) {
+		    conjunctions.add(s);
+		}
+		break;
+	    case OR:
+		put(byRightDisjunct, right, s);
+		break;
+	}
+    }
+
+    /**
+     * Lays out the premises followed by the derivation of goal, each line
+     * after the lines it refers to
+     */
+    private Proof buildProof(List<Statable> premises, Statable goal) {
+	List<ProofStep> steps = new ArrayList<>();
+	Map<String, Integer> lines = new HashMap<>();
+	for (Statable premise : premises) {
+	    steps.add(new ProofStep(premise));
+	    String key = premise.toString();
+	    if (!lines.containsKey(key)) {
+		lines.put(key, steps.size());
+	    }
+	}
+	int goalLine = emit(goal.toString(), steps, lines);
+	return new Proof(steps, steps.get(goalLine - 1).getFact());
+    }
+
+    private int emit(String key, List<ProofStep> steps, Map<String, Integer> lines) {
+	Integer line = lines.get(key);
+	if (line != null) {
+	    return line;
+	}
+	Derivation d = proven.get(key);
+	int[] refs = new int[d.arguments.length];
+	for (int i = 0; i < refs.length; i++) {
+	    refs[i] = emit(d.arguments[i].toString(), steps, lines);
+	}
+	steps.add(new ProofStep(d.fact, d.rule, refs));
+	lines.put(key, steps.size());
+	return steps.size();
+    }
+
+    private void reset() {
+	byConsequent.clear();
+	byAntecedent.clear();
+	byLeftConjunct.clear();
+	byRightDisjunct.clear();
+	conjunctions.clear();
+	proven.clear();
+	failed.clear();
+	onPath.clear();
+	tainted.clear();
+    }
+
+    private static void put(Map<String, List<Statable>> map, String key,
+	    Statable s) {
+	List<Statable> list = map.get(key);
+	if (list == null) {
+	    list = new ArrayList<>();
+	    map.put(key, list);
+	}
+	for (Statable present : list) {
+	    if (present.toString().equals(s.toString())) {
+		return;
+	    }
+	}
+	list.add(s);
+    }
+
+    private static List<Statable> lookup(Map<String, List<Statable>> map,
+	    String key) {
+	List<Statable> list = map.get(key);
+	return (list == null) ? Collections.<Statable>emptyList() : list;
+    }
+
+    private static Statable operand(Statable s, int i) {
+	return unwrap(unwrap(s).getOperands()[i]);
+    }
+
+    /**
+     * Skips the operator-less Statements the parser wraps around
+     * sub-formulas
+     */
+    private static Statable unwrap(Statable s) {
+	while (s.getOperator() == null && !s.isAtomic()) {
+	    s = s.getOperands()[0];
+	}
+	return s;
+    }
+}
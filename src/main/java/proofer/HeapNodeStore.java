@@ -0,0 +1,130 @@
+package proofer;
+
+import java.util.Arrays;
+
+/**
+ * NodeStore backed by parallel primitive arrays on the heap
+ *
+ * @author Ryan Kenney
+ */
+class HeapNodeStore implements NodeStore {
+
+    private byte[] ops;
+    private int[] lefts;
+    private int[] rights;
+    private int[] lines;
+    private int count = 0;
+    private int[] table;
+    private int[] facts = new int[16];
+    private int factCount = 0;
+
+    HeapNodeStore(int capacity) {
+	ops = new byte[capacity];
+	lefts = new int[capacity];
+	rights = new int[capacity];
+	lines = new int[capacity];
+    }
+
+    @Override
+    public int count() {
+	return count;
+    }
+
+    @Override
+    public byte op(int id) {
+	return ops[id];
+    }
+
+    @Override
+    public int left(int id) {
+	return lefts[id];
+    }
+
+    @Override
+    public int right(int id) {
+	return rights[id];
+    }
+
+    @Override
+    public int line(int id) {
+	return lines[id];
+    }
+
+    @Override
+    public void setLine(int id, int line) {
+	lines[id] = line;
+    }
+
+    @Override
+    public int append(byte op, int left, int right) {
+	if (count == ops.length) {
+	    int capacity = ops.length * 2;
+	    ops = Arrays.copyOf(ops, capacity);
+	    lefts = Arrays.copyOf(lefts, capacity);
+	    rights = Arrays.copyOf(rights, capacity);
+	    lines = Arrays.copyOf(lines, capacity);
+	}
+	ops[count] = op;
+	lefts[count] = left;
+	rights[count] = right;
+	lines[count] = 0;
+	return count++;
+    }
+
+    @Override
+    public int tableLength() {
+	return table.length;
+    }
+
+    @Override
+    public int slot(int index) {
+	return table[index];
+    }
+
+    @Override
+    public void setSlot(int index, int value) {
+	table[index] = value;
+    }
+
+    @Override
+    public void resetTable(int length) {
+	table = new int[length];
+    }
+
+    @Override
+    public int factCount() {
+	return factCount;
+    }
+
+    @Override
+    public int fact(int line) {
+	return facts[line - 1];
+    }
+
+    @Override
+    public void addFact(int id) {
+	if (factCount == facts.length) {
+	    facts = Arrays.copyOf(facts, facts.length * 2);
+	}
+	facts[factCount++] = id;
+    }
+
+    @Override
+    public void clear() {
+	count = 0;
+	factCount = 0;
+    }
+
+    @Override
+    public long sizeInBytes() {
+	return ops.length * 13L + table.length * 4L + facts.length * 4L;
+    }
+
+    @Override
+    public void force() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,247 @@
+package proofer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Automated proof search by iterative deepening. Each iteration runs a depth
+ * first search that derives at most bound new lines, and the bound grows by
+ * one per iteration, so the first proof found is one with the fewest derived
+ * lines. Memory per iteration is the current path plus a fixed size
+ * transposition table.
+ *
+ * The transposition table is keyed on a Zobrist hash of the facts on the
+ * path: the XOR of a 64 bit hash of each fact. Deriving the same set of facts
+ * in a different order yields the same hash, so a set already explored with
+ * at least as many lines to go is pruned. Entries survive across iterations,
+ * which is sound because an entry only prunes searches with no more depth
+ * left than the one that recorded it.
+ *
+ * @author Ryan Kenney
+ */
+public class IterativeDeepeningSearch implements Prover {
+
+    private int maxDepth = 8;
+    private int maxFormulaSize = 0;
+    private int tableBits = 20;
+    private SearchProfiler profiler = null;
+    // Per search state
+    private List<ProofStep> path;
+    private Set<String> keys;
+    private long hash;
+    private String goalKey;
+    private int sizeLimit;
+    private long[] tableKeys;
+    private byte[] tableDepths;
+    private long nodes;
+    private long prunes;
+
+    /**
+     * @param maxDepth The most derived lines a proof may have
+     */
+    public void setMaxDepth(int maxDepth) {
+	this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @param maxFormulaSize The largest fact, in nodes, the search keeps, or 0
+     * to use the largest premise or conclusion
+     */
+    public void setMaxFormulaSize(int maxFormulaSize) {
+	this.maxFormulaSize = maxFormulaSize;
+    }
+
+    /**
+     * @param tableBits The transposition table holds 2^tableBits entries
+     */
+    public void setTableBits(int tableBits) {
+	this.tableBits = tableBits;
+    }
+
+    /**
+     * @param profiler Records where the search spends its time, or null to
+     * not profile
+     */
+    public void setProfiler(SearchProfiler profiler) {
+	this.profiler = profiler;
+    }
+
+    /**
+     * @return the number of search nodes visited by the last search
+     */
+    public long getNodes() {
+	return nodes;
+    }
+
+    /**
+     * @return the number of search nodes the last search pruned through the
+     * transposition table
+     */
+    public long getPrunes() {
+	return prunes;
+    }
+
+    @Override
+    public Proof search(List<Statable> premises, Statable conclusion) {
+	path = new ArrayList<>();
+	keys = new HashSet<>();
+	hash = 0;
+	goalKey = conclusion.toString();
+	sizeLimit = (maxFormulaSize > 0) ? maxFormulaSize
+		: Prover.defaultSizeLimit(premises, conclusion);
+	tableKeys = new long[1 << tableBits];
+	tableDepths = new byte[1 << tableBits];
+	nodes = 0;
+	prunes = 0;
+
+	for (Statable premise : premises) {
+	    String key = premise.toString();
+	    if (keys.add(key)) {
+		path.add(new ProofStep(premise));
+		hash ^= BloomFilter.hash(key);
+		if (isGoal(premise)) {
+		    return new Proof(path, premise);
+		}
+	    }
+	}
+
+	if (profiler != null) {
+	    profiler.enter("IterativeDeepeningSearch");
+	}
+	try {
+	    for (int bound = 1; bound <= maxDepth; bound++) {
+		if (deepen(bound)) {
+		    return new Proof(path, path.get(path.size() - 1).getFact());
+		}
+	    }
+	    return null;
+	} finally {
+	    if (profiler != null) {
+		profiler.exit();
+	    }
+	}
+    }
+
+    /**
+     * Checks if fact is the conclusion
+     */
+    private boolean isGoal(Statable fact) {
+	return fact.toString().equals(goalKey);
+    }
+
+    /**
+     * Searches below the current path
+     *
+     * @param remaining The number of lines that may still be derived
+     * @return True if the goal was derived, in which case it ends the path
+     */
+    private boolean deepen(int remaining) {
+	nodes++;
+	int slot = (int) (hash >>> (64 - tableBits));
+	if (tableKeys[slot] == hash && tableDepths[slot] >= remaining) {
+	    prunes++;
+	    return false;
+	}
+
+	if (profiler != null) {
+	    profiler.enter(path.isEmpty() ? "start"
+		    : SearchProfiler.shape(path.get(path.size() - 1).getFact()));
+	}
+	try {
+	    for (Rule rule : RULES) {
+		if (profiler != null) {
+		    profiler.enter(rule);
+		}
+		try {
+		    if (combine(rule, remaining)) {
+			return true;
+		    }
+		} finally {
+		    if (profiler != null) {
+			profiler.exit();
+		    }
+		}
+	    }
+	} finally {
+	    if (profiler != null) {
+		profiler.exit();
+	    }
+	}
+
+	if (tableKeys[slot] != hash || tableDepths[slot] < remaining) {
+	    tableKeys[slot] = hash;
+	    tableDepths[slot] = (byte) remaining;
+	}
+	return false;
+    }
+
+    /**
+     * Tries a rule on every line of the path, or pair of them
+     *
+     * @return True if the goal was derived
+     */
+    private boolean combine(Rule rule, int remaining) {
+	int lines = path.size();
+	for (int i = 1; i <= lines; i++) {
+	    Statable arg0 = path.get(i - 1).getFact();
+	    if (rule.isUnary()) {
+		if (derive(rule, arg0, null, remaining, i)) {
+		    return true;
+		}
+		continue;
+	    }
+	    for (int j = 1; j <= lines; j++) {
+		if (derive(rule, arg0, path.get(j - 1).getFact(), remaining, i, j)) {
+		    return true;
+		}
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Tries one rule application and, if it yields a new fact, searches
+     * below it
+     */
+    private boolean derive(Rule rule, Statable arg0, Statable arg1,
+	    int remaining, int... references) {
+	if (!rule.mayApply(arg0, arg1)) {
+	    return false;
+	}
+	Statable result;
+	try {
+	    result = rule.apply(arg0, arg1);
+	} catch (RuleFormatException ex) {
+	    return false;
+	}
+	if (Statement.size(result) > sizeLimit) {
+	    return false;
+	}
+	String key = result.toString();
+	if (profiler != null) {
+	    profiler.generated(rule, keys.contains(key));
+	}
+	boolean goal = isGoal(result);
+	// On the last line only the goal is worth deriving
+	if ((!goal && remaining == 1) || keys.contains(key)) {
+	    return false;
+	}
+
+	long factHash = BloomFilter.hash(key);
+	path.add(new ProofStep(result, rule, references));
+	if (goal) {
+	    return true;
+	}
+	keys.add(key);
+	hash ^= factHash;
+	if (deepen(remaining - 1)) {
+	    return true;
+	}
+	hash ^= factHash;
+	keys.remove(key);
+	path.remove(path.size() - 1);
+	return false;
+    }
+}
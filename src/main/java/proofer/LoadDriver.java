@@ -0,0 +1,339 @@
+package proofer;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays a workload written by WorkloadGenerator at a target rate and
+ * reports throughput and latency percentiles.
+ *
+ * Requests are issued open loop: request i is due at start + i / rate
+ * whether or not earlier ones finished, and its latency is measured from
+ * when it was due. A slow request therefore shows up in the latencies of
+ * the ones queued behind it instead of quietly lowering the offered load.
+ *
+ * Two modes are supported. "verify" checks the proofs in proofs.txt with the
+ * ProofVerifier, and "prove" searches for proofs of the arguments in
+ * arguments.txt with the chosen prover.
+ *
+ * @author Ryan Kenney
+ */
+public class LoadDriver {
+
+    private final List<Runnable> requests = new ArrayList<>();
+    private final AtomicInteger failures = new AtomicInteger();
+    private double rate = 100;
+    private int count = 1000;
+    private int warmup = 100;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private SearchProfiler profiler = null;
+    private boolean offHeap = false;
+    /**
+     * One off-heap pool per serving thread, reused from request to request
+     * since a verifier clears its pool before every proof
+     */
+    private final ThreadLocal<NodePool> pools = new ThreadLocal<NodePool>() {
+	@Override
+	protected NodePool initialValue() {
+	    return NodePool.offHeap(1024);
+	}
+    };
+
+    /**
+     * @param rate The target rate, in requests per second
+     */
+    public void setRate(double rate) {
+	this.rate = rate;
+    }
+
+    /**
+     * @param profiler Profiles the searches of the prove mode, or null to not
+     * profile
+     */
+    public void setProfiler(SearchProfiler profiler) {
+	this.profiler = profiler;
+    }
+
+    /**
+     * @param offHeap True to have the verify mode parse proofs into off-heap
+     * pools, false to give each request a pool on the heap
+     */
+    public void setOffHeap(boolean offHeap) {
+	this.offHeap = offHeap;
+    }
+
+    /**
+     * @param count The number of measured requests
+     */
+    public void setCount(int count) {
+	this.count = Math.max(1, count);
+    }
+
+    /**
+     * @param warmup The number of requests run unmeasured beforehand, to let
+     * the JIT compile the hot paths
+     */
+    public void setWarmup(int warmup) {
+	this.warmup = Math.max(0, warmup);
+    }
+
+    /**
+     * @param threads The number of threads serving requests
+     */
+    public void setThreads(int threads) {
+	this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @return the number of requests that gave a wrong answer so far
+     */
+    public int getFailures() {
+	return failures.get();
+    }
+
+    /**
+     * Runs the warmup and then the measured requests
+     *
+     * @return The latency of each measured request, in nanoseconds, sorted
+     * @throws InterruptedException The thread was interrupted while waiting
+     */
+    public long[] run() throws InterruptedException {
+	if (requests.isEmpty()) {
+	    throw new IllegalStateException("Empty workload");
+	}
+	for (int i = 0; i < warmup; i++) {
+	    requests.get(i % requests.size()).run();
+	}
+	failures.set(0);
+
+	final long[] latencies = new long[count];
+	ExecutorService executor = Executors.newFixedThreadPool(threads);
+	long interval = (long) (1e9 / rate);
+	long start = System.nanoTime();
+	try {
+	    for (int i = 0; i < count; i++) {
+		final long due = start + i * interval;
+		long wait = due - System.nanoTime();
+		if (wait > 0) {
+		    TimeUnit.NANOSECONDS.sleep(wait);
+		}
+		final int index = i;
+		final Runnable request = requests.get((warmup + i) % requests.size());
+		executor.execute(new Runnable() {
+		    @Override
+		    public void run() {
+			request.run();
+			latencies[index] = System.nanoTime() - due;
+		    }
+		});
+	    }
+	} finally {
+	    executor.shutdown();
+	    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	}
+	Arrays.sort(latencies);
+	return latencies;
+    }
+
+    /**
+     * Adds a request per proof in a proofs.txt file to the workload
+     *
+     * @param file The file
+     * @throws IOException The file could not be read
+     */
+    public void loadProofs(String file) throws IOException {
+	try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+	    StringBuilder block = new StringBuilder();
+	    String line;
+	    while ((line = in.readLine()) != null) {
+		if (!line.trim().isEmpty()) {
+		    block.append(line).append('\n');
+		    continue;
+		}
+		if (block.length() > 0) {
+		    requests.add(verifyRequest(block.toString()));
+		    block.setLength(0);
+		}
+	    }
+	    if (block.length() > 0) {
+		requests.add(verifyRequest(block.toString()));
+	    }
+	}
+    }
+
+    private Runnable verifyRequest(final String proof) {
+	return new Runnable() {
+	    @Override
+	    public void run() {
+		try {
+		    StringReader reader = new StringReader(proof);
+		    ProofVerifier verifier = offHeap
+			    ? new ProofVerifier(reader, pools.get())
+			    : new ProofVerifier(reader);
+		    ProofVerifier.Result r = verifier.next();
+		    if (r == null || !r.isValid()) {
+			failures.incrementAndGet();
+		    }
+		} catch (IOException ex) {
+		    failures.incrementAndGet();
+		}
+	    }
+	};
+    }
+
+    /**
+     * Adds a request per argument in an arguments.txt file to the workload.
+     * A request fails if it proves an invalid argument; valid arguments left
+     * unproven within the prover's limits do not count as failures.
+     *
+     * @param file The file
+     * @param prover saturation, goal, conditional, iddfs or portfolio
+     * @throws IOException The file could not be read
+     * @throws StatementParsingException The file holds a malformed formula
+     */
+    public void loadArguments(String file, final String prover)
+	    throws IOException, StatementParsingException {
+	final PortfolioProver portfolio = new PortfolioProver();
+	try (FileReader in = new FileReader(file)) {
+	    for (final WorkloadGenerator.Argument a : WorkloadGenerator.read(in)) {
+		requests.add(new Runnable() {
+		    @Override
+		    public void run() {
+			try {
+			    Proof proof = newProver(prover, portfolio).search(
+				    a.getPremises(), a.getConclusion());
+			    if (proof != null && !a.isValid()) {
+				failures.incrementAndGet();
+			    }
+			} catch (IOException ex) {
+			    failures.incrementAndGet();
+			}
+		    }
+		});
+	    }
+	}
+    }
+
+    private Prover newProver(String name, PortfolioProver portfolio) {
+	switch (name) {
+	    case "goal":
+		GoalDirectedSearch goal = new GoalDirectedSearch();
+		goal.setProfiler(profiler);
+		return goal;
+	    case "iddfs":
+		IterativeDeepeningSearch iddfs = new IterativeDeepeningSearch();
+		iddfs.setProfiler(profiler);
+		return iddfs;
+	    case "portfolio":
+		return portfolio;
+	    default:
+		ProofSearch search = new ProofSearch();
+		search.setProfiler(profiler);
+		return name.equals("conditional")
+			? new ConditionalProver(new SelectingProver(search))
+			: new SelectingProver(search);
+	}
+    }
+
+    /**
+     * Prints the report of a run
+     *
+     * @param latencies The sorted latencies, in nanoseconds
+     * @param seconds The wall clock time of the run
+     */
+    private void report(long[] latencies, double seconds) {
+	System.out.printf("%d requests in %.2f s, %.1f requests/s (target %.1f)%n",
+		latencies.length, seconds, latencies.length / seconds, rate);
+	System.out.printf("latency ms: p50 %.3f  p90 %.3f  p99 %.3f  p99.9 %.3f  max %.3f%n",
+		percentile(latencies, 50), percentile(latencies, 90),
+		percentile(latencies, 99), percentile(latencies, 99.9),
+		latencies[latencies.length - 1] / 1e6);
+	System.out.println("failures: " + failures.get());
+    }
+
+    private static double percentile(long[] sorted, double p) {
+	int i = (int) Math.ceil(p / 100 * sorted.length) - 1;
+	return sorted[Math.max(0, Math.min(i, sorted.length - 1))] / 1e6;
+    }
+
+    /**
+     * Replays a workload
+     *
+     * @param args The mode, verify or prove, and the file to replay,
+     * followed by options: --rate, --count, --warmup, --threads, for verify,
+     * --pool, heap or off-heap, and, for prove, --prover and --profile, a
+     * file to write collapsed stacks to
+     * @throws Exception The workload could not be read or the run was
+     * interrupted
+     */
+    public static void main(String[] args) throws Exception {
+	if (args.length < 2 || args.length % 2 != 0) {
+	    System.err.println("Usage: LoadDriver <verify|prove> <file> [--option value]...");
+	    return;
+	}
+	String prover = "saturation";
+	for (int i = 2; i < args.length; i += 2) {
+	    if (args[i].equals("--prover")) {
+		prover = args[i + 1];
+	    }
+	}
+
+	LoadDriver driver = new LoadDriver();
+	if (args[0].equals("prove")) {
+	    driver.loadArguments(args[1], prover);
+	} else {
+	    driver.loadProofs(args[1]);
+	}
+	String profile = null;
+	for (int i = 2; i < args.length; i += 2) {
+	    String value = args[i + 1];
+	    switch (args[i]) {
+		case "--prover":
+		    break;
+		case "--profile":
+		    profile = value;
+		    driver.setProfiler(new SearchProfiler());
+		    break;
+		case "--rate":
+		    driver.setRate(Double.parseDouble(value));
+		    break;
+		case "--pool":
+		    driver.setOffHeap(value.equals("off-heap"));
+		    break;
+		case "--count":
+		    driver.setCount(Integer.parseInt(value));
+		    break;
+		case "--warmup":
+		    driver.setWarmup(Integer.parseInt(value));
+		    break;
+		case "--threads":
+		    driver.setThreads(Integer.parseInt(value));
+		    break;
+		default:
+		    System.err.println("Unknown option " + args[i]);
+		    return;
+	    }
+	}
+
+	long start = System.nanoTime();
+	long[] latencies = driver.run();
+	driver.report(latencies, (System.nanoTime() - start) / 1e9);
+	if (profile != null) {
+	    try (FileWriter out = new FileWriter(profile)) {
+		driver.profiler.writeCollapsed(out);
+	    }
+	    System.out.print(driver.profiler.summary());
+	}
+	System.exit(0);
+    }
+}
@@ -0,0 +1,447 @@
+package proofer;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A compact store of formulas. Every node lives in parallel primitive arrays
+ * (operator, left child, right child) and is addressed by an int id, so
+ * deriving a formula allocates no objects. Nodes are hash-consed: building the
+ * same node twice yields the same id, which makes equality an int comparison.
+ *
+ * Atoms store their BaseFact ordinal as the left child. NOT nodes have no
+ * right child.
+ *
+ * The pool can also hold a list of facts: a node marked as a fact gets the
+ * next line, so fact membership is a lookup on the node itself. Nodes and
+ * facts are kept on the heap by default, or off the heap with offHeap() and
+ * open(); a pool opened from a file survives a restart.
+ *
+ * Only propositional formulas fit in a pool, and FactBase does not use one:
+ * the REPL's facts, their indexes and justifications stay on the heap. The
+ * pool backs ProofVerifier, on or off the heap (see its --off-heap option and
+ * LoadDriver's --pool), and its facts are there for callers that keep a
+ * large propositional derivation outside a FactBase.
+ *
+ * @author Ryan Kenney
+ */
+public class NodePool {
+
+    /**
+     * Id returned when there is no node, ie a rule could not be applied
+     */
+    public static final int NONE = -1;
+    /**
+     * Operator code of atoms, past the ordinals of Operator
+     */
+    private static final byte ATOM = (byte) Operator.values().length;
+    private static final Operator[] OPERATORS = Operator.values();
+    private static final BaseFact[] ATOMS = BaseFact.values();
+    private final NodeStore store;
+
+    public NodePool() {
+	this(64);
+    }
+
+    /**
+     * @param capacity The number of nodes to make room for up front
+     */
+    public NodePool(int capacity) {
+	this(new HeapNodeStore(Math.max(capacity, 8)));
+    }
+
+    private NodePool(NodeStore store) {
+	this.store = store;
+	rehash(Math.max(16, Integer.highestOneBit(Math.max(store.count(), 8)) << 2));
+    }
+
+    /**
+     * Creates an empty pool kept in direct memory, off the heap
+     *
+     * @param capacity The number of nodes to make room for up front
+     * @return The pool
+     */
+    public static NodePool offHeap(int capacity) {
+	return new NodePool(new OffHeapNodeStore(Math.max(capacity, 8)));
+    }
+
+    /**
+     * Opens a pool whose nodes and facts are memory-mapped from path. If the
+     * file exists the pool picks up where it was left, otherwise it starts
+     * out empty.
+     *
+     * @param path The pool file
+     * @return The pool
+     * @throws IOException The file could not be mapped or is not a pool file
+     */
+    public static NodePool open(File path) throws IOException {
+	return new NodePool(new OffHeapNodeStore(path, 1024));
+    }
+
+    /**
+     * @param fact The BaseFact
+     * @return the id of the atom
+     */
+    public int atom(BaseFact fact) {
+	return intern(ATOM, fact.ordinal(), NONE);
+    }
+
+    /**
+     * Builds (or finds) the node op(left, right)
+     *
+     * @param op The operator
+     * @param left The id of the first operand
+     * @param right The id of the second operand, ignored for NOT
+     * @return the id of the node
+     */
+    public int node(Operator op, int left, int right) {
+	return intern((byte) op.ordinal(), left, (op == Operator.NOT) ? NONE : right);
+    }
+
+    /**
+     * @param id The operand
+     * @return the id of the negation of id
+     */
+    public int not(int id) {
+	return intern((byte) Operator.NOT.ordinal(), id, NONE);
+    }
+
+    /**
+     * Copies a Statable into the pool
+     *
+     * @param s The Statable to copy
+     * @return the id of its root node
+     */
+    public int intern(Statable s) {
+	Operator op = s.getOperator();
+	if (op == null) {
+	    return (s instanceof BaseFact) ? atom((BaseFact) s)
+		    : intern(s.getOperands()[0]);
+	} else if (op == Operator.NOT) {
+	    return not(intern(s.getOperands()[0]));
+	}
+	return node(op, intern(s.getOperands()[0]), intern(s.getOperands()[1]));
+    }
+
+    /**
+     * @param id A node id
+     * @return the main operator of the node, or null for atoms
+     */
+    public Operator operator(int id) {
+	byte op = store.op(id);
+	return (op == ATOM) ? null : OPERATORS[op];
+    }
+
+    /**
+     * @param id A node id
+     * @return True if the node is an atom, false otherwise
+     */
+    public boolean isAtom(int id) {
+	return store.op(id) == ATOM;
+    }
+
+    /**
+     * @param id The id of an atom
+     * @return the BaseFact of the atom
+     */
+    public BaseFact atomOf(int id) {
+	return ATOMS[store.left(id)];
+    }
+
+    /**
+     * @param id A node id
+     * @return the id of the first operand
+     */
+    public int left(int id) {
+	return store.left(id);
+    }
+
+    /**
+     * @param id A node id
+     * @return the id of the second operand, or NONE
+     */
+    public int right(int id) {
+	return store.right(id);
+    }
+
+    /**
+     * @return the number of distinct nodes in the pool
+     */
+    public int size() {
+	return store.count();
+    }
+
+    /**
+     * @return the approximate number of bytes held by the pool, on or off
+     * the heap
+     */
+    public long sizeInBytes() {
+	return store.sizeInBytes();
+    }
+
+    /**
+     * Records the formula id as a fact, giving it the next line
+     *
+     * @param id A node id
+     * @return the line of the new fact, or 0 if id already was a fact
+     */
+    public int addFact(int id) {
+	if (store.line(id) != 0) {
+	    return 0;
+	}
+	store.addFact(id);
+	store.setLine(id, store.factCount());
+	return store.factCount();
+    }
+
+    /**
+     * @param id A node id
+     * @return the line of the formula, or 0 if it is not a fact
+     */
+    public int lineOf(int id) {
+	return store.line(id);
+    }
+
+    /**
+     * @param line A line, starting at 1
+     * @return the id of the fact on that line
+     */
+    public int fact(int line) {
+	return store.fact(line);
+    }
+
+    /**
+     * @return the number of facts in the pool
+     */
+    public int factCount() {
+	return store.factCount();
+    }
+
+    /**
+     * Drops every node and fact so the pool can be reused without giving up
+     * the space it has grown to
+     */
+    public void clear() {
+	store.clear();
+	store.resetTable(store.tableLength());
+    }
+
+    /**
+     * Flushes a mapped pool to its file. Does nothing for other pools.
+     *
+     * @throws IOException The pool could not be flushed
+     */
+    public void force() throws IOException {
+	store.force();
+    }
+
+    /**
+     * Releases the pool. A mapped pool is flushed first.
+     *
+     * @throws IOException The pool could not be closed
+     */
+    public void close() throws IOException {
+	store.close();
+    }
+
+    /**
+     * @param id A node id
+     * @return a lightweight Statable backed by the pool, or the BaseFact
+     * itself for atoms
+     */
+    public Statable view(int id) {
+	return isAtom(id) ? atomOf(id) : new NodeView(this, id);
+    }
+
+    /**
+     * Applies a rule to whole formulas, mirroring Rule.apply()
+     *
+     * @param rule The rule to apply
+     * @param a The id of the first argument
+     * @param b The id of the second argument, ignored by unary rules
+     * @return the id of the result, or NONE if the rule cannot be applied
+     */
+    public int apply(Rule rule, int a, int b) {
+	Operator opA = operator(a);
+	int leftA = store.left(a);
+	int rightA = store.right(a);
+	switch (rule) {
+	    case MP:
+		return (opA == Operator.COND && leftA == b) ? rightA : NONE;
+	    case MT:
+		return (opA == Operator.COND && operator(b) == Operator.NOT
+			&& rightA == store.left(b)) ? not(leftA) : NONE;
+	    case DS:
+		return (opA == Operator.OR && operator(b) == Operator.NOT
+			&& store.left(b) == leftA) ? rightA : NONE;
+	    case HS:
+		return (opA == Operator.COND && operator(b) == Operator.COND
+			&& rightA == store.left(b))
+			? node(Operator.COND, leftA, store.right(b)) : NONE;
+	    case SIMP:
+		return (opA == Operator.AND) ? leftA : NONE;
+	    case CONJ:
+		return node(Operator.AND, a, b);
+	    case CD:
+		if (opA != Operator.AND || operator(b) != Operator.OR
+			|| operator(leftA) != Operator.COND
+			|| operator(rightA) != Operator.COND) {
+		    return NONE;
+		}
+		if (store.left(b) == store.left(leftA)
+			&& store.right(b) == store.left(rightA)) {
+		    return node(Operator.OR, store.right(leftA), store.right(rightA));
+		}
+		return NONE;
+	    case ABS:
+		return (opA == Operator.COND) ? node(Operator.COND, leftA,
+			node(Operator.AND, leftA, rightA)) : NONE;
+	    case ADD:
+		return node(Operator.OR, a, b);
+	    case DN:
+		return (opA == Operator.NOT && operator(leftA) == Operator.NOT)
+			? store.left(leftA) : not(not(a));
+	    case CP:
+		return node(Operator.COND, a, b);
+	    case IP:
+		return (operator(b) == Operator.AND
+			&& operator(store.right(b)) == Operator.NOT
+			&& store.left(store.right(b)) == store.left(b)) ? not(a) : NONE;
+	    default:
+		return NONE;
+	}
+    }
+
+    /**
+     * Applies a Rule of Replacement to the sub-formula at the given
+     * coordinates, mirroring Rule.doRule() with coordinates. Coordinate 1 is
+     * the first operand and 2 the second.
+     *
+     * @param rule The rule to apply
+     * @param root The whole formula
+     * @param coordinates The path to the sub-formula, or null for root itself
+     * @param from Index of the first coordinate still to follow
+     * @return the id of the rewritten formula, or NONE if the coordinates do
+     * not exist or the rule cannot be applied there
+     */
+    public int replaceAt(Rule rule, int root, int[] coordinates, int from) {
+	if (coordinates == null || from == coordinates.length) {
+	    return apply(rule, root, NONE);
+	}
+	Operator op = operator(root);
+	int coordinate = coordinates[from];
+	if (op == null || (coordinate != 1 && coordinate != 2)
+		|| (coordinate == 2 && op == Operator.NOT)) {
+	    return NONE;
+	}
+	int left = store.left(root);
+	int right = store.right(root);
+	int child = replaceAt(rule, (coordinate == 1) ? left : right,
+		coordinates, from + 1);
+	if (child == NONE) {
+	    return NONE;
+	}
+	return (coordinate == 1) ? node(op, child, right) : node(op, left, child);
+    }
+
+    /**
+     * Evaluates a formula under a truth assignment
+     *
+     * @param id The formula
+     * @param assignment Bit i holds the value of the BaseFact with ordinal i
+     * @return The truth value of the formula
+     */
+    public boolean evaluate(int id, int assignment) {
+	byte op = store.op(id);
+	if (op == ATOM) {
+	    return (assignment & (1 << store.left(id))) != 0;
+	}
+	boolean l = evaluate(store.left(id), assignment);
+	switch (OPERATORS[op]) {
+	    case NOT:
+		return !l;
+	    case AND:
+		return l && evaluate(store.right(id), assignment);
+	    case OR:
+		return l || evaluate(store.right(id), assignment);
+	    case COND:
+		return !l || evaluate(store.right(id), assignment);
+	    default:
+		return l == evaluate(store.right(id), assignment);
+	}
+    }
+
+    /**
+     * Renders a node the same way Statement.toString() would
+     *
+     * @param id A node id
+     * @return The String form of the node
+     */
+    public String toString(int id) {
+	StringBuilder sb = new StringBuilder();
+	append(sb, id);
+	return sb.toString();
+    }
+
+    private void append(StringBuilder sb, int id) {
+	byte op = store.op(id);
+	if (op == ATOM) {
+	    sb.append(ATOMS[store.left(id)]);
+	} else if (OPERATORS[op] == Operator.NOT) {
+	    sb.append(Operator.NOT);
+	    append(sb, store.left(id));
+	} else {
+	    sb.append('(');
+	    append(sb, store.left(id));
+	    sb.append(' ').append(OPERATORS[op]).append(' ');
+	    append(sb, store.right(id));
+	    sb.append(')');
+	}
+    }
+
+    /**
+     * Finds the node (op, left, right), adding it if it does not exist yet
+     */
+    private int intern(byte op, int left, int right) {
+	int mask = store.tableLength() - 1;
+	int slot = hash(op, left, right) & mask;
+	int entry;
+	while ((entry = store.slot(slot)) != 0) {
+	    int id = entry - 1;
+	    if (store.op(id) == op && store.left(id) == left
+		    && store.right(id) == right) {
+		return id;
+	    }
+	    slot = (slot + 1) & mask;
+	}
+
+	int id = store.append(op, left, right);
+	store.setSlot(slot, id + 1);
+	// Keep the table at most half full
+	if (store.count() * 2 > store.tableLength()) {
+	    rehash(store.tableLength() * 2);
+	}
+	return id;
+    }
+
+    /**
+     * Rebuilds the interning table at the given length, a power of two
+     */
+    private void rehash(int length) {
+	store.resetTable(length);
+	int mask = length - 1;
+	for (int id = 0; id < store.count(); id++) {
+	    int slot = hash(store.op(id), store.left(id), store.right(id)) & mask;
+	    while (store.slot(slot) != 0) {
+		slot = (slot + 1) & mask;
+	    }
+	    store.setSlot(slot, id + 1);
+	}
+    }
+
+    private static int hash(byte op, int left, int right) {
+	int h = op * 0x9E3779B1 + left;
+	h = h * 0x85EBCA6B + right;
+	return h ^ (h >>> 15);
+    }
+}
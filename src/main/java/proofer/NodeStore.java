@@ -0,0 +1,82 @@
+package proofer;
+
+import java.io.IOException;
+
+/**
+ * Storage behind a NodePool. Each node is a record of operator code, left
+ * child, right child and the FactBase line of the node (0 if the node is not a
+ * fact). The store also holds the open addressing table used for interning
+ * and the list of fact roots in line order.
+ *
+ * @author Ryan Kenney
+ */
+interface NodeStore {
+
+    int count();
+
+    byte op(int id);
+
+    int left(int id);
+
+    int right(int id);
+
+    int line(int id);
+
+    void setLine(int id, int line);
+
+    /**
+     * Appends a node record, growing the store as needed
+     *
+     * @return the id of the new node
+     */
+    int append(byte op, int left, int right);
+
+    int tableLength();
+
+    int slot(int index);
+
+    void setSlot(int index, int value);
+
+    /**
+     * Replaces the interning table with an empty one of the given length
+     */
+    void resetTable(int length);
+
+    int factCount();
+
+    /**
+     * @param line A line, starting at 1
+     * @return the id of the fact on that line
+     */
+    int fact(int line);
+
+    /**
+     * Appends id to the list of facts
+     */
+    void addFact(int id);
+
+    /**
+     * Drops every node and fact, keeping the space allocated so far. The
+     * interning table must be reset separately.
+     */
+    void clear();
+
+    /**
+     * @return the bytes used by the store, on or off the heap
+     */
+    long sizeInBytes();
+
+    /**
+     * Flushes durable state, if the store has any
+     *
+     * @throws IOException The store could not be flushed
+     */
+    void force() throws IOException;
+
+    /**
+     * Releases the store's resources
+     *
+     * @throws IOException The store could not be closed
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,65 @@
+package proofer;
+
+/**
+ * A Statable backed by a non-atomic node of a NodePool. Views hold nothing
+ * but the pool and the id, so they are cheap to create, and since the pool
+ * hash-conses its nodes two views are equal exactly when they refer to the
+ * same node. Atoms are viewed as their BaseFact.
+ *
+ * @author Ryan Kenney
+ */
+public class NodeView implements Statable {
+
+    private final NodePool pool;
+    private final int id;
+
+    NodeView(NodePool pool, int id) {
+	this.pool = pool;
+	this.id = id;
+    }
+
+    /**
+     * @return the id of the node in its pool
+     */
+    public int getId() {
+	return id;
+    }
+
+    /**
+     * @return the pool holding the node
+     */
+    public NodePool getPool() {
+	return pool;
+    }
+
+    @Override
+    public Operator getOperator() {
+	return pool.operator(id);
+    }
+
+    @Override
+    public Statable[] getOperands() {
+	int right = pool.right(id);
+	return new Statable[]{pool.view(pool.left(id)),
+	    (right == NodePool.NONE) ? null : pool.view(right)};
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+	if (obj instanceof NodeView) {
+	    NodeView other = (NodeView) obj;
+	    return pool == other.pool && id == other.id;
+	}
+	return false;
+    }
+
+    @Override
+    public int hashCode() {
+	return id;
+    }
+
+    @Override
+    public String toString() {
+	return pool.toString(id);
+    }
+}
@@ -0,0 +1,197 @@
+package proofer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds normalized keys for Statables so that logically redundant variants of
+ * the same fact can be recognized with a single hash lookup.
+ *
+ * Two normalizations are available and may be combined. Double negation
+ * normalization cancels out pairs of negations. AC normalization flattens
+ * nested AND, OR and BICOND operands and sorts them into a canonical order,
+ * so "(p ^ (q ^ r))" and "((r ^ p) ^ q)" share the key "(p ^ q ^ r)".
+ *
+ * @author Ryan Kenney
+ */
+public final class Normalizer {
+
+    private static final long ATOM_SEED = 0x9E3779B97F4A7C15L;
+
+    private Normalizer() {
+    }
+
+    /**
+     * Builds the double negation normal key of s, ie "~~(p ^ ~~q)" and
+     * "(p ^ q)" share the key "(p ^ q)". The key is rendered the same way
+     * as Statement.toString() so keys of facts without double negations
+     * match their String form.
+     *
+     * @param s The Statable to normalize
+     * @return The normalized key
+     */
+    public static String dnKey(Statable s) {
+	return key(s, true, false);
+    }
+
+    /**
+     * Builds the AC canonical key of s. Operands of commutative and
+     * associative operators are flattened and sorted, everything else is
+     * rendered as Statement.toString() would.
+     *
+     * @param s The Statable to normalize
+     * @return The canonical key
+     */
+    public static String acKey(Statable s) {
+	return key(s, false, true);
+    }
+
+    /**
+     * Builds the key of s under both double negation and AC normalization.
+     *
+     * @param s The Statable to normalize
+     * @return The normalized key
+     */
+    public static String canonicalKey(Statable s) {
+	return key(s, true, true);
+    }
+
+    /**
+     * Builds a normalized key of s.
+     *
+     * @param s The Statable to normalize
+     * @param dn True to cancel out double negations
+     * @param ac True to flatten and sort commutative and associative operands
+     * @return The normalized key
+     */
+    public static String key(Statable s, boolean dn, boolean ac) {
+	StringBuilder sb = new StringBuilder();
+	append(sb, s, dn, ac);
+	return sb.toString();
+    }
+
+    /**
+     * Computes a 64 bit hash of s that is invariant under AC normalization,
+     * so two Statables equal modulo commutation and association always hash
+     * the same. Unlike hashCode() this is cheap to combine into larger keys.
+     *
+     * @param s The Statable to hash
+     * @return The canonical hash
+     */
+    public static long canonicalHash(Statable s) {
+	Operator op = s.getOperator();
+	Statable[] operands = s.getOperands();
+
+	if (op == null) {
+	    if (s instanceof BaseFact) {
+		return mix(ATOM_SEED + ((BaseFact) s).ordinal());
+	    } else if (s.isAtomic()) {
+		return mix(ATOM_SEED * 31 + s.toString().hashCode());
+	    }
+	    return canonicalHash(operands[0]);
+	} else if (op == Operator.NOT) {
+	    return mix(op.ordinal() * ATOM_SEED + canonicalHash(operands[0]));
+	} else if (isAC(op)) {
+	    List<Statable> flat = new ArrayList<>();
+	    flatten(op, s, flat);
+	    long[] hashes = new long[flat.size()];
+	    for (int i = 0; i < hashes.length; i++) {
+		hashes[i] = canonicalHash(flat.get(i));
+	    }
+	    Arrays.sort(hashes);
+	    long h = mix(op.ordinal() + 1);
+	    for (long child : hashes) {
+		h = mix(h ^ child);
+	    }
+	    return h;
+	} else {
+	    long h = mix(op.ordinal() + 1);
+	    h = mix(h ^ canonicalHash(operands[0]));
+	    return mix(h * 31 ^ canonicalHash(operands[1]));
+	}
+    }
+
+    /**
+     * Checks if op is both commutative and associative
+     *
+     * @param op The operator to check
+     * @return True for AND, OR and BICOND, false otherwise
+     */
+    public static boolean isAC(Operator op) {
+	return op == Operator.AND || op == Operator.OR || op == Operator.BICOND;
+    }
+
+    private static void append(StringBuilder sb, Statable s, boolean dn,
+	    boolean ac) {
+	Operator op = s.getOperator();
+	Statable[] operands = s.getOperands();
+
+	if (op == null) {
+	    if (s.isAtomic()) {
+		sb.append(s);
+	    } else {
+		append(sb, operands[0], dn, ac);
+	    }
+	} else if (op == Operator.NOT) {
+	    // Cancel out pairs of negations
+	    Statable inner = operands[0];
+	    if (dn && inner.getOperator() == Operator.NOT) {
+		append(sb, inner.getOperands()[0], dn, ac);
+	    } else {
+		sb.append(op);
+		append(sb, inner, dn, ac);
+	    }
+	} else if (ac && isAC(op)) {
+	    List<Statable> flat = new ArrayList<>();
+	    flatten(op, s, flat);
+	    List<String> keys = new ArrayList<>(flat.size());
+	    for (Statable operand : flat) {
+		keys.add(key(operand, dn, ac));
+	    }
+	    Collections.sort(keys);
+	    sb.append('(');
+	    for (int i = 0; i < keys.size(); i++) {
+		if (i > 0) {
+		    sb.append(' ').append(op).append(' ');
+		}
+		sb.append(keys.get(i));
+	    }
+	    sb.append(')');
+	} else {
+	    sb.append('(');
+	    append(sb, operands[0], dn, ac);
+	    sb.append(' ').append(op).append(' ');
+	    append(sb, operands[1], dn, ac);
+	    sb.append(')');
+	}
+    }
+
+    /**
+     * Collects the operands of a chain of op, ie (p ^ (q ^ r)) yields p, q, r
+     *
+     * @param op The operator of the chain
+     * @param s The Statable to flatten
+     * @param out Receives the operands
+     */
+    private static void flatten(Operator op, Statable s, List<Statable> out) {
+	if (s.getOperator() == op) {
+	    flatten(op, s.getOperands()[0], out);
+	    flatten(op, s.getOperands()[1], out);
+	} else if (s.getOperator() == null && !s.isAtomic()) {
+	    flatten(op, s.getOperands()[0], out);
+	} else {
+	    out.add(s);
+	}
+    }
+
+    /**
+     * The splitmix64 finalizer, spreads the bits of h
+     */
+    private static long mix(long h) {
+	h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+	h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+	return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,256 @@
+package proofer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * NodeStore kept entirely off the heap. Node records live in a direct
+ * ByteBuffer or in a memory-mapped file; the interning table and the fact
+ * list live in direct buffers. A mapped store is durable: reopening the file
+ * restores every node and fact, and the table and fact list are rebuilt from
+ * the records in a single pass.
+ *
+ * A store holds at most about 134 million nodes, the most a single mapping
+ * can address.
+ *
+ * @author Ryan Kenney
+ */
+class OffHeapNodeStore implements NodeStore {
+
+    private static final int MAGIC = 0x50524F46; // "PROF"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 16;
+    private static final int COUNT_OFFSET = 8;
+    private final RandomAccessFile file;
+    private ByteBuffer nodes;
+    private int capacity;
+    private int count;
+    private IntBuffer table;
+    private IntBuffer facts;
+    private int factCount = 0;
+
+    /**
+     * Creates an empty store in direct memory
+     *
+     * @param capacity The number of nodes to make room for up front
+     */
+    OffHeapNodeStore(int capacity) {
+	this.file = null;
+	this.capacity = capacity;
+	this.nodes = ByteBuffer.allocateDirect(HEADER_BYTES + capacity * RECORD_BYTES);
+	this.facts = ByteBuffer.allocateDirect(64).asIntBuffer();
+	writeHeader();
+    }
+
+    /**
+     * Opens a store mapped from path, creating it if it does not exist
+     *
+     * @param path The file holding the node records
+     * @param capacity The number of nodes to make room for in a new file
+     * @throws IOException The file could not be mapped or is not a node file
+     */
+    OffHeapNodeStore(File path, int capacity) throws IOException {
+	boolean exists = path.length() >= HEADER_BYTES;
+	this.file = new RandomAccessFile(path, "rw");
+	try {
+	    if (exists) {
+		long records = (file.length() - HEADER_BYTES) / RECORD_BYTES;
+		this.capacity = (int) Math.max(records, 1);
+		this.nodes = map();
+		if (nodes.getInt(0) != MAGIC || nodes.getInt(4) != VERSION) {
+		    throw new IOException(path + " is not a node pool file");
+		}
+		this.count = nodes.getInt(COUNT_OFFSET);
+	    } else {
+		this.capacity = capacity;
+		this.nodes = map();
+		writeHeader();
+	    }
+	} catch (IOException ex) {
+	    file.close();
+	    throw ex;
+	}
+	this.facts = ByteBuffer.allocateDirect(64).asIntBuffer();
+	if (exists) {
+	    rebuildFacts();
+	}
+    }
+
+    @Override
+    public int count() {
+	return count;
+    }
+
+    @Override
+    public byte op(int id) {
+	return (byte) nodes.getInt(offset(id));
+    }
+
+    @Override
+    public int left(int id) {
+	return nodes.getInt(offset(id) + 4);
+    }
+
+    @Override
+    public int right(int id) {
+	return nodes.getInt(offset(id) + 8);
+    }
+
+    @Override
+    public int line(int id) {
+	return nodes.getInt(offset(id) + 12);
+    }
+
+    @Override
+    public void setLine(int id, int line) {
+	nodes.putInt(offset(id) + 12, line);
+    }
+
+    @Override
+    public int append(byte op, int left, int right) {
+	if (count == capacity) {
+	    grow();
+	}
+	int id = count++;
+	int offset = offset(id);
+	nodes.putInt(offset, op);
+	nodes.putInt(offset + 4, left);
+	nodes.putInt(offset + 8, right);
+	nodes.putInt(offset + 12, 0);
+	nodes.putInt(COUNT_OFFSET, count);
+	return id;
+    }
+
+    @Override
+    public int tableLength() {
+	return (table == null) ? 0 : table.capacity();
+    }
+
+    @Override
+    public int slot(int index) {
+	return table.get(index);
+    }
+
+    @Override
+    public void setSlot(int index, int value) {
+	table.put(index, value);
+    }
+
+    @Override
+    public void resetTable(int length) {
+	// Fresh direct buffers are zero filled
+	table = ByteBuffer.allocateDirect(length * 4).asIntBuffer();
+    }
+
+    @Override
+    public int factCount() {
+	return factCount;
+    }
+
+    @Override
+    public int fact(int line) {
+	return facts.get(line - 1);
+    }
+
+    @Override
+    public void addFact(int id) {
+	if (factCount == facts.capacity()) {
+	    facts = copyOf(facts, facts.capacity() * 2);
+	}
+	facts.put(factCount++, id);
+    }
+
+    @Override
+    public void clear() {
+	count = 0;
+	factCount = 0;
+	nodes.putInt(COUNT_OFFSET, count);
+    }
+
+    @Override
+    public long sizeInBytes() {
+	return nodes.capacity() + tableLength() * 4L + facts.capacity() * 4L;
+    }
+
+    @Override
+    public void force() {
+	if (nodes instanceof MappedByteBuffer) {
+	    ((MappedByteBuffer) nodes).force();
+	}
+    }
+
+    @Override
+    public void close() throws IOException {
+	if (file != null) {
+	    force();
+	    file.close();
+	}
+    }
+
+    private void writeHeader() {
+	nodes.putInt(0, MAGIC);
+	nodes.putInt(4, VERSION);
+	nodes.putInt(COUNT_OFFSET, count);
+    }
+
+    private static int offset(int id) {
+	return HEADER_BYTES + id * RECORD_BYTES;
+    }
+
+    private ByteBuffer map() throws IOException {
+	return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+		HEADER_BYTES + (long) capacity * RECORD_BYTES);
+    }
+
+    private void grow() {
+	if (capacity > (Integer.MAX_VALUE - HEADER_BYTES) / RECORD_BYTES / 2) {
+	    throw new IllegalStateException("Node pool is full");
+	}
+	capacity *= 2;
+	if (file != null) {
+	    try {
+		nodes = map();
+	    } catch (IOException ex) {
+		throw new IllegalStateException("Could not grow node pool file", ex);
+	    }
+	} else {
+	    ByteBuffer bigger = ByteBuffer.allocateDirect(HEADER_BYTES + capacity * RECORD_BYTES);
+	    nodes.clear();
+	    bigger.put(nodes);
+	    nodes = bigger;
+	}
+    }
+
+    /**
+     * Restores the fact list from the line stored in each record
+     */
+    private void rebuildFacts() {
+	for (int id = 0; id < count; id++) {
+	    factCount = Math.max(factCount, line(id));
+	}
+	int length = 64;
+	while (length < factCount) {
+	    length *= 2;
+	}
+	facts = ByteBuffer.allocateDirect(length * 4).asIntBuffer();
+	for (int id = 0; id < count; id++) {
+	    if (line(id) > 0) {
+		facts.put(line(id) - 1, id);
+	    }
+	}
+    }
+
+    private static IntBuffer copyOf(IntBuffer buf, int length) {
+	IntBuffer bigger = ByteBuffer.allocateDirect(length * 4).asIntBuffer();
+	for (int i = 0; i < buf.capacity(); i++) {
+	    bigger.put(i, buf.get(i));
+	}
+	return bigger;
+    }
+}
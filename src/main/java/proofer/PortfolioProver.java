@@ -0,0 +1,282 @@
+package proofer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Races several strategies on separate threads and takes the first
+ * conclusive answer. Forward saturation and goal-directed search look for a
+ * proof, while the SAT, tableau and truth table checks decide validity
+ * without one and find counter-models of invalid arguments. Once an answer
+ * is in, the other strategies are interrupted and give up at their next
+ * check.
+ *
+ * No strategy wins on every argument, so racing them bounds the time spent
+ * on any argument by the fastest strategy for it rather than by whichever
+ * one happens to be tried.
+ *
+ * @author Ryan Kenney
+ */
+public class PortfolioProver implements Prover {
+
+    /**
+     * What a strategy found out about an argument
+     */
+    public enum Outcome {
+
+	VALID, INVALID, UNKNOWN;
+    }
+
+    /**
+     * The answer of the portfolio: the outcome, the strategy that gave it and
+     * the proof or counter-model backing it, if any
+     */
+    public static class Verdict {
+
+	private final Outcome outcome;
+	private final String strategy;
+	private final Proof proof;
+	private final Map<BaseFact, Boolean> counterModel;
+	private long elapsedNanos;
+
+	Verdict(Outcome outcome, String strategy, Proof proof,
+		Map<BaseFact, Boolean> counterModel) {
+	    this.outcome = outcome;
+	    this.strategy = strategy;
+	    this.proof = proof;
+	    this.counterModel = counterModel;
+	}
+
+	public Outcome getOutcome() {
+	    return outcome;
+	}
+
+	/**
+	 * @return the name of the strategy that decided, or null if none did
+	 */
+	public String getStrategy() {
+	    return strategy;
+	}
+
+	/**
+	 * @return the proof, or null if the verdict is not backed by one
+	 */
+	public Proof getProof() {
+	    return proof;
+	}
+
+	/**
+	 * @return an assignment under which the premises hold and the
+	 * conclusion does not, or null unless the argument is invalid
+	 */
+	public Map<BaseFact, Boolean> getCounterModel() {
+	    return counterModel;
+	}
+
+	/**
+	 * @return the time from starting the race to the verdict
+	 */
+	public long getElapsedNanos() {
+	    return elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+	    String ret = outcome.toString();
+	    if (strategy != null) {
+		ret += " (" + strategy + ", "
+			+ TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms)";
+	    }
+	    if (counterModel != null) {
+		ret += "\nCounter-model: " + counterModel;
+	    }
+	    return ret;
+	}
+    }
+
+    private static final Verdict UNKNOWN = new Verdict(Outcome.UNKNOWN,
+	    null, null, null);
+    private final ExecutorService executor = Executors.newCachedThreadPool(
+	    new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+		    Thread t = new Thread(r, "proofer-portfolio");
+		    t.setDaemon(true);
+		    return t;
+		}
+	    });
+    private long timeoutMillis = 10000;
+
+    /**
+     * @param timeoutMillis How long to wait for a conclusive answer
+     */
+    public void setTimeout(long timeoutMillis) {
+	this.timeoutMillis = Math.max(1, timeoutMillis);
+    }
+
+    /**
+     * Races the strategies for a proof. An argument found invalid ends the
+     * race as well, since it has no proof.
+     */
+    @Override
+    public Proof search(List<Statable> premises, Statable conclusion) {
+	return decide(premises, conclusion, true).getProof();
+    }
+
+    /**
+     * Races the strategies and returns the first conclusive answer
+     *
+     * @param premises The premises
+     * @param conclusion The conclusion
+     * @param needProof True to only accept a valid verdict with a proof,
+     * false to accept the first valid or invalid verdict
+     * @return The verdict, UNKNOWN if no strategy decided in time. A valid
+     * verdict without a proof is returned when a proof was needed but the
+     * semantic checks were the only ones to decide.
+     */
+    public Verdict decide(List<Statable> premises, Statable conclusion,
+	    boolean needProof) {
+	long start = System.nanoTime();
+	long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+	CompletionService<Verdict> race = new ExecutorCompletionService<>(executor);
+	List<Future<Verdict>> running = new ArrayList<>();
+	for (Callable<Verdict> strategy : strategies(premises, conclusion)) {
+	    running.add(race.submit(strategy));
+	}
+
+	Verdict fallback = UNKNOWN;
+	try {
+	    for (int left = running.size(); left > 0; left--) {
+		Future<Verdict> done = race.poll(deadline - System.nanoTime(),
+			TimeUnit.NANOSECONDS);
+		if (done == null) {
+		    break;
+		}
+		Verdict v;
+		try {
+		    v = done.get();
+		} catch (ExecutionException ex) {
+		    continue;
+		}
+		if (v == UNKNOWN) {
+		    continue;
+		}
+		v.elapsedNanos = System.nanoTime() - start;
+		if (v.outcome == Outcome.INVALID
+			|| (v.outcome == Outcome.VALID
+			&& (v.proof != null || !needProof))) {
+		    return v;
+		} else if (fallback == UNKNOWN) {
+		    fallback = v;
+		}
+	    }
+	    return fallback;
+	} catch (InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	    return fallback;
+	} finally {
+	    for (Future<Verdict> f : running) {
+		f.cancel(true);
+	    }
+	}
+    }
+
+    /**
+     * Stops the strategy threads. Running races are interrupted.
+     */
+    public void shutdown() {
+	executor.shutdownNow();
+    }
+
+    private static List<Callable<Verdict>> strategies(
+	    final List<Statable> premises, final Statable conclusion) {
+	List<Callable<Verdict>> ret = new ArrayList<>();
+	ret.add(new Callable<Verdict>() {
+	    @Override
+	    public Verdict call() throws Exception {
+		return proven("saturation", new ConditionalProver(
+			new SelectingProver(new ProofSearch()))
+			.search(premises, conclusion));
+	    }
+	});
+	ret.add(new Callable<Verdict>() {
+	    @Override
+	    public Verdict call() throws Exception {
+		return proven("goal-directed", new ConditionalProver(
+			new GoalDirectedSearch()).search(premises, conclusion));
+	    }
+	});
+	if (!isPropositional(premises, conclusion)) {
+	    // The decision procedures only know truth-functional atoms
+	    return ret;
+	}
+	ret.add(new Callable<Verdict>() {
+	    @Override
+	    public Verdict call() throws InterruptedException {
+		Map<BaseFact, Boolean> model = SatSolver.findCounterModel(premises,
+			conclusion);
+		return decided("sat", model);
+	    }
+	});
+	ret.add(new Callable<Verdict>() {
+	    @Override
+	    public Verdict call() throws InterruptedException {
+		return decided("tableau",
+			Tableau.findCounterModel(premises, conclusion));
+	    }
+	});
+	ret.add(new Callable<Verdict>() {
+	    @Override
+	    public Verdict call() {
+		CompiledFormula f = CompiledFormula.compile(
+			CompiledFormula.implication(premises, conclusion));
+		long assignment = f.findAssignment(false);
+		if (assignment < 0) {
+		    return decided("truth-table", null);
+		}
+		Map<BaseFact, Boolean> model = new EnumMap<>(BaseFact.class);
+		List<BaseFact> variables = f.getVariables();
+		for (int i = 0; i < variables.size(); i++) {
+		    model.put(variables.get(i), ((assignment >>> i) & 1) != 0);
+		}
+		return decided("truth-table", model);
+	    }
+	});
+	return ret;
+    }
+
+    private static boolean isPropositional(List<Statable> premises,
+	    Statable conclusion) {
+	for (Statable premise : premises) {
+	    if (!Quantifiers.isPropositional(premise)) {
+		return false;
+	    }
+	}
+	return Quantifiers.isPropositional(conclusion);
+    }
+
+    private static Verdict proven(String strategy, Proof proof) {
+	return (proof == null) ? UNKNOWN
+		: new Verdict(Outcome.VALID, strategy, proof, null);
+    }
+
+    private static Verdict decided(String strategy,
+	    Map<BaseFact, Boolean> counterModel) {
+	return (counterModel == null)
+		? new Verdict(Outcome.VALID, strategy, null, null)
+		: new Verdict(Outcome.INVALID, strategy, null,
+			Collections.unmodifiableMap(counterModel));
+    }
+}
@@ -0,0 +1,112 @@
+package proofer;
+
+import java.util.Arrays;
+
+/**
+ * An atomic first-order formula: a predicate letter applied to terms, ie
+ * "Fa" or "Gxy". Predicate letters are the capitals other than E, which
+ * marks the existential quantifier, and V, which is disjunction.
+ *
+ * @author Ryan Kenney
+ */
+public final class Predicate implements Statable {
+
+    private final char name;
+    private final Term[] arguments;
+    private final String text;
+
+    /**
+     * @param name The predicate letter
+     * @param arguments The terms it is applied to, at least one
+     */
+    public Predicate(char name, Term... arguments) {
+	if (!isPredicate(name) || arguments.length == 0) {
+	    throw new IllegalArgumentException("Not a predicate: " + name);
+	}
+	this.name = name;
+	this.arguments = arguments.clone();
+	StringBuilder sb = new StringBuilder().append(name);
+	for (Term t : arguments) {
+	    sb.append(t);
+	}
+	this.text = sb.toString();
+    }
+
+    /**
+     * @param c The letter to check
+     * @return True if c is a predicate letter, false otherwise
+     */
+    public static boolean isPredicate(char c) {
+	return c >= 'A' && c <= 'Z' && c != 'E' && c != 'V';
+    }
+
+    /**
+     * @return the predicate letter
+     */
+    public char getName() {
+	return name;
+    }
+
+    /**
+     * @return the number of terms
+     */
+    public int getArity() {
+	return arguments.length;
+    }
+
+    /**
+     * @param i The position, starting at 0
+     * @return the term at that position
+     */
+    public Term getArgument(int i) {
+	return arguments[i];
+    }
+
+    /**
+     * @param from The term to replace
+     * @param to The term to put in its place
+     * @return this predicate with every from replaced by to
+     */
+    public Predicate substitute(Term from, Term to) {
+	Term[] replaced = null;
+	for (int i = 0; i < arguments.length; i++) {
+	    if (arguments[i] == from) {
+		if (replaced == null) {
+		    replaced = arguments.clone();
+		}
+		replaced[i] = to;
+	    }
+	}
+	return (replaced == null) ? this : new Predicate(name, replaced);
+    }
+
+    @Override
+    public Operator getOperator() {
+	return null;
+    }
+
+    @Override
+    public Statable[] getOperands() {
+	return new Statable[]{this};
+    }
+
+    @Override
+    public boolean isAtomic() {
+	return true;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+	return obj instanceof Predicate && text.equals(obj.toString());
+    }
+
+    @Override
+    public int hashCode() {
+	return text.hashCode() ^ Arrays.hashCode(arguments);
+    }
+
+    @Override
+    public String toString() {
+	return text;
+    }
+}
@@ -0,0 +1,194 @@
+package proofer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Ranks premises by their relevance to a conclusion, in the manner of SInE.
+ *
+ * The symbols of a statement are the BaseFacts it mentions. A premise is
+ * triggered by one of its symbols when that symbol is among the rarest in the
+ * premise: it occurs in no more than tolerance times as many premises as the
+ * premise's rarest symbol. Starting from the conclusion's symbols, premises
+ * triggered by known symbols are selected level by level, each selected
+ * premise contributing its own symbols to the next level.
+ *
+ * Premises are ranked by level, then by how many sub-statements they share
+ * with the conclusion (keyed modulo commutation and association), so that
+ * premises mentioning the same compound statements come first among equals.
+ *
+ * @author Ryan Kenney
+ */
+public class PremiseSelector {
+
+    private double tolerance = 1.5;
+
+    /**
+     * @param tolerance How much more common than a premise's rarest symbol a
+     * symbol may be and still trigger the premise, at least 1
+     */
+    public void setTolerance(double tolerance) {
+	this.tolerance = Math.max(1, tolerance);
+    }
+
+    /**
+     * Orders premises from most to least relevant
+     *
+     * @param premises The premises
+     * @param conclusion The conclusion
+     * @return The premises, most relevant first
+     */
+    public List<Statable> rank(final List<Statable> premises, Statable conclusion) {
+	int n = premises.size();
+	List<Set<String>> symbols = new ArrayList<>(n);
+	Map<String, Integer> occurrences = new HashMap<>();
+	for (Statable premise : premises) {
+	    Set<String> sym = new HashSet<>();
+	    collect(premise, sym, false);
+	    symbols.add(sym);
+	    for (String s : sym) {
+		Integer count = occurrences.get(s);
+		occurrences.put(s, (count == null) ? 1 : count + 1);
+	    }
+	}
+
+	// Which premises each symbol triggers
+	Map<String, List<Integer>> triggers = new HashMap<>();
+	for (int i = 0; i < n; i++) {
+	    int rarest = Integer.MAX_VALUE;
+	    for (String s : symbols.get(i)) {
+		rarest = Math.min(rarest, occurrences.get(s));
+	    }
+	    for (String s : symbols.get(i)) {
+		if (occurrences.get(s) <= tolerance * rarest) {
+		    List<Integer> list = triggers.get(s);
+		    if (list == null) {
+			list = new ArrayList<>();
+			triggers.put(s, list);
+		    }
+		    list.add(i);
+		}
+	    }
+	}
+
+	// Breadth first from the conclusion's symbols
+	final int[] level = new int[n];
+	Arrays.fill(level, Integer.MAX_VALUE);
+	Set<String> goalSymbols = new HashSet<>();
+	collect(conclusion, goalSymbols, false);
+	Set<String> visited = new HashSet<>(goalSymbols);
+	List<String> frontier = new ArrayList<>(goalSymbols);
+	for (int depth = 1; !frontier.isEmpty(); depth++) {
+	    List<String> next = new ArrayList<>();
+	    for (String s : frontier) {
+		List<Integer> triggered = triggers.get(s);
+		if (triggered == null) {
+		    continue;
+		}
+		for (int i : triggered) {
+		    if (level[i] != Integer.MAX_VALUE) {
+			continue;
+		    }
+		    level[i] = depth;
+		    for (String t : symbols.get(i)) {
+			if (visited.add(t)) {
+			    next.add(t);
+			}
+		    }
+		}
+	    }
+	    frontier = next;
+	}
+
+	Set<String> goalParts = new HashSet<>();
+	collect(conclusion, goalParts, true);
+	final int[] overlap = new int[n];
+	for (int i = 0; i < n; i++) {
+	    Set<String> parts = new HashSet<>();
+	    collect(premises.get(i), parts, true);
+	    for (String s : parts) {
+		if (goalParts.contains(s)) {
+		    overlap[i]++;
+		}
+	    }
+	}
+
+	List<Integer> order = new ArrayList<>(n);
+	for (int i = 0; i < n; i++) {
+	    order.add(i);
+	}
+	Collections.sort(order, new Comparator<Integer>() {
+	    @Override
+	    public int compare(Integer a, Integer b) {
+		if (level[a] != level[b]) {
+		    return Integer.compare(level[a], level[b]);
+		}
+		if (overlap[a] != overlap[b]) {
+		    return Integer.compare(overlap[b], overlap[a]);
+		}
+		return Integer.compare(a, b);
+	    }
+	});
+	List<Statable> ranked = new ArrayList<>(n);
+	for (int i : order) {
+	    ranked.add(premises.get(i));
+	}
+	return ranked;
+    }
+
+    /**
+     * Picks the k most relevant premises
+     *
+     * @param premises The premises
+     * @param conclusion The conclusion
+     * @param k How many premises to keep
+     * @return The selected premises, in their original order
+     */
+    public List<Statable> select(List<Statable> premises, Statable conclusion,
+	    int k) {
+	if (k >= premises.size()) {
+	    return new ArrayList<>(premises);
+	}
+	Set<Statable> chosen = Collections.newSetFromMap(
+		new IdentityHashMap<Statable, Boolean>());
+	chosen.addAll(rank(premises, conclusion).subList(0, k));
+	List<Statable> ret = new ArrayList<>(k);
+	for (Statable premise : premises) {
+	    if (chosen.contains(premise)) {
+		ret.add(premise);
+	    }
+	}
+	return ret;
+    }
+
+    /**
+     * Collects the atoms of s, or with compound set the AC keys of every
+     * sub-statement of s as well
+     */
+    private static void collect(Statable s, Set<String> out, boolean compound) {
+	Operator op = s.getOperator();
+	if (op == null) {
+	    if (s.isAtomic()) {
+		out.add(s.toString());
+	    } else {
+		collect(s.getOperands()[0], out, compound);
+	    }
+	    return;
+	}
+	if (compound) {
+	    out.add(Normalizer.acKey(s));
+	}
+	collect(s.getOperands()[0], out, compound);
+	if (op != Operator.NOT) {
+	    collect(s.getOperands()[1], out, compound);
+	}
+    }
+}
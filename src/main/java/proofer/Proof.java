@@ -0,0 +1,114 @@
+package proofer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A derivation of a conclusion. Lines are numbered from 1 in the order of
+ * getSteps() and every step only refers to lines before it.
+ *
+ * An assumption opens a sub-proof that runs up to the CP or IP line
+ * discharging it. Once it is closed its lines may no longer be referred to,
+ * which isVisible() checks.
+ *
+ * @author Ryan Kenney
+ */
+public class Proof {
+
+    private final List<ProofStep> steps;
+    private final Statable conclusion;
+    // Innermost assumption around each line, the one around each assumption
+    // and the last line of each sub-proof, all indexed by line
+    private final int[] frameOf;
+    private final int[] parentOf;
+    private final int[] frameEnd;
+
+    /**
+     * @param steps The lines of the proof, in order
+     * @param conclusion The statement the proof derives
+     */
+    public Proof(List<ProofStep> steps, Statable conclusion) {
+	this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+	this.conclusion = conclusion;
+
+	int size = this.steps.size();
+	frameOf = new int[size + 1];
+	parentOf = new int[size + 1];
+	frameEnd = new int[size + 1];
+	int open = 0;
+	for (int line = 1; line <= size; line++) {
+	    ProofStep step = this.steps.get(line - 1);
+	    Rule rule = step.getRule();
+	    if (step.isAssumption()) {
+		parentOf[line] = open;
+		frameEnd[line] = size;
+		open = line;
+	    } else if (rule != null && rule.isDischarge() && open != 0
+		    && step.getReferences()[0] == open) {
+		frameEnd[open] = line - 1;
+		open = parentOf[open];
+	    }
+	    frameOf[line] = open;
+	}
+    }
+
+    /**
+     * @return the lines of the proof, in order
+     */
+    public List<ProofStep> getSteps() {
+	return steps;
+    }
+
+    /**
+     * @param line The line number, starting at 1
+     * @return the step on that line
+     */
+    public ProofStep getStep(int line) {
+	return steps.get(line - 1);
+    }
+
+    /**
+     * @return the conclusion of the proof
+     */
+    public Statable getConclusion() {
+	return conclusion;
+    }
+
+    /**
+     * @return the number of lines in the proof
+     */
+    public int size() {
+	return steps.size();
+    }
+
+    /**
+     * Checks if a line may be referred to from another, ie it comes first
+     * and every sub-proof it is in is still open at the other line
+     *
+     * @param target The line referred to
+     * @param from The referring line, or size() + 1 for the conclusion
+     * @return True if from may refer to target, false otherwise
+     */
+    public boolean isVisible(int target, int from) {
+	if (target < 1 || target >= from) {
+	    return false;
+	}
+	for (int a = frameOf[target]; a != 0; a = parentOf[a]) {
+	    if (from > frameEnd[a]) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder sb = new StringBuilder();
+	for (int i = 0; i < steps.size(); i++) {
+	    sb.append(i + 1).append('\t').append(steps.get(i)).append('\n');
+	}
+	sb.append("Therefore ").append(conclusion);
+	return sb.toString();
+    }
+}
@@ -0,0 +1,208 @@
+package proofer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compresses a Proof down to the lines its conclusion depends on.
+ *
+ * Duplicate lines are merged into the first line holding the same fact that
+ * is visible from them, and references left unknown by a wildcard are
+ * resolved against the earlier visible lines. Assumptions are never merged,
+ * so every sub-proof keeps its shape. The justifications are then walked
+ * back from the first line holding the conclusion, every line not reached
+ * is dropped and the remaining lines are renumbered compactly. Premises are
+ * kept unless told otherwise, so the minimized proof still shows the whole
+ * argument.
+ *
+ * @author Ryan Kenney
+ */
+public class ProofMinimizer {
+
+    private boolean dropUnusedPremises = false;
+
+    /**
+     * @param dropUnusedPremises True to also drop premises the conclusion does
+     * not depend on, false to keep every premise
+     */
+    public void setDropUnusedPremises(boolean dropUnusedPremises) {
+	this.dropUnusedPremises = dropUnusedPremises;
+    }
+
+    /**
+     * Minimizes a proof
+     *
+     * @param proof The proof to minimize
+     * @return The minimized proof
+     * @throws IllegalArgumentException The proof never derives its conclusion
+     * as written, or a line cannot be justified from the lines before it
+     */
+    public Proof minimize(Proof proof) {
+	int size = proof.size();
+	Statable conclusion = proof.getConclusion();
+
+	// Merge duplicates into the first visible line holding each fact
+	int[] canonical = new int[size + 1];
+	Map<String, List<Integer>> first = new HashMap<>();
+	int goal = 0;
+	for (int line = 1; line <= size; line++) {
+	    ProofStep step = proof.getStep(line);
+	    String key = step.getFact().toString();
+	    List<Integer> seen = first.get(key);
+	    if (seen == null) {
+		seen = new ArrayList<>(1);
+		first.put(key, seen);
+	    }
+	    canonical[line] = line;
+	    if (!step.isAssumption()) {
+		for (int earlier : seen) {
+		    if (proof.isVisible(earlier, line)) {
+			canonical[line] = earlier;
+			break;
+		    }
+		}
+	    }
+	    if (canonical[line] == line) {
+		seen.add(line);
+	    }
+	    if (goal == 0 && key.equals(conclusion.toString())
+		    && proof.isVisible(line, size + 1)) {
+		goal = line;
+	    }
+	}
+	if (goal == 0) {
+	    throw new IllegalArgumentException(
+		    "The conclusion is never derived as written");
+	}
+
+	// Walk the justifications back from the conclusion
+	int[][] references = new int[size + 1][];
+	boolean[] needed = new boolean[size + 1];
+	List<Integer> stack = new ArrayList<>();
+	stack.add(goal);
+	while (!stack.isEmpty()) {
+	    int line = stack.remove(stack.size() - 1);
+	    if (needed[line]) {
+		continue;
+	    }
+	    needed[line] = true;
+	    references[line] = resolve(proof, line, canonical);
+	    for (int ref : references[line]) {
+		stack.add(ref);
+	    }
+	}
+
+	// Renumber what is left
+	int[] renumber = new int[size + 1];
+	List<ProofStep> steps = new ArrayList<>();
+	for (int line = 1; line <= size; line++) {
+	    ProofStep step = proof.getStep(line);
+	    if (canonical[line] != line) {
+		continue;
+	    }
+	    if (step.isPremise() && !needed[line] && !dropUnusedPremises) {
+		steps.add(step);
+	    } else if (needed[line]) {
+		int[] refs = references[line].clone();
+		for (int i = 0; i < refs.length; i++) {
+		    refs[i] = renumber[refs[i]];
+		}
+		steps.add((step.getRule() == null) ? step : new ProofStep(
+			step.getFact(), step.getRule(), refs, step.getCoordinates()));
+	    } else {
+		continue;
+	    }
+	    renumber[line] = steps.size();
+	}
+	return new Proof(steps, conclusion);
+    }
+
+    /**
+     * Finds the lines justifying a step, mapped onto the first line holding
+     * each fact. References left at 0 are searched for among earlier lines.
+     */
+    private static int[] resolve(Proof proof, int line, int[] canonical) {
+	ProofStep step = proof.getStep(line);
+	int[] refs = step.getReferences().clone();
+	for (int i = 0; i < refs.length; i++) {
+	    if (refs[i] >= line) {
+		throw new IllegalArgumentException("Line " + line
+			+ " refers to a later line");
+	    }
+	    refs[i] = (refs[i] == 0) ? 0 : canonical[refs[i]];
+	}
+	if (step.getRule() == null) {
+	    return refs;
+	}
+
+	int[] candidates = new int[refs.length];
+	if (search(proof, step, line, refs, candidates, 0, canonical)) {
+	    return candidates;
+	}
+	throw new IllegalArgumentException("Line " + line + " cannot be justified");
+    }
+
+    /**
+     * Fills in unknown references one argument at a time, backtracking until
+     * the rule reproduces the step's fact
+     */
+    private static boolean search(Proof proof, ProofStep step, int line,
+	    int[] refs, int[] candidates, int arg, int[] canonical) {
+	if (arg == refs.length) {
+	    return produces(proof, step, candidates);
+	}
+	if (refs[arg] != 0) {
+	    candidates[arg] = refs[arg];
+	    return search(proof, step, line, refs, candidates, arg + 1, canonical);
+	}
+	for (int ref = 1; ref < line; ref++) {
+	    if (canonical[ref] != ref || !proof.isVisible(ref, line)) {
+		continue;
+	    }
+	    candidates[arg] = ref;
+	    if (search(proof, step, line, refs, candidates, arg + 1, canonical)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Checks if the step's rule, applied to the given lines, yields its fact
+     */
+    private static boolean produces(Proof proof, ProofStep step, int[] lines) {
+	Rule rule = step.getRule();
+	Statable fact = step.getFact();
+	Statable arg0 = proof.getStep(lines[0]).getFact();
+	try {
+	    if (rule.isQuantifier()) {
+		return Quantifiers.follows(rule, arg0, fact);
+	    }
+	    if (rule == Rule.ADD) {
+		// The second disjunct came out of thin air
+		return fact.getOperator() == Operator.OR
+			&& fact.getOperands()[0].toString().equals(arg0.toString());
+	    }
+	    if (step.getCoordinates() != null) {
+		List<Statable> results = rule.doRule(Collections.singletonList(arg0),
+			step.getCoordinates(), true);
+		if (results != null) {
+		    for (Statable s : results) {
+			if (s.toString().equals(fact.toString())) {
+			    return true;
+			}
+		    }
+		}
+		return false;
+	    }
+	    Statable arg1 = (lines.length > 1) ? proof.getStep(lines[1]).getFact() : null;
+	    return rule.mayApply(arg0, arg1)
+		    && rule.apply(arg0, arg1).toString().equals(fact.toString());
+	} catch (RuleFormatException ex) {
+	    return false;
+	}
+    }
+}
@@ -0,0 +1,359 @@
+package proofer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Automated best-first proof search over the Rules of Inference.
+ *
+ * The search follows the given-clause loop: the smallest unprocessed fact is
+ * taken from the frontier, combined with every processed fact by each rule,
+ * and the new facts join the frontier. Facts larger than the largest premise
+ * or the conclusion are discarded so that Conjunction and Absorption cannot
+ * grow forever. Facts are told apart syntactically, since that is how the
+ * rules match their arguments, and so is the conclusion: no rule turns
+ * (q ^ p) into (p ^ q), so deriving one is no proof of the other.
+ *
+ * Memory is bounded by a heap budget. Once the frontier passes its share of
+ * the budget it spills to sorted runs in memory-mapped files, and once the
+ * seen set passes its share it moves into a memory-mapped Bloom filter. A
+ * Bloom filter false positive can make the search skip a fact, so a spilled
+ * search may miss a proof that an unbounded one would find, but it never
+ * reports an invalid one.
+ *
+ * Interrupting the searching thread makes the search give up and return null.
+ *
+ * @author Ryan Kenney
+ */
+public class ProofSearch implements Prover {
+
+    private static final double SEEN_FPP = 0.001;
+    private long heapBudget = Runtime.getRuntime().maxMemory() / 4;
+    private int maxSteps = 10000;
+    private int maxFormulaSize = 0;
+    private File spillDirectory = null;
+    private SearchProfiler profiler = null;
+    // Per search state
+    private List<ProofStep> processed;
+    private Map<String, Integer> processedKeys;
+    private SpillingFrontier frontier;
+    private SeenSet seen;
+    private String goalKey;
+    private int sizeLimit;
+    private long seq;
+    private Integer goalLine;
+    // Statistics of the last search
+    private int frontierSpills = 0;
+    private boolean seenSpilled = false;
+
+    /**
+     * The set of every fact generated so far. Starts out as an exact hash set
+     * and moves into a mapped Bloom filter when it outgrows its budget.
+     */
+    private class SeenSet {
+
+	private Set<String> keys = new HashSet<>();
+	private long[] hashes = new long[64];
+	private long bytes = 0;
+	private BloomFilter filter = null;
+	private File file = null;
+
+	/**
+	 * @return True if fact was not seen before, false otherwise
+	 */
+	boolean add(String key) throws IOException {
+	    long hash = BloomFilter.hash(key);
+	    if (filter != null) {
+		if (filter.mightContain(hash)) {
+		    return false;
+		}
+		filter.add(hash);
+		return true;
+	    }
+	    if (!keys.add(key)) {
+		return false;
+	    }
+	    if (keys.size() > hashes.length) {
+		hashes = Arrays.copyOf(hashes, hashes.length * 2);
+	    }
+	    hashes[keys.size() - 1] = hash;
+	    bytes += 72 + 2L * key.length();
+	    if (bytes > heapBudget / 2) {
+		spill();
+	    }
+	    return true;
+	}
+
+	private void spill() throws IOException {
+	    file = File.createTempFile("proofer-seen", ".bloom", spillDirectory);
+	    file.deleteOnExit();
+	    filter = BloomFilter.mapped(file, 16L * Math.max(keys.size(), maxSteps),
+		    SEEN_FPP);
+	    for (int i = 0; i < keys.size(); i++) {
+		filter.add(hashes[i]);
+	    }
+	    keys = null;
+	    hashes = null;
+	}
+
+	boolean isSpilled() {
+	    return filter != null;
+	}
+
+	void close() throws IOException {
+	    if (filter != null) {
+		filter.close();
+		file.delete();
+	    }
+	}
+    }
+
+    /**
+     * Sets the heap budget. Half of it goes to the frontier and half to the
+     * seen set; processed facts are always kept on the heap.
+     *
+     * @param heapBudget The budget in bytes
+     */
+    public void setHeapBudget(long heapBudget) {
+	this.heapBudget = heapBudget;
+    }
+
+    /**
+     * @param maxSteps The number of facts to process before giving up
+     */
+    public void setMaxSteps(int maxSteps) {
+	this.maxSteps = maxSteps;
+    }
+
+    /**
+     * @param maxFormulaSize The largest fact, in nodes, the search keeps, or 0
+     * to use the largest premise or conclusion
+     */
+    public void setMaxFormulaSize(int maxFormulaSize) {
+	this.maxFormulaSize = maxFormulaSize;
+    }
+
+    /**
+     * @param spillDirectory Where spill files are created, or null for the
+     * default temporary directory
+     */
+    public void setSpillDirectory(File spillDirectory) {
+	this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * @param profiler Records where the search spends its time, or null to
+     * not profile
+     */
+    public void setProfiler(SearchProfiler profiler) {
+	this.profiler = profiler;
+    }
+
+    /**
+     * @return the number of sorted runs the last search spilled to disk
+     */
+    public int getFrontierSpills() {
+	return frontierSpills;
+    }
+
+    /**
+     * @return True if the last search moved its seen set into a Bloom filter
+     */
+    public boolean isSeenSpilled() {
+	return seenSpilled;
+    }
+
+    @Override
+    public Proof search(List<Statable> premises, Statable conclusion)
+	    throws IOException {
+	processed = new ArrayList<>();
+	processedKeys = new HashMap<>();
+	frontier = new SpillingFrontier(heapBudget / 2, spillDirectory);
+	seen = new SeenSet();
+	goalKey = conclusion.toString();
+	goalLine = null;
+	seq = 0;
+	sizeLimit = (maxFormulaSize > 0) ? maxFormulaSize
+		: Prover.defaultSizeLimit(premises, conclusion);
+	if (profiler != null) {
+	    profiler.enter("ProofSearch");
+	}
+
+	try {
+	    // Premises are processed first and in order so they keep their lines
+	    for (Statable premise : premises) {
+		String key = premise.toString();
+		seen.add(key);
+		if (!processedKeys.containsKey(key)) {
+		    process(new SpillingFrontier.Entry(premise, null, 0, 0, seq++), key);
+		}
+	    }
+
+	    while (goalLine == null && !frontier.isEmpty()
+		    && processed.size() < maxSteps
+		    && !Thread.currentThread().isInterrupted()) {
+		SpillingFrontier.Entry given = frontier.poll();
+		String key = given.fact.toString();
+		if (!processedKeys.containsKey(key)) {
+		    process(given, key);
+		}
+	    }
+	    return (goalLine == null) ? null : buildProof();
+	} finally {
+	    if (profiler != null) {
+		profiler.exit();
+	    }
+	    frontierSpills = frontier.getSpills();
+	    seenSpilled = seen.isSpilled();
+	    frontier.close();
+	    seen.close();
+	}
+    }
+
+    /**
+     * Adds the given fact to the processed set and combines it with every
+     * processed fact, including itself
+     */
+    private void process(SpillingFrontier.Entry given, String key)
+	    throws IOException {
+	processed.add(given.rule == null ? new ProofStep(given.fact)
+		: new ProofStep(given.fact, given.rule, references(given)));
+	int line = processed.size();
+	processedKeys.put(key, line);
+	if (isGoal(given.fact)) {
+	    goalLine = line;
+	    return;
+	}
+
+	if (profiler != null) {
+	    profiler.enter(SearchProfiler.shape(given.fact));
+	}
+	try {
+	    for (Rule rule : RULES) {
+		if (profiler != null) {
+		    profiler.enter(rule);
+		}
+		try {
+		    combine(rule, given.fact, line);
+		} finally {
+		    if (profiler != null) {
+			profiler.exit();
+		    }
+		}
+	    }
+	} finally {
+	    if (profiler != null) {
+		profiler.exit();
+	    }
+	}
+    }
+
+    /**
+     * Tries a rule on the given fact and every processed fact
+     */
+    private void combine(Rule rule, Statable given, int line)
+	    throws IOException {
+	if (rule.isUnary()) {
+	    generate(rule, given, null, line, 0);
+	    return;
+	}
+	for (int other = 1; other <= line && goalLine == null; other++) {
+	    Statable fact = processed.get(other - 1).getFact();
+	    generate(rule, given, fact, line, other);
+	    if (other != line) {
+		generate(rule, fact, given, other, line);
+	    }
+	}
+    }
+
+    /**
+     * Tries a rule on two processed facts and queues the result
+     */
+    private void generate(Rule rule, Statable arg0, Statable arg1, int line0,
+	    int line1) throws IOException {
+	if (goalLine != null || !rule.mayApply(arg0, arg1)) {
+	    return;
+	}
+	Statable result;
+	try {
+	    result = rule.apply(arg0, arg1);
+	} catch (RuleFormatException ex) {
+	    return;
+	}
+	if (Statement.size(result) > sizeLimit) {
+	    return;
+	}
+	String key = result.toString();
+	boolean duplicate = !seen.add(key) || processedKeys.containsKey(key);
+	if (profiler != null) {
+	    profiler.generated(rule, duplicate);
+	}
+	if (duplicate) {
+	    return;
+	}
+	SpillingFrontier.Entry entry = new SpillingFrontier.Entry(result, rule,
+		line0, line1, seq++);
+	if (isGoal(result)) {
+	    // No need to wait for the goal to come out of the frontier
+	    process(entry, key);
+	} else {
+	    frontier.add(entry);
+	}
+    }
+
+    /**
+     * Checks if fact is the conclusion
+     */
+    private boolean isGoal(Statable fact) {
+	return fact.toString().equals(goalKey);
+    }
+
+    private static int[] references(SpillingFrontier.Entry e) {
+	return e.rule.isUnary() ? new int[]{e.parent0}
+		: new int[]{e.parent0, e.parent1};
+    }
+
+    /**
+     * Keeps the premises and the derived lines the goal depends on, and
+     * renumbers them
+     */
+    private Proof buildProof() {
+	boolean[] needed = new boolean[processed.size() + 1];
+	List<Integer> stack = new ArrayList<>();
+	stack.add(goalLine);
+	while (!stack.isEmpty()) {
+	    int line = stack.remove(stack.size() - 1);
+	    if (needed[line]) {
+		continue;
+	    }
+	    needed[line] = true;
+	    for (int ref : processed.get(line - 1).getReferences()) {
+		stack.add(ref);
+	    }
+	}
+
+	int[] renumber = new int[processed.size() + 1];
+	List<ProofStep> steps = new ArrayList<>();
+	for (int line = 1; line <= processed.size(); line++) {
+	    ProofStep step = processed.get(line - 1);
+	    if (!step.isPremise() && !needed[line]) {
+		continue;
+	    }
+	    int[] refs = step.getReferences().clone();
+	    for (int i = 0; i < refs.length; i++) {
+		refs[i] = renumber[refs[i]];
+	    }
+	    steps.add(step.isPremise() ? step
+		    : new ProofStep(step.getFact(), step.getRule(), refs));
+	    renumber[line] = steps.size();
+	}
+	return new Proof(steps, processed.get(goalLine - 1).getFact());
+    }
+}
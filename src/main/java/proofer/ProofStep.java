@@ -0,0 +1,146 @@
+package proofer;
+
+/**
+ * A single line of a Proof: a fact along with the rule and the lines that
+ * justify it. Premises and assumptions have no rule and no references.
+ *
+ * @author Ryan Kenney
+ */
+public class ProofStep {
+
+    private final Statable fact;
+    private final Rule rule;
+    private final int[] references;
+    private final int[] coordinates;
+    private final boolean assumption;
+
+    /**
+     * Creates a premise line
+     *
+     * @param fact The premise
+     */
+    public ProofStep(Statable fact) {
+	this(fact, null, new int[0]);
+    }
+
+    /**
+     * Creates a derived line
+     *
+     * @param fact The derived fact
+     * @param rule The rule used to derive it
+     * @param references The lines the rule was applied to, in argument order
+     */
+    public ProofStep(Statable fact, Rule rule, int... references) {
+	this(fact, rule, references, null);
+    }
+
+    /**
+     * Creates a derived line
+     *
+     * @param fact The derived fact
+     * @param rule The rule used to derive it
+     * @param references The lines the rule was applied to, in argument order.
+     * A reference of 0 means the line is not known, as after a wildcard.
+     * @param coordinates Where a Rule of Replacement was applied, or null for
+     * the whole statement
+     */
+    public ProofStep(Statable fact, Rule rule, int[] references,
+	    int[] coordinates) {
+	this.fact = fact;
+	this.rule = rule;
+	this.references = references;
+	this.coordinates = coordinates;
+	this.assumption = false;
+    }
+
+    private ProofStep(Statable fact, boolean assumption) {
+	this.fact = fact;
+	this.rule = null;
+	this.references = new int[0];
+	this.coordinates = null;
+	this.assumption = assumption;
+    }
+
+    /**
+     * Creates a line that opens a sub-proof. The fact holds until the
+     * Conditional or Indirect Proof line that discharges it.
+     *
+     * @param fact The assumption
+     * @return The line
+     */
+    public static ProofStep assumption(Statable fact) {
+	return new ProofStep(fact, true);
+    }
+
+    /**
+     * @return the fact on this line
+     */
+    public Statable getFact() {
+	return fact;
+    }
+
+    /**
+     * @return the rule justifying this line, or null for a premise or an
+     * assumption
+     */
+    public Rule getRule() {
+	return rule;
+    }
+
+    /**
+     * @return the lines the rule was applied to
+     */
+    public int[] getReferences() {
+	return references;
+    }
+
+    /**
+     * @return where a Rule of Replacement was applied, or null for the whole
+     * statement
+     */
+    public int[] getCoordinates() {
+	return coordinates;
+    }
+
+    /**
+     * @return True if this line is a premise, false otherwise
+     */
+    public boolean isPremise() {
+	return rule == null && !assumption;
+    }
+
+    /**
+     * @return True if this line opens a sub-proof, false otherwise
+     */
+    public boolean isAssumption() {
+	return assumption;
+    }
+
+    @Override
+    public String toString() {
+	if (isPremise()) {
+	    return fact + "\tPremise";
+	} else if (assumption) {
+	    return fact + "\tAssumption";
+	}
+	StringBuilder sb = new StringBuilder();
+	sb.append(fact).append('\t').append(rule).append(' ');
+	for (int i = 0; i < references.length; i++) {
+	    if (i > 0) {
+		sb.append(',');
+	    }
+	    sb.append((references[i] == 0) ? FactBase.WILDCARD
+		    : String.valueOf(references[i]));
+	}
+	if (coordinates != null) {
+	    sb.append(" at ");
+	    for (int i = 0; i < coordinates.length; i++) {
+		if (i > 0) {
+		    sb.append('.');
+		}
+		sb.append(coordinates[i]);
+	    }
+	}
+	return sb.toString();
+    }
+}
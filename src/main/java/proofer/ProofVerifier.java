@@ -0,0 +1,458 @@
+package proofer;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Streaming checker for stored proofs.
+ *
+ * Proofs are read in the text form Proof.toString() prints, separated by
+ * blank lines:
+ *
+ * <pre>
+ * 1	(p -> q)	Premise
+ * 2	p	Premise
+ * 3	q	MP 1,2
+ * Therefore q
+ * </pre>
+ *
+ * Each line is parsed straight into a NodePool, and since the pool
+ * hash-conses its nodes, checking a step is just re-applying its rule to the
+ * referenced lines and comparing node ids. No step is searched for: every
+ * reference must name an earlier line, and wildcards are rejected. The
+ * conclusion must be one of the lines as written, since no rule of the proof
+ * would justify reading (q ^ p) as (p ^ q).
+ *
+ * Only propositional proofs are checked. The pool has no nodes for
+ * predicates or quantifiers, so a proof with a first-order line is rejected
+ * as such.
+ *
+ * A line justified as an Assumption opens a sub-proof, and the CP or IP line
+ * that refers to it closes it. Lines of a closed sub-proof may no longer be
+ * referred to, and a proof with a sub-proof still open has no conclusion.
+ *
+ * @author Ryan Kenney
+ */
+public class ProofVerifier {
+
+    private static final String PREMISE = "Premise";
+    private static final String ASSUMPTION = "Assumption";
+    private static final String THEREFORE = "Therefore ";
+    private static final String AT = " at ";
+    private final BufferedReader in;
+    private final NodePool pool;
+    private int[] lines = new int[64];
+    private boolean[] closed = new boolean[64];
+    private int count;
+    private int[] frames = new int[8];
+    private int depth;
+    private int proofs = 0;
+    // Parser state
+    private String text;
+    private int pos;
+    private int end;
+
+    /**
+     * The outcome of checking one proof
+     */
+    public static class Result {
+
+	private final int proof;
+	private final String error;
+
+	Result(int proof, String error) {
+	    this.proof = proof;
+	    this.error = error;
+	}
+
+	/**
+	 * @return the position of the proof in the stream, starting at 1
+	 */
+	public int getProof() {
+	    return proof;
+	}
+
+	/**
+	 * @return True if every step checked out, false otherwise
+	 */
+	public boolean isValid() {
+	    return error == null;
+	}
+
+	/**
+	 * @return why the proof was rejected, or null if it is valid
+	 */
+	public String getError() {
+	    return error;
+	}
+
+	@Override
+	public String toString() {
+	    return "Proof " + proof + ": " + (isValid() ? "valid" : error);
+	}
+    }
+
+    /**
+     * @param in The stream of serialized proofs
+     */
+    public ProofVerifier(Reader in) {
+	this(in, new NodePool(1024));
+    }
+
+    /**
+     * @param in The stream of serialized proofs
+     * @param pool The pool to parse lines into, such as an off-heap one. It
+     * is cleared at the start of every proof, so it can be shared by
+     * verifiers that are not used at the same time.
+     */
+    public ProofVerifier(Reader in, NodePool pool) {
+	this.in = (in instanceof BufferedReader) ? (BufferedReader) in
+		: new BufferedReader(in);
+	this.pool = pool;
+    }
+
+    /**
+     * Checks the next proof in the stream
+     *
+     * @return The result, or null at the end of the stream
+     * @throws IOException The stream could not be read
+     */
+    public Result next() throws IOException {
+	String line;
+	do {
+	    line = in.readLine();
+	    if (line == null) {
+		return null;
+	    }
+	} while (line.trim().isEmpty());
+
+	proofs++;
+	pool.clear();
+	count = 0;
+	depth = 0;
+	String error = null;
+	// Keep reading to the end of the proof even after an error
+	while (line != null && !line.trim().isEmpty()) {
+	    if (error == null) {
+		if (line.startsWith(THEREFORE)) {
+		    error = checkConclusion(line);
+		    if (error == null) {
+			return new Result(proofs, null);
+		    }
+		} else {
+		    error = checkStep(line);
+		}
+	    }
+	    if (line.startsWith(THEREFORE)) {
+		break;
+	    }
+	    line = in.readLine();
+	}
+	return new Result(proofs, (error == null) ? "Missing conclusion" : error);
+    }
+
+    /**
+     * Checks one numbered line and records its fact
+     *
+     * @return null if the line checks out, the reason otherwise
+     */
+    private String checkStep(String line) {
+	int tab0 = line.indexOf('\t');
+	int tab1 = (tab0 < 0) ? -1 : line.indexOf('\t', tab0 + 1);
+	if (tab1 < 0) {
+	    return "Malformed line: " + line;
+	}
+	int number = parseNumber(line, 0, tab0);
+	if (number != count + 1) {
+	    return "Expected line " + (count + 1) + ": " + line;
+	}
+	int fact = parse(line, tab0 + 1, tab1);
+	if (fact == NodePool.NONE) {
+	    return "Line " + number + (isFirstOrder(line, tab0 + 1, tab1)
+		    ? " is first-order, which is not supported"
+		    : " is not a statement");
+	}
+
+	String justification = line.substring(tab1 + 1);
+	if (justification.equals(PREMISE)) {
+	    if (depth > 0) {
+		return "Line " + number + " is a premise inside a sub-proof";
+	    }
+	} else if (justification.equals(ASSUMPTION)) {
+	    if (depth == frames.length) {
+		frames = Arrays.copyOf(frames, depth * 2);
+	    }
+	    frames[depth++] = number;
+	} else {
+	    String error = checkJustification(number, fact, justification);
+	    if (error != null) {
+		return error;
+	    }
+	}
+	if (count == lines.length) {
+	    lines = Arrays.copyOf(lines, count * 2);
+	    closed = Arrays.copyOf(closed, count * 2);
+	}
+	closed[count] = false;
+	lines[count++] = fact;
+	return null;
+    }
+
+    /**
+     * Re-applies the rule of a derived line to the lines it refers to
+     *
+     * @return null if the rule yields the line's fact, the reason otherwise
+     */
+    private String checkJustification(int number, int fact, String justification) {
+	int space = justification.indexOf(' ');
+	Rule rule = (space < 0) ? null : Rule.getRule(justification.substring(0, space));
+	if (rule == null) {
+	    return "Line " + number + " has an unknown rule";
+	}
+	int at = justification.indexOf(AT, space);
+	int refsEnd = (at < 0) ? justification.length() : at;
+	int comma = justification.indexOf(',', space);
+	int ref0, ref1 = NodePool.NONE;
+	if (comma < 0 || comma > refsEnd) {
+	    ref0 = reference(justification, space + 1, refsEnd, number);
+	} else {
+	    ref0 = reference(justification, space + 1, comma, number);
+	    ref1 = reference(justification, comma + 1, refsEnd, number);
+	}
+	if (ref0 == NodePool.NONE || (comma >= 0 && comma < refsEnd && ref1 == NodePool.NONE)) {
+	    return "Line " + number + " refers to a line that is not before it"
+		    + " or is in a closed sub-proof";
+	}
+
+	if (rule.isDischarge()) {
+	    // The first reference must be the innermost open assumption
+	    if (depth == 0 || ref1 == NodePool.NONE || parseNumber(justification,
+		    space + 1, comma) != frames[depth - 1]) {
+		return "Line " + number + " does not discharge the innermost assumption";
+	    }
+	    int assumption = frames[--depth];
+	    Arrays.fill(closed, assumption - 1, number - 1, true);
+	}
+
+	int result;
+	if (at >= 0) {
+	    int[] coordinates = parseCoordinates(justification, at + AT.length());
+	    if (coordinates == null || !rule.isReplacement()) {
+		return "Line " + number + " has malformed coordinates";
+	    }
+	    result = pool.replaceAt(rule, ref0, coordinates, 0);
+	} else if (rule == Rule.ADD) {
+	    // The second disjunct comes out of thin air
+	    result = (pool.operator(fact) == Operator.OR && pool.left(fact) == ref0)
+		    ? fact : NodePool.NONE;
+	} else {
+	    if (!rule.isUnary() && ref1 == NodePool.NONE) {
+		return "Line " + number + " needs two references";
+	    }
+	    result = pool.apply(rule, ref0, ref1);
+	}
+	return (result == fact) ? null
+		: "Line " + number + " does not follow by " + rule;
+    }
+
+    /**
+     * @return null if the conclusion is one of the lines, the reason otherwise
+     */
+    private String checkConclusion(String line) {
+	int conclusion = parse(line, THEREFORE.length(), line.length());
+	if (conclusion == NodePool.NONE) {
+	    return "Conclusion " + (isFirstOrder(line, THEREFORE.length(),
+		    line.length()) ? "is first-order, which is not supported"
+		    : "is not a statement");
+	} else if (depth > 0) {
+	    return "Assumption on line " + frames[depth - 1] + " is never discharged";
+	}
+	for (int i = 0; i < count; i++) {
+	    if (lines[i] == conclusion && !closed[i]) {
+		return null;
+	    }
+	}
+	return "Conclusion is never derived";
+    }
+
+    /**
+     * Every first-order formula has a predicate letter
+     *
+     * @return True if the text between from and to is first-order, false
+     * otherwise
+     */
+    private static boolean isFirstOrder(String s, int from, int to) {
+	for (int i = from; i < to; i++) {
+	    if (Predicate.isPredicate(s.charAt(i))) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * @return the fact on the referenced line, or NONE if it is not an
+     * earlier line or is in a closed sub-proof
+     */
+    private int reference(String s, int from, int to, int number) {
+	int ref = parseNumber(s, from, to);
+	return (ref < 1 || ref >= number || closed[ref - 1]) ? NodePool.NONE
+		: lines[ref - 1];
+    }
+
+    private static int parseNumber(String s, int from, int to) {
+	if (from >= to || to - from > 9) {
+	    return -1;
+	}
+	int n = 0;
+	for (int i = from; i < to; i++) {
+	    char c = s.charAt(i);
+	    if (c < '0' || c > '9') {
+		return -1;
+	    }
+	    n = n * 10 + (c - '0');
+	}
+	return n;
+    }
+
+    private static int[] parseCoordinates(String s, int from) {
+	int n = 1;
+	for (int i = from; i < s.length(); i++) {
+	    if (s.charAt(i) == '.') {
+		n++;
+	    }
+	}
+	int[] coordinates = new int[n];
+	int start = from;
+	for (int i = 0; i < n; i++) {
+	    int stop = s.indexOf('.', start);
+	    if (stop < 0) {
+		stop = s.length();
+	    }
+	    coordinates[i] = parseNumber(s, start, stop);
+	    if (coordinates[i] < 0) {
+		return null;
+	    }
+	    start = stop + 1;
+	}
+	return coordinates;
+    }
+
+    /**
+     * Parses a statement into the pool. Negation binds tighter than the
+     * binary operators, and binary operators group to the right.
+     *
+     * @return the id of the statement, or NONE if it is malformed
+     */
+    private int parse(String s, int from, int to) {
+	text = s;
+	pos = from;
+	end = to;
+	int id = parseBinary();
+	skipSpaces();
+	return (pos == end) ? id : NodePool.NONE;
+    }
+
+    private int parseBinary() {
+	int left = parseUnary();
+	if (left == NodePool.NONE) {
+	    return NodePool.NONE;
+	}
+	skipSpaces();
+	Operator op = parseOperator();
+	if (op == null) {
+	    return left;
+	}
+	int right = parseBinary();
+	return (right == NodePool.NONE) ? NodePool.NONE : pool.node(op, left, right);
+    }
+
+    private int parseUnary() {
+	skipSpaces();
+	if (pos >= end) {
+	    return NodePool.NONE;
+	}
+	char c = text.charAt(pos);
+	if (c == '~') {
+	    pos++;
+	    int operand = parseUnary();
+	    return (operand == NodePool.NONE) ? NodePool.NONE : pool.not(operand);
+	} else if (c == '(') {
+	    pos++;
+	    int inner = parseBinary();
+	    skipSpaces();
+	    if (inner == NodePool.NONE || pos >= end || text.charAt(pos) != ')') {
+		return NodePool.NONE;
+	    }
+	    pos++;
+	    return inner;
+	}
+	for (BaseFact bf : BaseFact.values()) {
+	    if (bf.equals(c)) {
+		pos++;
+		return pool.atom(bf);
+	    }
+	}
+	return NodePool.NONE;
+    }
+
+    private Operator parseOperator() {
+	for (Operator op : Operator.values()) {
+	    if (op == Operator.NOT) {
+		continue;
+	    }
+	    String srep = op.toString();
+	    if (text.startsWith(srep, pos) && pos + srep.length() <= end) {
+		pos += srep.length();
+		return op;
+	    }
+	}
+	return null;
+    }
+
+    private void skipSpaces() {
+	while (pos < end && text.charAt(pos) == ' ') {
+	    pos++;
+	}
+    }
+
+    /**
+     * Verifies every proof in a file and reports the rejected ones
+     *
+     * @param args The file to verify, optionally preceded by --off-heap to
+     * keep the pool in direct memory
+     * @throws IOException The file could not be read
+     */
+    public static void main(String[] args) throws IOException {
+	boolean offHeap = args.length == 2 && args[0].equals("--off-heap");
+	if (args.length != 1 && !offHeap) {
+	    System.err.println("Usage: ProofVerifier [--off-heap] <proof file>");
+	    System.err.println("Checks propositional proofs only, first-order"
+		    + " proofs are rejected");
+	    return;
+	}
+	long start = System.nanoTime();
+	int valid = 0, invalid = 0;
+	NodePool pool = offHeap ? NodePool.offHeap(1024) : new NodePool(1024);
+	try (Reader reader = new FileReader(args[args.length - 1])) {
+	    ProofVerifier verifier = new ProofVerifier(reader, pool);
+	    Result result;
+	    while ((result = verifier.next()) != null) {
+		if (result.isValid()) {
+		    valid++;
+		} else {
+		    invalid++;
+		    System.out.println(result);
+		}
+	    }
+	} finally {
+	    pool.close();
+	}
+	double seconds = (System.nanoTime() - start) / 1e9;
+	System.out.printf("%d valid, %d invalid, %.0f proofs/s%n", valid, invalid,
+		(valid + invalid) / seconds);
+    }
+}
@@ -1,10 +1,17 @@
 package proofer;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
 
 /**
  * Provides interface with the user.
@@ -14,8 +21,12 @@ import java.util.Scanner;
 public class ProoferInterface {
 
     private static final String BASE_COORDINATE_INDICATOR = "0";
-    private static final String RULE_FORMAT =
-	    "[a-zA-Z]{1,4}\\([0-9\\*]+(,[0-9\\*]+){0,1}(,[1-2\\.]+[1-2])*\\)";
+    private static final int WILDCARD_LIMIT = 1000;
+    private static final long PARALLEL_PAIRS = 1 << 14;
+    private static final int SNAPSHOT_ENTRIES = 256;
+    private static final String PROFILE_FILE = "proofer-profile.collapsed";
+    private static final String USAGE = "Usage: ProoferInterface [journal]"
+	    + " [--max-nodes n] [--max-bytes n]";
 
     private enum Mode {
 
@@ -26,8 +37,17 @@ public class ProoferInterface {
 
 	EXIT("exit"), DONE("done"), SHOW_FACTS("facts"),
 	THEREFORE("therefore"), RESET("reset"), HELP("help"),
-	NONE("none");
+	CANONICAL("canonical"), PROVE("prove"), PROOF("proof"),
+	PORTFOLIO("portfolio"), ASSUME("assume"), PROFILE("profile"),
+	FILTER("filter"), NONE("none");
 	private String srep;
+	private static final Map<String, Command> BY_NAME = new HashMap<>();
+
+	static {
+	    for (Command c : values()) {
+		BY_NAME.put(c.srep, c);
+	    }
+	}
 
 	private Command(String srep) {
 	    this.srep = srep;
@@ -36,12 +56,25 @@ public class ProoferInterface {
 	public boolean equals(String srep) {
 	    return this.srep.equals(srep.toLowerCase());
 	}
+
+	/**
+	 * Looks up the command whose String representation is srep
+	 *
+	 * @param srep The String to check, in any case
+	 * @return The matching Command, or NONE if there is no match
+	 */
+	public static Command fromString(String srep) {
+	    Command c = BY_NAME.get(srep.toLowerCase());
+	    return (c == null) ? NONE : c;
+	}
     }
 
     /**
      * Proofer - The Logic Engine
      *
-     * @param args
+     * @param args Optionally, a journal file. The session is recovered from
+     * it and every command is journaled to it. --max-nodes n and
+     * --max-bytes n limit the memory the session's facts may hold.
      */
     public static void main(String args[]) {
 	// Init
@@ -50,11 +83,54 @@ public class ProoferInterface {
 	FactBase fb = new FactBase();
 	Statable statement;
 	String input;
-	Map<Mode, List<Command>> commands = buildCommandMap();
+	Map<Mode, Set<Command>> commands = buildCommandMap();
+	// Created on first use, most sessions never race the portfolio and
+	// its thread pool only slows start-up
+	PortfolioProver portfolio = null;
+	SessionJournal journal = null;
+	String journalPath = null;
+	long maxNodes = SessionBudget.UNLIMITED;
+	long maxBytes = SessionBudget.UNLIMITED;
+	try {
+	    for (int i = 0; i < args.length; i++) {
+		switch (args[i]) {
+		    case "--max-nodes":
+			maxNodes = limit(args, ++i);
+			break;
+		    case "--max-bytes":
+			maxBytes = limit(args, ++i);
+			break;
+		    default:
+			journalPath = args[i];
+		}
+	    }
+	} catch (IllegalArgumentException ex) {
+	    System.err.println("Error - " + ex.getMessage());
+	    System.err.println(USAGE);
+	    return;
+	}
+	fb.setBudget(new SessionBudget(maxNodes, maxBytes));
 
 	// Main program
 	System.out.println("Welcome to Proofer - The Logic Engine!");
-	System.out.println("Enter some premises");
+	if (journalPath != null) {
+	    try {
+		journal = new SessionJournal(new File(journalPath));
+		inputMode = replay(journal.recover(fb), fb);
+	    } catch (IOException ex) {
+		System.err.println("Error - Cannot use journal: " + ex.getMessage());
+		journal = null;
+	    }
+	}
+	if (inputMode == Mode.RULE) {
+	    System.out.println("Recovered " + fb.size() + " facts, conclusion "
+		    + fb.getConclusion());
+	} else {
+	    if (!fb.isEmpty()) {
+		System.out.println("Recovered " + fb.size() + " premises");
+	    }
+	    System.out.println("Enter some premises");
+	}
 	// instructions
 	program:
 	while (true) {
@@ -67,12 +143,9 @@ public class ProoferInterface {
 	    }
 
 	    // Check for commands first
-	    Command cmd = Command.NONE;
-	    for (Command c : commands.get(inputMode)) {
-		if (c.equals(input)) {
-		    cmd = c;
-		    break;
-		}
+	    Command cmd = Command.fromString(input);
+	    if (!commands.get(inputMode).contains(cmd)) {
+		cmd = Command.NONE;
 	    }
 
 	    // Execute the command
@@ -84,16 +157,44 @@ public class ProoferInterface {
 		    System.out.println("Enter the conclusion");
 		    continue;
 		case DONE:
-		    for (Statable s : fb.values()) {
-			if (s.equals(fb.getConclusion())) {
-			    System.out.println("You've shown the "
-				    + "conclusion to be true!");
-			    continue program;
-			}
+		    if (isInSubProof(fb)) {
+			continue;
+		    }
+		    if (fb.contains(fb.getConclusion())) {
+			System.out.println("You've shown the "
+				+ "conclusion to be true!");
+			continue;
+		    }
+		    if (!isPropositional(fb)) {
+			System.out.println("It appears you still haven't "
+				+ "shown the conclusion to be true.  Are "
+				+ "you sure the argument is valid?");
+			continue;
+		    }
+		    Integer equivalent = fb.findEquivalent(fb.getConclusion());
+		    if (equivalent != null) {
+			System.out.println("Line " + equivalent + " is "
+				+ "logically equivalent to the conclusion.");
+			continue;
+		    }
+		    Map<BaseFact, Boolean> model;
+		    try {
+			model = Tableau.findCounterModel(fb.getFacts(),
+				fb.getConclusion());
+		    } catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			System.out.println("It appears you still haven't "
+				+ "shown the conclusion to be true.");
+			continue;
+		    }
+		    if (model != null) {
+			System.out.println("The argument is invalid: the "
+				+ "premises hold and the conclusion does not "
+				+ "when " + describe(model));
+			continue;
 		    }
-		    System.out.println("It appears you still haven't "
-			    + "shown the conclusion to be true.  Are "
-			    + "you sure the argument is valid?");
+		    System.out.println("The argument is valid, but you "
+			    + "haven't derived the conclusion yet.");
 		    continue;
 
 		case SHOW_FACTS:
@@ -104,13 +205,114 @@ public class ProoferInterface {
 		    if (inputMode == Mode.RULE) {
 			System.out.println("\nConclusion: " + fb.getConclusion());
 		    }
+		    if (fb.getDepth() > 0) {
+			System.out.println("Open assumptions: " + fb.getDepth()
+				+ ", innermost on line " + fb.getAssumption());
+		    }
+		    if (fb.isRedundancyFilter()) {
+			System.out.println("Redundancy filter: "
+				+ fb.getArchive().size() + " facts archived");
+		    }
+		    System.out.println("\nSession budget: " + fb.getBudget());
+		    System.out.println("Membership filter: "
+			    + fb.getFilterSizeInBytes() + " bytes");
+		    if (fb.getBddIfPresent() != null) {
+			System.out.println("Decision diagrams: "
+				+ fb.getBddIfPresent());
+		    }
 		    System.out.println();
 		    continue;
+		case CANONICAL:
+		    fb.setCanonicalEquality(!fb.isCanonicalEquality());
+		    record(journal, fb, SessionJournal.Type.CANONICAL, null, null);
+		    System.out.println("Canonical equality "
+			    + (fb.isCanonicalEquality() ? "on" : "off"));
+		    continue;
+		case FILTER:
+		    fb.setRedundancyFilter(!fb.isRedundancyFilter());
+		    record(journal, fb, SessionJournal.Type.FILTER, null, null);
+		    System.out.println("Redundancy filter "
+			    + (fb.isRedundancyFilter() ? "on" : "off"));
+		    continue;
+		case PROVE:
+		    if (isInSubProof(fb)) {
+			continue;
+		    }
+		    try {
+			Proof proof = new ConditionalProver(
+				new SelectingProver(new ProofSearch())).search(fb);
+			System.out.println((proof == null) ? "No proof found"
+				: "\n" + proof + "\n");
+		    } catch (IOException ex) {
+			System.err.println("Error - " + ex.getMessage());
+		    }
+		    continue;
+		case PROFILE:
+		    if (isInSubProof(fb)) {
+			continue;
+		    }
+		    SearchProfiler profiler = new SearchProfiler();
+		    ProofSearch search = new ProofSearch();
+		    search.setProfiler(profiler);
+		    try (FileWriter out = new FileWriter(PROFILE_FILE)) {
+			Proof proof = new ConditionalProver(
+				new SelectingProver(search)).search(fb);
+			System.out.println((proof == null) ? "No proof found"
+				: "Proof found");
+			System.out.print("\n" + profiler.summary());
+			profiler.writeCollapsed(out);
+			System.out.println("Collapsed stacks written to "
+				+ PROFILE_FILE + "\n");
+		    } catch (IOException ex) {
+			System.err.println("Error - " + ex.getMessage());
+		    }
+		    continue;
+		case PORTFOLIO:
+		    if (isInSubProof(fb)) {
+			continue;
+		    }
+		    if (portfolio == null) {
+			portfolio = new PortfolioProver();
+		    }
+		    PortfolioProver.Verdict verdict = portfolio.decide(
+			    fb.getFacts(), fb.getConclusion(), true);
+		    System.out.println(verdict);
+		    if (verdict.getProof() != null) {
+			System.out.println("\n" + verdict.getProof() + "\n");
+		    }
+		    continue;
+		case ASSUME:
+		    statement = promptStatement(scan);
+		    int line = fb.assume(statement);
+		    record(journal, fb, SessionJournal.Type.ASSUME, statement, null);
+		    System.out.println("Assumed on line " + line
+			    + ", discharge it with CP(" + line + ",n) or IP("
+			    + line + ",n)");
+		    continue;
+		case PROOF:
+		    if (fb.getDepth() > 0 || !fb.contains(fb.getConclusion())) {
+			System.out.println("The conclusion has not been shown yet");
+		    } else if (!isWritten(fb, fb.getConclusion())) {
+			System.out.println("Line " + fb.lineOf(fb.getConclusion())
+				+ " matches the conclusion only up to commutation"
+				+ " and association, the proof still needs the Com"
+				+ " step that writes it as " + fb.getConclusion());
+		    } else {
+			try {
+			    System.out.println("\n" + new ProofMinimizer()
+				    .minimize(fb.toProof()) + "\n");
+			} catch (IllegalArgumentException ex) {
+			    System.err.println("Error - " + ex.getMessage());
+			}
+		    }
+		    continue;
 		case HELP:
 		    break;
 		case RESET:
 		    System.out.println("\nClearing facts, entering premise mode.\n");
 		    fb.clear();
+		    fb.setConclusion(null);
+		    record(journal, fb, SessionJournal.Type.RESET, null, null);
 		    inputMode = Mode.PREMISE;
 		    continue;
 	    }
@@ -119,16 +321,24 @@ public class ProoferInterface {
 	    switch (inputMode) {
 		case PREMISE:
 		    try {
-			statement = Statement.parseString(input);
-			fb.add(statement);
+			statement = parse(input);
+			if (!fb.add(statement) && !fb.contains(statement)) {
+			    System.out.println("The premise does not fit in "
+				    + "the session budget");
+			    break;
+			}
+			record(journal, fb, SessionJournal.Type.PREMISE,
+				statement, null);
 		    } catch (StatementParsingException ex) {
 			System.err.println(ex.getMessage());
 		    }
 		    break;
 		case CONCLUSION:
 		    try {
-			statement = Statement.parseString(input);
+			statement = parse(input);
 			fb.setConclusion(statement);
+			record(journal, fb, SessionJournal.Type.CONCLUSION,
+				statement, null);
 			System.out.println("Entering rule mode");
 			inputMode = Mode.RULE;
 		    } catch (StatementParsingException ex) {
@@ -136,71 +346,14 @@ public class ProoferInterface {
 		    }
 		    break;
 		case RULE:
-		    // Make sure the pattern fits
-		    // Avoids potential problems like NumberFormatException
 		    try {
-			input = input.replaceAll(" ", "");
-			if (!input.matches(RULE_FORMAT)) {
-			    throw new RuleFormatException("rule",
-				    "Rule format must be name(arg0[,arg1])");
-			}
-			// Get the information we need
-			Rule rule = Rule.getRule(input.substring(0, input.indexOf('(')).toUpperCase());
-			String[] arguments = input.substring(input.indexOf('(') + 1,
-				input.length() - 1).split(",");
-
-			List<Statable> arg0 = fb.getValues(arguments[0]);
-			List<Statable> result;
-
-			if (arguments.length >= 2) {
-			    // Handle Rules of Replacement
-			    if (rule == Rule.DM
-				    || rule == Rule.COM
-				    || rule == Rule.ASSOC
-				    || rule == Rule.DIST
-				    || rule == Rule.DN
-				    || rule == Rule.TRANS
-				    || rule == Rule.IMPL
-				    || rule == Rule.EQUIV
-				    || rule == Rule.EXP
-				    || rule == Rule.TAUT) {
-				int[] coordinates = getCoordinates(rule.toString(), arguments[1]);
-				result = rule.doRule(arg0, coordinates,
-					usesWildcard(arguments[0]));
-			    } else {
-				List<Statable> arg1 = fb.getValues(arguments[1]);
-				result = rule.doRule(arg0, arg1,
-					usesWildcard(arguments[0], arguments[1]));
-			    }
-
-			} else {
-			    // Handle the special "grab out of thin air" rule
-			    if (rule == Rule.ADD) {
-				List<Statable> arg1 = new ArrayList<>();
-				Statable add = null;
-
-				// Get the Statable to add
-				System.out.println("enter the statement to add:");
-				while (add == null) {
-				    System.out.print("proofer> ");
-				    try {
-					add = Statement.parseString(scan.nextLine());
-				    } catch (StatementParsingException ex) {
-					System.err.println(ex.getMessage());
-				    }
-				}
-				arg1.add(add);
-
-
-				// Only do wildcard check on arg0
-				result = rule.doRule(arg0, arg1, usesWildcard(arguments[0]));
-			    } else {
-				result = rule.doRule(arg0, usesWildcard(arguments[0]));
-			    }
-			}
-			fb.add(result);
-
-			break;
+			RuleCommand command = RuleCommand.parse(input);
+			Statable addend = (command.getRule() == Rule.ADD
+				&& command.getArguments().length == 1)
+				? promptStatement(scan) : null;
+			applyRule(command, fb, addend);
+			record(journal, fb, SessionJournal.Type.RULE, addend,
+				input);
 		    } catch (RuleFormatException ex) {
 			System.err.println(ex.errMessage());
 		    } catch (NullPointerException ex) {
@@ -210,9 +363,412 @@ public class ProoferInterface {
 	}
 
 	// End program
+	if (journal != null) {
+	    try {
+		journal.close();
+	    } catch (IOException ex) {
+		System.err.println("Error - " + ex.getMessage());
+	    }
+	}
 	System.out.println("Good bye!");
     }
 
+    /**
+     * Runs a tokenized rule command against the FactBase and adds the results,
+     * justified by the rule and the lines it was applied to.
+     *
+     * @param command The rule command to run
+     * @param fb The FactBase holding the referenced lines
+     * @param addend The statement to add with Addition
+     * @throws RuleFormatException The rule cannot be applied
+     */
+    private static void applyRule(RuleCommand command, FactBase fb,
+	    Statable addend) throws RuleFormatException {
+	Rule rule = command.getRule();
+	String[] arguments = command.getArguments();
+	List<Statable> arg0 = fb.getValues(arguments[0]);
+	int line0 = lineReference(arguments[0]);
+
+	// Admission control, closing a sub-proof is always allowed as it
+	// frees the lines inside
+	SessionBudget budget = fb.getBudget();
+	if (budget.isExhausted() && !rule.isDischarge()) {
+	    throw new RuleFormatException(rule.toString(),
+		    "The session budget is exhausted (" + budget + ")");
+	}
+	long rejected = budget.getRejected();
+	int archived = fb.getArchive().size();
+	try {
+	    apply(rule, arguments, line0, arg0, fb, addend);
+	} finally {
+	    if (budget.getRejected() > rejected) {
+		System.out.println("Rejected " + (budget.getRejected() - rejected)
+			+ " facts over the session budget");
+	    }
+	    if (fb.getArchive().size() > archived) {
+		System.out.println("Archived " + (fb.getArchive().size()
+			- archived) + " redundant facts");
+	    }
+	}
+    }
+
+    /**
+     * Runs a rule command once admission control has let it through
+     */
+    private static void apply(Rule rule, String[] arguments, int line0,
+	    List<Statable> arg0, FactBase fb, Statable addend)
+	    throws RuleFormatException {
+	// The quantifier rules take terms rather than a second line
+	if (rule.isQuantifier()) {
+	    applyQuantifierRule(rule, arguments, line0, fb);
+	    return;
+	}
+
+	// Conditional and Indirect Proof close the innermost sub-proof
+	if (rule.isDischarge()) {
+	    if (arguments.length != 2 || usesWildcard(arguments[0], arguments[1])
+		    || line0 != fb.getAssumption()) {
+		throw new RuleFormatException(rule.toString(), "Use "
+			+ rule + "(assumption,line) on the innermost assumption");
+	    }
+	    fb.discharge(rule, lineReference(arguments[1]));
+	    return;
+	}
+
+	// Addition takes its second statement from the prompt instead
+	if (!rule.isUnary() && rule != Rule.ADD && arguments.length < 2) {
+	    throw new RuleFormatException(rule.toString(), "Use " + rule
+		    + "(line,line), the rule takes two lines");
+	}
+
+	if (arguments.length >= 2) {
+	    // Handle Rules of Replacement
+	    if (rule.isReplacement()) {
+		int[] coordinates = getCoordinates(rule.toString(), arguments[1]);
+		fb.add(rule.doRule(arg0, coordinates, usesWildcard(arguments[0])),
+			rule, new int[]{line0}, coordinates);
+	    } else {
+		List<Statable> arg1 = fb.getValues(arguments[1]);
+		int[] references = {line0, lineReference(arguments[1])};
+		if (usesWildcard(arguments[0], arguments[1])) {
+		    addLazily(wildcardResults(rule, arg0, arg1), rule,
+			    references, fb);
+		} else {
+		    fb.add(rule.doRule(arg0, arg1, false), rule, references, null);
+		}
+	    }
+	    return;
+	}
+
+	// Handle the special "grab out of thin air" rule
+	if (rule == Rule.ADD) {
+	    List<Statable> arg1 = new ArrayList<>();
+	    arg1.add(addend);
+
+	    // Only do wildcard check on arg0
+	    fb.add(rule.doRule(arg0, arg1, usesWildcard(arguments[0])),
+		    rule, new int[]{line0}, null);
+	    return;
+	}
+	if (usesWildcard(arguments[0]) && !rule.isReplacement()) {
+	    addLazily(wildcardResults(rule, arg0, null), rule,
+		    new int[]{line0}, fb);
+	    return;
+	}
+	fb.add(rule.doRule(arg0, usesWildcard(arguments[0])),
+		rule, new int[]{line0}, null);
+    }
+
+    /**
+     * Runs UI(n,t), UI(n,*), EI(n,c), EG(n,t,x) or UG(n,y,x). The wildcard
+     * instantiates with every term that makes the line meet a known atom.
+     *
+     * @param rule The quantifier rule
+     * @param arguments The arguments of the command
+     * @param line The line the rule is applied to
+     * @param fb The FactBase holding the line
+     * @throws RuleFormatException The rule cannot be applied
+     */
+    private static void applyQuantifierRule(Rule rule, String[] arguments,
+	    int line, FactBase fb) throws RuleFormatException {
+	boolean generalize = rule == Rule.UG || rule == Rule.EG;
+	if (arguments.length != (generalize ? 3 : 2)) {
+	    throw new RuleFormatException(rule.toString(), "Use " + rule
+		    + (generalize ? "(line,term,variable)" : "(line,term)"));
+	}
+	if (generalize) {
+	    fb.generalize(rule, line, Term.of(arguments[1].charAt(0)),
+		    Term.of(arguments[2].charAt(0)));
+	} else if (usesWildcard(arguments[1])) {
+	    for (Term t : fb.instantiationTerms(line)) {
+		fb.instantiate(rule, line, t);
+	    }
+	} else {
+	    fb.instantiate(rule, line, Term.of(arguments[1].charAt(0)));
+	}
+    }
+
+    /**
+     * Picks how to compute the results of a wildcard application. Small
+     * ones are computed lazily so nothing past the conclusion is done, large
+     * ones in parallel, in the same order either way.
+     *
+     * @param rule The rule to apply
+     * @param arg0 The first arguments
+     * @param arg1 The second arguments, or null for unary rules
+     * @return The results
+     */
+    private static Iterator<Statable> wildcardResults(Rule rule,
+	    List<Statable> arg0, List<Statable> arg1) {
+	long pairs = (long) arg0.size()
+		* ((arg1 == null || rule.isUnary()) ? 1 : arg1.size());
+	return (pairs >= PARALLEL_PAIRS)
+		? rule.parallelResults(arg0, arg1).iterator()
+		: rule.results(arg0, arg1);
+    }
+
+    /**
+     * Adds the results of a wildcard application as they are computed,
+     * stopping once the conclusion shows up or WILDCARD_LIMIT facts were
+     * added
+     *
+     * @param results The lazy results
+     * @param rule The rule that produced them
+     * @param references The lines the rule was applied to
+     * @param fb The FactBase to add to
+     */
+    private static void addLazily(Iterator<Statable> results, Rule rule,
+	    int[] references, FactBase fb) {
+	long rejected = fb.getBudget().getRejected();
+	fb.addUntil(results, rule, references, null, fb.getConclusion(),
+		WILDCARD_LIMIT);
+	if (fb.contains(fb.getConclusion())) {
+	    System.out.println("The conclusion has been reached");
+	} else if (fb.getBudget().isExhausted()
+		|| fb.getBudget().getRejected() > rejected) {
+	    System.out.println("Stopped at the session budget ("
+		    + fb.getBudget() + ")");
+	} else if (results.hasNext()) {
+	    System.out.println("Stopped after " + WILDCARD_LIMIT
+		    + " new facts, apply the rule again for more");
+	}
+    }
+
+    /**
+     * Prompts for the statement to add with Addition until one parses
+     *
+     * @param scan The input to read from
+     * @return The statement
+     */
+    private static Statable promptStatement(Scanner scan) {
+	System.out.println("enter the statement:");
+	while (true) {
+	    System.out.print("proofer> ");
+	    try {
+		return parse(scan.nextLine());
+	    } catch (StatementParsingException ex) {
+		System.err.println(ex.getMessage());
+	    }
+	}
+    }
+
+    /**
+     * Reads a statement, falling back to first-order syntax for input with
+     * predicates or quantifiers
+     *
+     * @param input The String to parse
+     * @return The statement
+     * @throws StatementParsingException The String is no statement either way
+     */
+    private static Statable parse(String input)
+	    throws StatementParsingException {
+	try {
+	    return Statement.parseString(input);
+	} catch (StatementParsingException ex) {
+	    try {
+		return FirstOrderParser.parse(input);
+	    } catch (StatementParsingException firstOrder) {
+		throw ex;
+	    }
+	}
+    }
+
+    /**
+     * Reads the value of a budget option
+     *
+     * @param args The command line
+     * @param i The position of the value
+     * @return The value
+     * @throws IllegalArgumentException The value is missing or is not a
+     * positive number
+     */
+    private static long limit(String[] args, int i) {
+	if (i >= args.length) {
+	    throw new IllegalArgumentException(args[i - 1] + " needs a value");
+	}
+	long value;
+	try {
+	    value = Long.parseLong(args[i]);
+	} catch (NumberFormatException ex) {
+	    value = 0;
+	}
+	if (value <= 0) {
+	    throw new IllegalArgumentException(args[i - 1]
+		    + " must be a positive number, not " + args[i]);
+	}
+	return value;
+    }
+
+    /**
+     * Tells the user to discharge the innermost assumption first, since the
+     * facts depend on it until then
+     *
+     * @param fb The FactBase
+     * @return True if a sub-proof is open, false otherwise
+     */
+    private static boolean isInSubProof(FactBase fb) {
+	if (fb.getDepth() == 0) {
+	    return false;
+	}
+	System.out.println("Discharge the assumption on line "
+		+ fb.getAssumption() + " with CP or IP first");
+	return true;
+    }
+
+    /**
+     * Checks for a line holding s as written. In canonical mode contains()
+     * also accepts a commuted or reassociated variant, which a proof cannot
+     * cite as s.
+     *
+     * @param fb The FactBase
+     * @param s The Statable to look for
+     * @return True if a line holds s as written, false otherwise
+     */
+    private static boolean isWritten(FactBase fb, Statable s) {
+	String written = s.toString();
+	for (Statable fact : fb.getFacts()) {
+	    if (fact.toString().equals(written)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * @param fb The FactBase
+     * @return True if the facts and conclusion are propositional, so the
+     * decision procedures apply to them, false otherwise
+     */
+    private static boolean isPropositional(FactBase fb) {
+	for (Statable s : fb.getFacts()) {
+	    if (!Quantifiers.isPropositional(s)) {
+		return false;
+	    }
+	}
+	return Quantifiers.isPropositional(fb.getConclusion());
+    }
+
+    /**
+     * Renders an assignment, ie "p is true, q is false"
+     *
+     * @param model The assignment
+     * @return The rendering
+     */
+    private static String describe(Map<BaseFact, Boolean> model) {
+	StringBuilder sb = new StringBuilder();
+	for (Map.Entry<BaseFact, Boolean> e : model.entrySet()) {
+	    if (sb.length() > 0) {
+		sb.append(", ");
+	    }
+	    sb.append(e.getKey()).append(" is ").append(e.getValue());
+	}
+	return sb.toString();
+    }
+
+    /**
+     * Journals an event, snapshotting once enough entries piled up
+     *
+     * @param journal The journal, or null if the session is not journaled
+     * @param fb The FactBase, already updated by the event
+     * @param type The kind of event
+     * @param statement The statement of the event, or null
+     * @param command The rule command, or null
+     */
+    private static void record(SessionJournal journal, FactBase fb,
+	    SessionJournal.Type type, Statable statement, String command) {
+	if (journal == null) {
+	    return;
+	}
+	try {
+	    if (type == SessionJournal.Type.RESET
+		    || journal.getEntries() >= SNAPSHOT_ENTRIES) {
+		// Covers the event itself, so it need not be appended
+		journal.snapshot(fb);
+	    } else {
+		journal.append(type, statement, command);
+	    }
+	} catch (IOException ex) {
+	    System.err.println("Error - Cannot journal: " + ex.getMessage());
+	}
+    }
+
+    /**
+     * Replays journaled events through the same paths the commands take
+     *
+     * @param entries The events, in order
+     * @param fb The FactBase to replay into
+     * @return The mode the session was in after the last event
+     */
+    private static Mode replay(List<SessionJournal.Entry> entries, FactBase fb) {
+	for (SessionJournal.Entry e : entries) {
+	    switch (e.getType()) {
+		case PREMISE:
+		    fb.add(e.getStatement());
+		    break;
+		case CONCLUSION:
+		    fb.setConclusion(e.getStatement());
+		    break;
+		case RULE:
+		    try {
+			applyRule(RuleCommand.parse(e.getCommand()), fb,
+				e.getStatement());
+		    } catch (RuleFormatException ex) {
+			System.err.println(ex.errMessage());
+		    }
+		    break;
+		case RESET:
+		    fb.clear();
+		    fb.setConclusion(null);
+		    break;
+		case CANONICAL:
+		    fb.setCanonicalEquality(!fb.isCanonicalEquality());
+		    break;
+		case FILTER:
+		    fb.setRedundancyFilter(!fb.isRedundancyFilter());
+		    break;
+		case ASSUME:
+		    fb.assume(e.getStatement());
+		    break;
+	    }
+	}
+	return (fb.getConclusion() == null) ? Mode.PREMISE : Mode.RULE;
+    }
+
+    /**
+     * Converts a line argument into the reference recorded in a
+     * justification
+     *
+     * @param arg The argument
+     * @return The line, or 0 for the wildcard
+     */
+    private static int lineReference(String arg) {
+	try {
+	    return usesWildcard(arg) ? 0 : Integer.parseInt(arg);
+	} catch (NumberFormatException ex) {
+	    return 0;
+	}
+    }
+
     /**
      * Returns the integer coordinates of a sub-statement
      *
@@ -266,30 +822,23 @@ public class ProoferInterface {
      *
      * @return The command map
      */
-    private static Map<Mode, List<Command>> buildCommandMap() {
+    private static Map<Mode, Set<Command>> buildCommandMap() {
 	// init
-	Map<Mode, List<Command>> map = new HashMap<>();
+	Map<Mode, Set<Command>> map = new EnumMap<>(Mode.class);
 
 	// Premise
-	List<Command> premiseCommands = new ArrayList();
-	premiseCommands.add(Command.EXIT);
-	premiseCommands.add(Command.THEREFORE);
-	premiseCommands.add(Command.SHOW_FACTS);
-	map.put(Mode.PREMISE, premiseCommands);
+	map.put(Mode.PREMISE, EnumSet.of(Command.EXIT, Command.THEREFORE,
+		Command.SHOW_FACTS, Command.CANONICAL, Command.FILTER));
 
 	// Conclusion
-	List<Command> conclusionCommands = new ArrayList();
-	conclusionCommands.add(Command.EXIT);
-	conclusionCommands.add(Command.SHOW_FACTS);
-	map.put(Mode.CONCLUSION, conclusionCommands);
+	map.put(Mode.CONCLUSION, EnumSet.of(Command.EXIT, Command.SHOW_FACTS,
+		Command.CANONICAL, Command.FILTER));
 
 	// Rule
-	List<Command> ruleCommands = new ArrayList();
-	ruleCommands.add(Command.EXIT);
-	ruleCommands.add(Command.DONE);
-	ruleCommands.add(Command.SHOW_FACTS);
-	ruleCommands.add(Command.RESET);
-	map.put(Mode.RULE, ruleCommands);
+	map.put(Mode.RULE, EnumSet.of(Command.EXIT, Command.DONE,
+		Command.SHOW_FACTS, Command.RESET, Command.CANONICAL,
+		Command.PROVE, Command.PROOF, Command.PORTFOLIO, Command.ASSUME,
+		Command.PROFILE, Command.FILTER));
 
 	return map;
     }
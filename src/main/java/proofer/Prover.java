@@ -0,0 +1,62 @@
+package proofer;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Common interface of the automated proof searches
+ *
+ * @author Ryan Kenney
+ */
+public interface Prover {
+
+    /**
+     * The rules automated searches apply. Addition is left out because its
+     * second argument comes out of thin air, and the Rules of Replacement
+     * only apply at coordinates.
+     */
+    public static final Set<Rule> RULES = Collections.unmodifiableSet(EnumSet.of(
+	    Rule.MP, Rule.MT, Rule.DS, Rule.HS, Rule.SIMP, Rule.CONJ, Rule.CD, Rule.ABS));
+
+    /**
+     * Searches for a proof of conclusion from premises
+     *
+     * @param premises The premises, which become the first lines of the proof
+     * @param conclusion The statement to prove
+     * @return The proof, or null if none was found within the limits
+     * @throws IOException The search needed disk space and could not use it
+     */
+    public Proof search(List<Statable> premises, Statable conclusion)
+	    throws IOException;
+
+    /**
+     * Searches for a proof of the FactBase's conclusion from its facts
+     *
+     * @param fb The FactBase, whose facts are taken as premises in line order
+     * @return The proof, or null if none was found within the limits
+     * @throws IOException The search needed disk space and could not use it
+     */
+    public default Proof search(FactBase fb) throws IOException {
+	return search(fb.getFacts(), fb.getConclusion());
+    }
+
+    /**
+     * The largest fact, in nodes, a search keeps by default: the size of the
+     * largest premise or the conclusion. Without a bound Conjunction and
+     * Absorption grow facts forever.
+     *
+     * @param premises The premises
+     * @param conclusion The conclusion
+     * @return The size limit
+     */
+    public static int defaultSizeLimit(List<Statable> premises, Statable conclusion) {
+	int limit = Statement.size(conclusion);
+	for (Statable premise : premises) {
+	    limit = Math.max(limit, Statement.size(premise));
+	}
+	return limit;
+    }
+}
@@ -0,0 +1,82 @@
+package proofer;
+
+/**
+ * A quantified formula, ie "(x)(Fx -> Gx)" or "(Ey)~Fy". To the connectives
+ * and the rules of inference it is an atom; only the quantifier rules look
+ * inside it.
+ *
+ * @author Ryan Kenney
+ */
+public final class Quantified implements Statable {
+
+    private final Quantifier quantifier;
+    private final Term variable;
+    private final Statable body;
+    private final String text;
+
+    /**
+     * @param quantifier The quantifier
+     * @param variable The variable it binds
+     * @param body The formula it binds the variable in
+     */
+    public Quantified(Quantifier quantifier, Term variable, Statable body) {
+	if (!variable.isVariable()) {
+	    throw new IllegalArgumentException("Not a variable: " + variable);
+	}
+	this.quantifier = quantifier;
+	this.variable = variable;
+	this.body = body;
+	this.text = "(" + quantifier + variable + ")" + body;
+    }
+
+    /**
+     * @return the quantifier
+     */
+    public Quantifier getQuantifier() {
+	return quantifier;
+    }
+
+    /**
+     * @return the variable bound by the quantifier
+     */
+    public Term getVariable() {
+	return variable;
+    }
+
+    /**
+     * @return the formula the variable is bound in
+     */
+    public Statable getBody() {
+	return body;
+    }
+
+    @Override
+    public Operator getOperator() {
+	return null;
+    }
+
+    @Override
+    public Statable[] getOperands() {
+	return new Statable[]{this};
+    }
+
+    @Override
+    public boolean isAtomic() {
+	return true;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+	return obj instanceof Quantified && text.equals(obj.toString());
+    }
+
+    @Override
+    public int hashCode() {
+	return text.hashCode();
+    }
+
+    @Override
+    public String toString() {
+	return text;
+    }
+}
@@ -0,0 +1,22 @@
+package proofer;
+
+/**
+ * The first-order quantifiers, written "(x)" and "(Ex)" in front of the
+ * formula they bind x in
+ *
+ * @author Ryan Kenney
+ */
+public enum Quantifier {
+
+    UNIVERSAL(""), EXISTENTIAL("E");
+    private final String srep;
+
+    private Quantifier(String srep) {
+	this.srep = srep;
+    }
+
+    @Override
+    public String toString() {
+	return srep;
+    }
+}
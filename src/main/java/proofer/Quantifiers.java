@@ -0,0 +1,257 @@
+package proofer;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Term level operations on first-order formulas that the quantifier rules
+ * are built from: substitution, free variables and checking that one
+ * formula is an instance of another.
+ *
+ * @author Ryan Kenney
+ */
+public final class Quantifiers {
+
+    private Quantifiers() {
+    }
+
+    /**
+     * Replaces the free occurrences of a term. Occurrences under a
+     * quantifier binding the term are left alone.
+     *
+     * @param s The formula
+     * @param from The term to replace
+     * @param to The term to put in its place
+     * @return The rewritten formula, or s itself if nothing changed
+     */
+    public static Statable substitute(Statable s, Term from, Term to) {
+	if (s instanceof Predicate) {
+	    return ((Predicate) s).substitute(from, to);
+	} else if (s instanceof Quantified) {
+	    Quantified q = (Quantified) s;
+	    if (q.getVariable() == from) {
+		return s;
+	    }
+	    Statable body = substitute(q.getBody(), from, to);
+	    return (body == q.getBody()) ? s
+		    : new Quantified(q.getQuantifier(), q.getVariable(), body);
+	} else if (s.isAtomic()) {
+	    return s;
+	}
+	Operator op = s.getOperator();
+	Statable[] operands = s.getOperands();
+	if (op == null) {
+	    return substitute(operands[0], from, to);
+	}
+	Statable left = substitute(operands[0], from, to);
+	Statable right = (op == Operator.NOT) ? null
+		: substitute(operands[1], from, to);
+	if (left == operands[0] && right == operands[1]) {
+	    return s;
+	}
+	return Statement.compose(op, left, right);
+    }
+
+    /**
+     * @param s The formula
+     * @return the variables occurring free in s, in order of appearance
+     */
+    public static Set<Term> freeVariables(Statable s) {
+	Set<Term> out = new LinkedHashSet<>();
+	collect(s, out, true, new LinkedHashSet<Term>());
+	return out;
+    }
+
+    /**
+     * @param s The formula
+     * @return the constants occurring in s, in order of appearance
+     */
+    public static Set<Term> constants(Statable s) {
+	Set<Term> out = new LinkedHashSet<>();
+	collect(s, out, false, new LinkedHashSet<Term>());
+	return out;
+    }
+
+    /**
+     * @param s The formula
+     * @return True if s has no predicates or quantifiers, false otherwise
+     */
+    public static boolean isPropositional(Statable s) {
+	if (s instanceof BaseFact) {
+	    return true;
+	} else if (s.isAtomic()) {
+	    return false;
+	}
+	Statable[] operands = s.getOperands();
+	return isPropositional(operands[0])
+		&& (s.getOperator() == null || s.getOperator() == Operator.NOT
+		|| isPropositional(operands[1]));
+    }
+
+    /**
+     * Checks if s is body with some single term put in for the free
+     * occurrences of variable
+     *
+     * @param body The formula with the variable
+     * @param variable The variable
+     * @param s The candidate instance
+     * @return The term put in for the variable, the variable itself if it
+     * does not occur free in body and s equals body, or null if s is no
+     * instance
+     */
+    public static Term instanceTerm(Statable body, Term variable, Statable s) {
+	Term[] binding = new Term[1];
+	return match(body, variable, s, binding)
+		? ((binding[0] == null) ? variable : binding[0]) : null;
+    }
+
+    /**
+     * Checks a line justified by a quantifier rule against the line it
+     * refers to. Only the shape is checked; the restrictions on which terms
+     * may be used depend on the rest of the proof.
+     *
+     * @param rule UI, EI, UG or EG
+     * @param premise The referenced line
+     * @param fact The line's fact
+     * @return True if fact has the shape the rule gives premise, false
+     * otherwise
+     */
+    public static boolean follows(Rule rule, Statable premise, Statable fact) {
+	boolean instantiation = rule == Rule.UI || rule == Rule.EI;
+	Statable general = instantiation ? premise : fact;
+	Statable instance = instantiation ? fact : premise;
+	if (!(general instanceof Quantified)) {
+	    return false;
+	}
+	Quantified q = (Quantified) general;
+	Quantifier expected = (rule == Rule.UI || rule == Rule.UG)
+		? Quantifier.UNIVERSAL : Quantifier.EXISTENTIAL;
+	if (q.getQuantifier() != expected) {
+	    return false;
+	}
+	Term term = instanceTerm(q.getBody(), q.getVariable(), instance);
+	if (term == null || binds(q.getBody(), term)) {
+	    return false;
+	}
+	switch (rule) {
+	    case EI:
+		return !term.isVariable() && !constants(q).contains(term);
+	    case UG:
+		return term.isVariable() && (term == q.getVariable()
+			|| !freeVariables(q).contains(term));
+	    default:
+		return true;
+	}
+    }
+
+    /**
+     * Checks if a quantifier inside s binds term, so putting term in for
+     * another variable there would capture it
+     *
+     * @param s The formula
+     * @param term The term
+     * @return True if term is bound somewhere in s, false otherwise
+     */
+    public static boolean binds(Statable s, Term term) {
+	if (s instanceof Quantified) {
+	    Quantified q = (Quantified) s;
+	    return q.getVariable() == term || binds(q.getBody(), term);
+	} else if (s.isAtomic()) {
+	    return false;
+	}
+	Operator op = s.getOperator();
+	return binds(s.getOperands()[0], term) || (op != null
+		&& op != Operator.NOT && binds(s.getOperands()[1], term));
+    }
+
+    /**
+     * Matches pattern against s, where the free occurrences of variable in
+     * pattern must all line up with the same term of s
+     */
+    private static boolean match(Statable pattern, Term variable, Statable s,
+	    Term[] binding) {
+	pattern = unwrap(pattern);
+	s = unwrap(s);
+	if (pattern instanceof Predicate) {
+	    if (!(s instanceof Predicate)) {
+		return false;
+	    }
+	    Predicate p = (Predicate) pattern;
+	    Predicate a = (Predicate) s;
+	    if (p.getName() != a.getName() || p.getArity() != a.getArity()) {
+		return false;
+	    }
+	    for (int i = 0; i < p.getArity(); i++) {
+		Term t = p.getArgument(i);
+		if (t == variable) {
+		    if (binding[0] == null) {
+			binding[0] = a.getArgument(i);
+		    } else if (binding[0] != a.getArgument(i)) {
+			return false;
+		    }
+		} else if (t != a.getArgument(i)) {
+		    return false;
+		}
+	    }
+	    return true;
+	} else if (pattern instanceof Quantified) {
+	    if (!(s instanceof Quantified)) {
+		return false;
+	    }
+	    Quantified p = (Quantified) pattern;
+	    Quantified q = (Quantified) s;
+	    if (p.getQuantifier() != q.getQuantifier()
+		    || p.getVariable() != q.getVariable()) {
+		return false;
+	    } else if (p.getVariable() == variable) {
+		return p.toString().equals(q.toString());
+	    }
+	    return match(p.getBody(), variable, q.getBody(), binding);
+	} else if (pattern.isAtomic()) {
+	    return pattern == s;
+	}
+	Operator op = pattern.getOperator();
+	if (op != s.getOperator()) {
+	    return false;
+	}
+	return match(pattern.getOperands()[0], variable, s.getOperands()[0], binding)
+		&& (op == Operator.NOT || match(pattern.getOperands()[1],
+			variable, s.getOperands()[1], binding));
+    }
+
+    private static void collect(Statable s, Set<Term> out, boolean variables,
+	    Set<Term> bound) {
+	if (s instanceof Predicate) {
+	    Predicate p = (Predicate) s;
+	    for (int i = 0; i < p.getArity(); i++) {
+		Term t = p.getArgument(i);
+		if (t.isVariable() == variables && !bound.contains(t)) {
+		    out.add(t);
+		}
+	    }
+	} else if (s instanceof Quantified) {
+	    Quantified q = (Quantified) s;
+	    boolean added = bound.add(q.getVariable());
+	    collect(q.getBody(), out, variables, bound);
+	    if (added) {
+		bound.remove(q.getVariable());
+	    }
+	} else if (!s.isAtomic()) {
+	    collect(s.getOperands()[0], out, variables, bound);
+	    if (s.getOperator() != null && s.getOperator() != Operator.NOT) {
+		collect(s.getOperands()[1], out, variables, bound);
+	    }
+	}
+    }
+
+    /**
+     * Skips the operator-less Statements the parser wraps around
+     * sub-formulas
+     */
+    static Statable unwrap(Statable s) {
+	while (s.getOperator() == null && !s.isAtomic()) {
+	    s = s.getOperands()[0];
+	}
+	return s;
+    }
+}
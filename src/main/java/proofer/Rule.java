@@ -1,7 +1,20 @@
 package proofer;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  *
@@ -16,8 +29,21 @@ public enum Rule {
     COM("Com", "Commutation"), ASSOC("Assoc", "Association"), DIST("Dist", "Distribution"),
     DN("DN", "Double Negation"), TRANS("Trans", "Transposition"),
     IMPL("Impl", "Material Implication"), EQUIV("Equiv", "Material Equivalence"),
-    EXP("Exp", "Exportation"), TAUT("Taut", "Tautology");
+    EXP("Exp", "Exportation"), TAUT("Taut", "Tautology"),
+    CP("CP", "Conditional Proof"), IP("IP", "Indirect Proof"),
+    UI("UI", "Universal Instantiation"), UG("UG", "Universal Generalization"),
+    EI("EI", "Existential Instantiation"), EG("EG", "Existential Generalization");
     private String terse, verbose;
+    private static final Map<String, Rule> BY_NAME = new HashMap<>();
+    private static final int BLOCK_PAIRS = 1024;
+    private static final Set<Rule> REPLACEMENT = Collections.unmodifiableSet(
+	    EnumSet.of(DM, COM, ASSOC, DIST, DN, TRANS, IMPL, EQUIV, EXP, TAUT));
+
+    static {
+	for (Rule r : values()) {
+	    BY_NAME.put(r.terse.toUpperCase(), r);
+	}
+    }
 
     private Rule(String terse, String verbose) {
 	this.terse = terse;
@@ -28,16 +54,44 @@ public enum Rule {
      * Get the rule whose terse String (or toString()) is val
      *
      * @param val The String value matching the terse representation of a rule
-     * @return The Rule, if there is a match, false otherwise
+     * @return The Rule, if there is a match, null otherwise
      */
     public static Rule getRule(String val) {
-	for (Rule r : values()) {
-	    if (val.equalsIgnoreCase(r.terse)) {
-		return r;
-	    }
-	}
+	return BY_NAME.get(val.toUpperCase());
+    }
+
+    /**
+     * Checks if the rule is a Rule of Replacement, which operates on a
+     * sub-statement given by coordinates, rather than a Rule of Inference.
+     *
+     * @return True for Rules of Replacement, false for Rules of Inference
+     */
+    public boolean isReplacement() {
+	return REPLACEMENT.contains(this);
+    }
+
+    /**
+     * Checks if the rule closes a sub-proof, discharging its assumption.
+     * These rules are only sound when the second argument was derived
+     * while the assumption given as the first was in force, so FactBase
+     * applies them through discharge() rather than on arbitrary lines.
+     *
+     * @return True for Conditional and Indirect Proof, false otherwise
+     */
+    public boolean isDischarge() {
+	return this == CP || this == IP;
+    }
 
-	return null;
+    /**
+     * Checks if the rule adds or removes a quantifier. These rules take a
+     * line and terms rather than two lines, and whether a term may be used
+     * depends on the rest of the proof, so FactBase applies them through
+     * instantiate() and generalize().
+     *
+     * @return True for UI, UG, EI and EG, false otherwise
+     */
+    public boolean isQuantifier() {
+	return this == UI || this == UG || this == EI || this == EG;
     }
 
     /**
@@ -129,6 +183,245 @@ public enum Rule {
 	return doRule(arg0, (List) null, silent);
     }
 
+    /**
+     * Applies the rule once to whole statements. Rules of Replacement are
+     * applied at the base coordinate, and only Double Negation supports that.
+     *
+     * @param arg0 The first argument
+     * @param arg1 The second argument, ignored by rules that take only one
+     * @return The result of the rule
+     * @throws RuleFormatException The rule cannot be applied
+     */
+    public Statable apply(Statable arg0, Statable arg1)
+	    throws RuleFormatException {
+	switch (this) {
+	    case MP:
+		return ModusPonens(arg0, arg1);
+	    case MT:
+		return ModusTollens(arg0, arg1);
+	    case DS:
+		return DisjunctiveSyllogism(arg0, arg1);
+	    case HS:
+		return HypotheticalSyllogism(arg0, arg1);
+	    case SIMP:
+		return Simplification(arg0);
+	    case CONJ:
+		return Conjunction(arg0, arg1);
+	    case CD:
+		return ConstructiveDilemma(arg0, arg1);
+	    case ABS:
+		return Absorption(arg0);
+	    case ADD:
+		return Addition(arg0, arg1);
+	    case DN:
+		return DoubleNegative(arg0);
+	    case CP:
+		return ConditionalProof(arg0, arg1);
+	    case IP:
+		return IndirectProof(arg0, arg1);
+	    default:
+		throw new RuleFormatException(terse, "Rule not supported");
+	}
+    }
+
+    /**
+     * Lazy version of doRule() for whole statements. Results are computed
+     * one at a time as the iterator is advanced, so a caller that stops
+     * early never pays for the rest of the cross product. Pairs the rule
+     * cannot be applied to are skipped, as doRule() does when silent.
+     *
+     * The lists are read as the iterator advances, so pass copies if they
+     * may change in the meantime; FactBase.getValues() already returns one.
+     *
+     * @param arg0 The first arguments
+     * @param arg1 The second arguments, ignored by rules that take only one
+     * @return The results, in the order doRule() would list them
+     */
+    public Iterator<Statable> results(List<Statable> arg0, List<Statable> arg1) {
+	return new ResultIterator(this, arg0, isUnary() ? null : arg1);
+    }
+
+    /**
+     * Stream version of results(), for callers that want to filter, limit
+     * or short-circuit with findFirst() or anyMatch()
+     *
+     * @param arg0 The first arguments
+     * @param arg1 The second arguments, ignored by rules that take only one
+     * @return A sequential, ordered stream of the results
+     */
+    public Stream<Statable> stream(List<Statable> arg0, List<Statable> arg1) {
+	return StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+		results(arg0, arg1), Spliterator.ORDERED | Spliterator.NONNULL),
+		false);
+    }
+
+    /**
+     * Parallel version of results(). The cross product is split into blocks
+     * that are worked on by the common fork-join pool, each filling its own
+     * buffer, and the buffers are joined in block order. The result is
+     * therefore exactly the list the sequential path yields, duplicates
+     * included, which FactBase.add() then removes.
+     *
+     * @param arg0 The first arguments
+     * @param arg1 The second arguments, ignored by rules that take only one
+     * @return The results, in the order results() yields them
+     */
+    public List<Statable> parallelResults(List<Statable> arg0,
+	    List<Statable> arg1) {
+	List<Statable> second = isUnary() ? null : arg1;
+	long pairs = (long) arg0.size() * ((second == null) ? 1 : second.size());
+	return ForkJoinPool.commonPool().invoke(
+		new BlockTask(this, arg0, second, 0, pairs));
+    }
+
+    /**
+     * Applies the rule to a range of the cross product, numbered row by row
+     * so that pair k is (arg0[k / width], arg1[k % width])
+     */
+    @SuppressWarnings("serial")
+    private static class BlockTask extends RecursiveTask<List<Statable>> {
+
+	private final Rule rule;
+	private final List<Statable> arg0, arg1;
+	private final long from, to;
+
+	BlockTask(Rule rule, List<Statable> arg0, List<Statable> arg1,
+		long from, long to) {
+	    this.rule = rule;
+	    this.arg0 = arg0;
+	    this.arg1 = arg1;
+	    this.from = from;
+	    this.to = to;
+	}
+
+	@Override
+	protected List<Statable> compute() {
+	    if (to - from > BLOCK_PAIRS) {
+		long mid = (from + to) >>> 1;
+		BlockTask left = new BlockTask(rule, arg0, arg1, from, mid);
+		left.fork();
+		List<Statable> right = new BlockTask(rule, arg0, arg1, mid, to)
+			.compute();
+		List<Statable> ret = left.join();
+		ret.addAll(right);
+		return ret;
+	    }
+
+	    List<Statable> buffer = new ArrayList<>();
+	    int width = (arg1 == null) ? 1 : arg1.size();
+	    for (long k = from; k < to; k++) {
+		Statable a = arg0.get((int) (k / width));
+		Statable b = (arg1 == null) ? null : arg1.get((int) (k % width));
+		if (rule.mayApply(a, b)) {
+		    try {
+			buffer.add(rule.apply(a, b));
+		    } catch (RuleFormatException ex) {
+			// Skip pairs the rule does not apply to
+		    }
+		}
+	    }
+	    return buffer;
+	}
+    }
+
+    /**
+     * Walks the cross product of the arguments, applying the rule to one
+     * pair per step
+     */
+    private static class ResultIterator implements Iterator<Statable> {
+
+	private final Rule rule;
+	private final List<Statable> arg0, arg1;
+	private int i = 0, j = 0;
+	private Statable next;
+
+	ResultIterator(Rule rule, List<Statable> arg0, List<Statable> arg1) {
+	    this.rule = rule;
+	    this.arg0 = arg0;
+	    this.arg1 = arg1;
+	}
+
+	@Override
+	public boolean hasNext() {
+	    while (next == null && i < arg0.size()) {
+		Statable a = arg0.get(i);
+		Statable b = null;
+		if (arg1 == null) {
+		    i++;
+		} else if (j < arg1.size()) {
+		    b = arg1.get(j++);
+		} else {
+		    i++;
+		    j = 0;
+		    continue;
+		}
+		if (rule.mayApply(a, b)) {
+		    try {
+			next = rule.apply(a, b);
+		    } catch (RuleFormatException ex) {
+			// Skip pairs the rule does not apply to
+		    }
+		}
+	    }
+	    return next != null;
+	}
+
+	@Override
+	public Statable next() {
+	    if (!hasNext()) {
+		throw new NoSuchElementException();
+	    }
+	    Statable ret = next;
+	    next = null;
+	    return ret;
+	}
+    }
+
+    /**
+     * Cheap check on main operators that rules out most arguments apply()
+     * would reject, without paying for a RuleFormatException. A true result
+     * does not guarantee apply() succeeds.
+     *
+     * @param arg0 The first argument
+     * @param arg1 The second argument, ignored by rules that take only one
+     * @return False if the rule certainly cannot be applied, true otherwise
+     */
+    public boolean mayApply(Statable arg0, Statable arg1) {
+	switch (this) {
+	    case MP:
+	    case HS:
+	    case ABS:
+		return arg0.getOperator() == Operator.COND;
+	    case MT:
+		return arg0.getOperator() == Operator.COND
+			&& arg1.getOperator() == Operator.NOT;
+	    case DS:
+		return arg0.getOperator() == Operator.OR
+			&& arg1.getOperator() == Operator.NOT;
+	    case SIMP:
+		return arg0.getOperator() == Operator.AND;
+	    case CD:
+		return arg0.getOperator() == Operator.AND
+			&& arg1.getOperator() == Operator.OR;
+	    case IP:
+		return arg1.getOperator() == Operator.AND;
+	    case UI:
+	    case UG:
+	    case EI:
+	    case EG:
+		return false;
+	    default:
+		return true;
+	}
+    }
+
+    /**
+     * @return True if the rule takes a single statement, false otherwise
+     */
+    public boolean isUnary() {
+	return this == SIMP || this == ABS || isReplacement() || isQuantifier();
+    }
+
     /**
      * Attempts to do Modus Ponens with imp and ant.
      *
@@ -575,6 +868,39 @@ public enum Rule {
 	return ret;
     }
 
+    /**
+     * Discharges an assumption by Conditional Proof
+     *
+     * @param ant The assumption
+     * @param con A statement derived while ant was assumed
+     * @return The implication of con by ant
+     */
+    private static Statable ConditionalProof(Statable ant, Statable con) {
+	return Statement.compose(Operator.COND, ant, con);
+    }
+
+    /**
+     * Discharges an assumption by Indirect Proof
+     *
+     * @param assumption The assumption
+     * @param contra A contradiction, ie (q ^ ~q), derived while assumption
+     * was assumed
+     * @return The negation of assumption
+     * @throws RuleFormatException The rule cannot be applied
+     */
+    private static Statable IndirectProof(Statable assumption, Statable contra)
+	    throws RuleFormatException {
+	// Make sure contra is a conjunction of some statement and its negation
+	if (contra.getOperator() == Operator.AND
+		&& contra.getOperands()[1].getOperator() == Operator.NOT
+		&& contra.getOperands()[1].getOperands()[0].toString().equals(
+			contra.getOperands()[0].toString())) {
+	    return Statement.negation(assumption);
+	} else {
+	    throw new RuleFormatException("IP", "Rule could not be applied");
+	}
+    }
+
     /**
      * Applies the Double Negative rule of Replacement
      *
@@ -0,0 +1,162 @@
+package proofer;
+
+/**
+ * A rule command entered in rule mode, ie "MP(1,2)" or "DN(3,1.2)".
+ *
+ * The command is tokenized by hand in a single pass instead of with a regex
+ * and String.split(), so replaying long proof scripts costs next to nothing.
+ * The accepted grammar is the same as the old RULE_FORMAT pattern:
+ * name(arg0[,arg1][,coord]*) where name is 1-4 letters, arg0 and arg1 are
+ * line numbers or the wildcard and coordinates are made of 1, 2 and '.'.
+ * The quantifier rules take terms after the line instead, ie "UI(1,a)",
+ * "UI(1,*)" or "UG(4,y,x)". Spaces are ignored anywhere in the command.
+ *
+ * @author Ryan Kenney
+ */
+public class RuleCommand {
+
+    private static final String FORMAT_MESSAGE =
+	    "Rule format must be name(arg0[,arg1])";
+    private static final int MAX_NAME_LENGTH = 4;
+    private final Rule rule;
+    private final String[] arguments;
+
+    private RuleCommand(Rule rule, String[] arguments) {
+	this.rule = rule;
+	this.arguments = arguments;
+    }
+
+    /**
+     * Tokenizes a rule command.
+     *
+     * @param input The raw line entered by the user
+     * @return The parsed command
+     * @throws RuleFormatException The line is not a well formed rule command
+     * or names a rule that does not exist
+     */
+    public static RuleCommand parse(String input) throws RuleFormatException {
+	// Drop spaces up front so the scanner below only sees tokens
+	char[] buf = new char[input.length()];
+	int len = 0;
+	for (int i = 0; i < input.length(); i++) {
+	    char c = input.charAt(i);
+	    if (c != ' ') {
+		buf[len++] = c;
+	    }
+	}
+
+	// Rule name
+	int pos = 0;
+	while (pos < len && isLetter(buf[pos])) {
+	    pos++;
+	}
+	if (pos == 0 || pos > MAX_NAME_LENGTH || pos >= len || buf[pos] != '('
+		|| buf[len - 1] != ')') {
+	    throw new RuleFormatException("rule", FORMAT_MESSAGE);
+	}
+	String name = new String(buf, 0, pos);
+	Rule rule = Rule.getRule(name);
+	if (rule == null) {
+	    throw new RuleFormatException("rule", "Unknown rule " + name);
+	}
+
+	// Arguments, separated by commas and terminated by the close paren
+	int count = 1;
+	for (int i = pos + 1; i < len - 1; i++) {
+	    if (buf[i] == ',') {
+		count++;
+	    }
+	}
+	String[] arguments = new String[count];
+	int start = pos + 1;
+	for (int arg = 0; arg < count; arg++) {
+	    int end = start;
+	    while (end < len - 1 && buf[end] != ',') {
+		end++;
+	    }
+	    boolean valid = rule.isQuantifier()
+		    ? isValidTerm(buf, start, end, arg, rule)
+		    : isValidArgument(buf, start, end, arg);
+	    if (!valid) {
+		throw new RuleFormatException("rule", FORMAT_MESSAGE);
+	    }
+	    arguments[arg] = new String(buf, start, end - start);
+	    start = end + 1;
+	}
+
+	return new RuleCommand(rule, arguments);
+    }
+
+    /**
+     * @return the rule named by the command
+     */
+    public Rule getRule() {
+	return rule;
+    }
+
+    /**
+     * @return the raw arguments of the command, in order
+     */
+    public String[] getArguments() {
+	return arguments;
+    }
+
+    /**
+     * Checks a single argument against what is allowed at its position. The
+     * first argument is always a line reference, the second may be a line
+     * reference or a coordinate and any further ones are coordinates.
+     *
+     * @param buf The command buffer
+     * @param start Index of the first character of the argument
+     * @param end Index one past the last character of the argument
+     * @param position Which argument this is, starting at 0
+     * @return True if the argument is well formed, false otherwise
+     */
+    private static boolean isValidArgument(char[] buf, int start, int end,
+	    int position) {
+	if (start >= end) {
+	    return false;
+	}
+	boolean reference = true;
+	boolean coordinate = buf[end - 1] == '1' || buf[end - 1] == '2';
+	for (int i = start; i < end; i++) {
+	    char c = buf[i];
+	    reference &= (c >= '0' && c <= '9') || c == '*';
+	    coordinate &= c == '1' || c == '2' || c == '.';
+	}
+	switch (position) {
+	    case 0:
+		return reference;
+	    case 1:
+		return reference || coordinate;
+	    default:
+		return coordinate;
+	}
+    }
+
+    /**
+     * Checks a single argument of a quantifier rule. The first argument is a
+     * line reference and the others are single terms, except that UI may be
+     * given the wildcard in place of its term.
+     *
+     * @param buf The command buffer
+     * @param start Index of the first character of the argument
+     * @param end Index one past the last character of the argument
+     * @param position Which argument this is, starting at 0
+     * @param rule The quantifier rule
+     * @return True if the argument is well formed, false otherwise
+     */
+    private static boolean isValidTerm(char[] buf, int start, int end,
+	    int position, Rule rule) {
+	if (position == 0) {
+	    return isValidArgument(buf, start, end, position)
+		    && buf[start] != '*';
+	}
+	return end - start == 1 && (Term.of(buf[start]) != null
+		|| (position == 1 && rule == Rule.UI && buf[start] == '*'));
+    }
+
+    private static boolean isLetter(char c) {
+	return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
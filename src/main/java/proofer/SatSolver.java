@@ -0,0 +1,241 @@
+package proofer;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A small DPLL satisfiability solver with unit propagation, along with a
+ * Tseitin encoder that turns Statables into clauses. Variables are numbered
+ * from 1 and a literal is a variable or its negation.
+ *
+ * Validity of an argument is checked by refutation: the premises together
+ * with the negated conclusion are unsatisfiable exactly when the argument is
+ * valid, and a satisfying assignment is a counter-model.
+ *
+ * @author Ryan Kenney
+ */
+public class SatSolver {
+
+    private final List<int[]> clauses = new ArrayList<>();
+    private final Map<BaseFact, Integer> atoms = new EnumMap<>(BaseFact.class);
+    private final Map<String, Integer> encoded = new HashMap<>();
+    private int variables = 0;
+    private byte[] values;
+    private int[] trail;
+    private int trailSize;
+
+    /**
+     * Checks an argument by refutation
+     *
+     * @param premises The premises
+     * @param conclusion The conclusion
+     * @return True if the argument is valid, false otherwise
+     * @throws InterruptedException The thread was interrupted while solving
+     */
+    public static boolean isValid(List<Statable> premises, Statable conclusion)
+	    throws InterruptedException {
+	return findCounterModel(premises, conclusion) == null;
+    }
+
+    /**
+     * Looks for an assignment under which every premise holds and the
+     * conclusion does not
+     *
+     * @param premises The premises
+     * @param conclusion The conclusion
+     * @return The assignment, or null if the argument is valid
+     * @throws InterruptedException The thread was interrupted while solving
+     */
+    public static Map<BaseFact, Boolean> findCounterModel(List<Statable> premises,
+	    Statable conclusion) throws InterruptedException {
+	SatSolver solver = new SatSolver();
+	for (Statable premise : premises) {
+	    solver.addClause(solver.encode(premise));
+	}
+	solver.addClause(-solver.encode(conclusion));
+	return solver.solve() ? solver.getModel() : null;
+    }
+
+    /**
+     * @return a fresh variable
+     */
+    public int newVariable() {
+	return ++variables;
+    }
+
+    /**
+     * @param literals The literals of the clause, at least one of which must
+     * hold
+     */
+    public void addClause(int... literals) {
+	clauses.add(literals.clone());
+    }
+
+    /**
+     * Encodes s with fresh variables standing for its sub-formulas, so the
+     * clauses grow linearly with s
+     *
+     * @param s The Statable to encode
+     * @return The literal that holds exactly when s does
+     */
+    public int encode(Statable s) {
+	Operator op = s.getOperator();
+	if (op == null) {
+	    if (s instanceof BaseFact) {
+		Integer v = atoms.get((BaseFact) s);
+		if (v == null) {
+		    v = newVariable();
+		    atoms.put((BaseFact) s, v);
+		}
+		return v;
+	    }
+	    return encode(s.getOperands()[0]);
+	} else if (op == Operator.NOT) {
+	    return -encode(s.getOperands()[0]);
+	}
+
+	String key = s.toString();
+	Integer known = encoded.get(key);
+	if (known != null) {
+	    return known;
+	}
+	int a = encode(s.getOperands()[0]);
+	int b = encode(s.getOperands()[1]);
+	int x = newVariable();
+	switch (op) {
+	    case AND:
+		addClause(-x, a);
+		addClause(-x, b);
+		addClause(x, -a, -b);
+		break;
+	    case OR:
+		addClause(-x, a, b);
+		addClause(x, -a);
+		addClause(x, -b);
+		break;
+	    case COND:
+		addClause(-x, -a, b);
+		addClause(x, a);
+		addClause(x, -b);
+		break;
+	    default:
+		addClause(-x, -a, b);
+		addClause(-x, a, -b);
+		addClause(x, a, b);
+		addClause(x, -a, -b);
+		break;
+	}
+	encoded.put(key, x);
+	return x;
+    }
+
+    /**
+     * Checks if every clause can hold at once
+     *
+     * @return True if the clauses are satisfiable, false otherwise
+     * @throws InterruptedException The thread was interrupted while solving
+     */
+    public boolean solve() throws InterruptedException {
+	values = new byte[variables + 1];
+	trail = new int[variables];
+	trailSize = 0;
+	return dpll();
+    }
+
+    /**
+     * @return the values of the BaseFacts in the assignment found by the last
+     * successful solve(), unassigned ones being false
+     */
+    public Map<BaseFact, Boolean> getModel() {
+	Map<BaseFact, Boolean> model = new EnumMap<>(BaseFact.class);
+	for (Map.Entry<BaseFact, Integer> e : atoms.entrySet()) {
+	    model.put(e.getKey(), values[e.getValue()] > 0);
+	}
+	return model;
+    }
+
+    private boolean dpll() throws InterruptedException {
+	if (Thread.currentThread().isInterrupted()) {
+	    throw new InterruptedException();
+	}
+	int mark = trailSize;
+	if (!propagate()) {
+	    undo(mark);
+	    return false;
+	}
+	int v = 1;
+	while (v <= variables && values[v] != 0) {
+	    v++;
+	}
+	if (v > variables) {
+	    return true;
+	}
+
+	int propagated = trailSize;
+	for (int literal : new int[]{v, -v}) {
+	    assign(literal);
+	    if (dpll()) {
+		return true;
+	    }
+	    undo(propagated);
+	}
+	undo(mark);
+	return false;
+    }
+
+    /**
+     * Assigns the last literal of every clause whose other literals are all
+     * false, until nothing changes
+     *
+     * @return False if some clause became false, true otherwise
+     */
+    private boolean propagate() {
+	boolean changed = true;
+	while (changed) {
+	    changed = false;
+	    for (int[] clause : clauses) {
+		int unassigned = 0;
+		int last = 0;
+		boolean satisfied = false;
+		for (int literal : clause) {
+		    int value = value(literal);
+		    if (value > 0) {
+			satisfied = true;
+			break;
+		    } else if (value == 0) {
+			unassigned++;
+			last = literal;
+		    }
+		}
+		if (satisfied) {
+		    continue;
+		} else if (unassigned == 0) {
+		    return false;
+		} else if (unassigned == 1) {
+		    assign(last);
+		    changed = true;
+		}
+	    }
+	}
+	return true;
+    }
+
+    private int value(int literal) {
+	int v = values[Math.abs(literal)];
+	return (literal > 0) ? v : -v;
+    }
+
+    private void assign(int literal) {
+	values[Math.abs(literal)] = (byte) ((literal > 0) ? 1 : -1);
+	trail[trailSize++] = Math.abs(literal);
+    }
+
+    private void undo(int mark) {
+	while (trailSize > mark) {
+	    values[trail[--trailSize]] = 0;
+	}
+    }
+}
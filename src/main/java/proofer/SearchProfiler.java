@@ -0,0 +1,209 @@
+package proofer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Opt-in profiler for the proof searches. A search reports the nodes it
+ * visits as a stack of frames: the search itself, the shape of the fact or
+ * goal at each node and the rule being tried there. The time spent in each
+ * frame, minus the time of the frames inside it, is charged to the whole
+ * stack, so the stacks can be written in the collapsed format flame graph
+ * tools read. Per rule, the profiler also counts the nodes the rule was
+ * tried at, the time spent in it and the facts it generated, along with
+ * how many of those were already known.
+ *
+ * Shapes keep the operators of the top levels of a formula and blank out
+ * the rest, ie "((_->_)->*)", so nodes with formulas that differ only in
+ * their atoms or deep structure share a frame.
+ *
+ * Each thread keeps its own stack, so searches on several threads may share
+ * a profiler. A search without a profiler pays nothing.
+ *
+ * @author Ryan Kenney
+ */
+public class SearchProfiler {
+
+    private static final int SHAPE_DEPTH = 2;
+    // Indexes into the per rule counters
+    private static final int NODES = 0, NANOS = 1, GENERATED = 2,
+	    DUPLICATES = 3;
+    private final ThreadLocal<List<Frame>> stacks = new ThreadLocal<List<Frame>>() {
+	@Override
+	protected List<Frame> initialValue() {
+	    return new ArrayList<>();
+	}
+    };
+    private final Map<String, long[]> collapsed = new TreeMap<>();
+    private final Map<Rule, long[]> rules = new EnumMap<>(Rule.class);
+
+    /**
+     * A frame on a thread's stack
+     */
+    private static final class Frame {
+
+	final String path;
+	final Rule rule;
+	final long start;
+	long children;
+
+	Frame(String path, Rule rule, long start) {
+	    this.path = path;
+	    this.rule = rule;
+	    this.start = start;
+	}
+    }
+
+    /**
+     * Opens a frame, ie for a search or a node
+     *
+     * @param name The frame's name
+     */
+    public void enter(String name) {
+	enter(name, null);
+    }
+
+    /**
+     * Opens a frame for a rule tried at the current node
+     *
+     * @param rule The rule
+     */
+    public void enter(Rule rule) {
+	enter(rule.toString(), rule);
+    }
+
+    private void enter(String name, Rule rule) {
+	List<Frame> stack = stacks.get();
+	String path = stack.isEmpty() ? name
+		: stack.get(stack.size() - 1).path + ";" + name;
+	stack.add(new Frame(path, rule, System.nanoTime()));
+    }
+
+    /**
+     * Closes the innermost frame, charging its time
+     */
+    public void exit() {
+	List<Frame> stack = stacks.get();
+	Frame frame = stack.remove(stack.size() - 1);
+	long elapsed = System.nanoTime() - frame.start;
+	long self = elapsed - frame.children;
+	if (!stack.isEmpty()) {
+	    stack.get(stack.size() - 1).children += elapsed;
+	}
+	synchronized (this) {
+	    long[] total = collapsed.get(frame.path);
+	    if (total == null) {
+		total = new long[1];
+		collapsed.put(frame.path, total);
+	    }
+	    total[0] += self;
+	    if (frame.rule != null) {
+		long[] counters = counters(frame.rule);
+		counters[NODES]++;
+		counters[NANOS] += self;
+	    }
+	}
+    }
+
+    /**
+     * Counts a fact a rule generated
+     *
+     * @param rule The rule
+     * @param duplicate True if the fact was already known, false if it is new
+     */
+    public synchronized void generated(Rule rule, boolean duplicate) {
+	long[] counters = counters(rule);
+	counters[GENERATED]++;
+	if (duplicate) {
+	    counters[DUPLICATES]++;
+	}
+    }
+
+    private long[] counters(Rule rule) {
+	long[] counters = rules.get(rule);
+	if (counters == null) {
+	    counters = new long[4];
+	    rules.put(rule, counters);
+	}
+	return counters;
+    }
+
+    /**
+     * Abstracts a formula into the name of its frame
+     *
+     * @param s The formula
+     * @return Its shape
+     */
+    public static String shape(Statable s) {
+	StringBuilder sb = new StringBuilder();
+	shape(s, SHAPE_DEPTH, sb);
+	return sb.toString();
+    }
+
+    private static void shape(Statable s, int depth, StringBuilder sb) {
+	while (s.getOperator() == null && !s.isAtomic()) {
+	    s = s.getOperands()[0];
+	}
+	Operator op = s.getOperator();
+	if (op == null) {
+	    sb.append('_');
+	} else if (depth == 0) {
+	    sb.append('*');
+	} else if (op == Operator.NOT) {
+	    sb.append(op);
+	    shape(s.getOperands()[0], depth - 1, sb);
+	} else {
+	    sb.append('(');
+	    shape(s.getOperands()[0], depth - 1, sb);
+	    sb.append(op);
+	    shape(s.getOperands()[1], depth - 1, sb);
+	    sb.append(')');
+	}
+    }
+
+    /**
+     * Writes one line per stack, its frames separated by semicolons and
+     * followed by the nanoseconds spent in its innermost frame
+     *
+     * @param out Where to write
+     * @throws IOException The writer failed
+     */
+    public synchronized void writeCollapsed(Writer out) throws IOException {
+	for (Map.Entry<String, long[]> e : collapsed.entrySet()) {
+	    out.write(e.getKey() + " " + e.getValue()[0] + "\n");
+	}
+	out.flush();
+    }
+
+    /**
+     * @return a table with a row per rule: the nodes it was tried at, the
+     * time spent in it, the facts it generated and how many of those were
+     * already known
+     */
+    public synchronized String summary() {
+	StringBuilder sb = new StringBuilder(String.format(
+		"%-6s %10s %10s %10s %10s %7s%n", "Rule", "Nodes", "Time ms",
+		"Generated", "Duplicate", "Dup %"));
+	for (Map.Entry<Rule, long[]> e : rules.entrySet()) {
+	    long[] c = e.getValue();
+	    sb.append(String.format("%-6s %10d %10.2f %10d %10d %7.1f%n",
+		    e.getKey(), c[NODES], c[NANOS] / 1e6, c[GENERATED],
+		    c[DUPLICATES], (c[GENERATED] == 0) ? 0.0
+		    : 100.0 * c[DUPLICATES] / c[GENERATED]));
+	}
+	return sb.toString();
+    }
+
+    /**
+     * Forgets everything recorded so far
+     */
+    public synchronized void reset() {
+	collapsed.clear();
+	rules.clear();
+    }
+}
@@ -0,0 +1,62 @@
+package proofer;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Runs another Prover on only the most relevant premises. The search starts
+ * with the top k premises as ranked by a PremiseSelector and, whenever it
+ * fails, widens k by the growth factor until every premise is included.
+ *
+ * @author Ryan Kenney
+ */
+public class SelectingProver implements Prover {
+
+    private final Prover prover;
+    private final PremiseSelector selector = new PremiseSelector();
+    private int initialK = 8;
+    private int growth = 2;
+
+    /**
+     * @param prover The prover to run on the selected premises
+     */
+    public SelectingProver(Prover prover) {
+	this.prover = prover;
+    }
+
+    /**
+     * @return the selector used to rank premises
+     */
+    public PremiseSelector getSelector() {
+	return selector;
+    }
+
+    /**
+     * @param initialK The number of premises the first attempt gets
+     */
+    public void setInitialK(int initialK) {
+	this.initialK = Math.max(1, initialK);
+    }
+
+    /**
+     * @param growth The factor k is multiplied by after a failed attempt
+     */
+    public void setGrowth(int growth) {
+	this.growth = Math.max(2, growth);
+    }
+
+    @Override
+    public Proof search(List<Statable> premises, Statable conclusion)
+	    throws IOException {
+	int k = initialK;
+	while (true) {
+	    Proof proof = prover.search(
+		    selector.select(premises, conclusion, k), conclusion);
+	    if (proof != null || k >= premises.size()
+		    || Thread.currentThread().isInterrupted()) {
+		return proof;
+	    }
+	    k = (int) Math.min((long) k * growth, premises.size());
+	}
+    }
+}
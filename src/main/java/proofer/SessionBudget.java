@@ -0,0 +1,159 @@
+package proofer;
+
+/**
+ * Accounts for the memory held by one session's FactBase and keeps it within
+ * limits. Usage is counted in formula nodes, as Statement.size() counts them,
+ * and in estimated bytes covering the nodes, the fact's text, which the
+ * indexes keep as a key, and the index and justification entries.
+ *
+ * A fact is admitted only if it fits in what is left of both limits, so a
+ * wildcard application stops adding facts once the session is full instead
+ * of growing the heap that other sessions share. Lines that close or open a
+ * sub-proof are always charged, since the proof's structure depends on them,
+ * and so are facts restored from a journal.
+ *
+ * @author Ryan Kenney
+ */
+public class SessionBudget {
+
+    /**
+     * No limit
+     */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+    private static final int NODE_BYTES = 40;
+    private static final int ENTRY_BYTES = 160;
+    private final long maxNodes;
+    private final long maxBytes;
+    private long nodes;
+    private long bytes;
+    private long rejected;
+
+    /**
+     * Creates a budget without limits, which only accounts
+     */
+    public SessionBudget() {
+	this(UNLIMITED, UNLIMITED);
+    }
+
+    /**
+     * @param maxNodes The most formula nodes the session may hold
+     * @param maxBytes The most estimated bytes the session may hold
+     */
+    public SessionBudget(long maxNodes, long maxBytes) {
+	if (maxNodes <= 0 || maxBytes <= 0) {
+	    throw new IllegalArgumentException("Limits must be positive");
+	}
+	this.maxNodes = maxNodes;
+	this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Estimates the bytes a fact holds once it is in a FactBase
+     *
+     * @param s The fact
+     * @return The estimate
+     */
+    public static long estimateBytes(Statable s) {
+	return (long) Statement.size(s) * NODE_BYTES + ENTRY_BYTES
+		+ 2L * s.toString().length();
+    }
+
+    /**
+     * Charges a fact if it fits in the budget
+     *
+     * @param s The fact
+     * @return True if the fact was charged, false if it was rejected
+     */
+    public boolean admit(Statable s) {
+	int size = Statement.size(s);
+	long estimate = estimateBytes(s);
+	if (size > maxNodes - nodes || estimate > maxBytes - bytes) {
+	    rejected++;
+	    return false;
+	}
+	nodes += size;
+	bytes += estimate;
+	return true;
+    }
+
+    /**
+     * Charges a fact whether or not it fits in the budget
+     *
+     * @param s The fact
+     */
+    public void charge(Statable s) {
+	nodes += Statement.size(s);
+	bytes += estimateBytes(s);
+    }
+
+    /**
+     * Gives back what a fact was charged
+     *
+     * @param s The fact
+     */
+    public void release(Statable s) {
+	nodes -= Statement.size(s);
+	bytes -= estimateBytes(s);
+    }
+
+    /**
+     * @return True once either limit is reached, false otherwise
+     */
+    public boolean isExhausted() {
+	return nodes >= maxNodes || bytes >= maxBytes;
+    }
+
+    /**
+     * Forgets all usage, keeping the limits
+     */
+    public void reset() {
+	nodes = 0;
+	bytes = 0;
+	rejected = 0;
+    }
+
+    /**
+     * @return the formula nodes held
+     */
+    public long getNodes() {
+	return nodes;
+    }
+
+    /**
+     * @return the estimated bytes held
+     */
+    public long getBytes() {
+	return bytes;
+    }
+
+    /**
+     * @return the most formula nodes the session may hold
+     */
+    public long getMaxNodes() {
+	return maxNodes;
+    }
+
+    /**
+     * @return the most estimated bytes the session may hold
+     */
+    public long getMaxBytes() {
+	return maxBytes;
+    }
+
+    /**
+     * @return the number of facts rejected so far
+     */
+    public long getRejected() {
+	return rejected;
+    }
+
+    @Override
+    public String toString() {
+	return nodes + " nodes" + limit(maxNodes) + ", " + bytes + " bytes"
+		+ limit(maxBytes) + ", " + rejected + " facts rejected";
+    }
+
+    private static String limit(long max) {
+	return (max == UNLIMITED) ? "" : " of " + max;
+    }
+}
@@ -0,0 +1,477 @@
+package proofer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of a REPL session, so a crashed or killed
+ * session can be brought back.
+ *
+ * Every event is appended as a record of length, CRC32, type and payload.
+ * Statements are stored with StatableCodec and rule commands as their text,
+ * along with the statement entered for Addition, so replaying never prompts.
+ * Appends only reach the page cache; a committer thread forces them to disk
+ * in groups, waiting a short window after the first unforced append so one
+ * force covers every command entered meanwhile. An append therefore costs a
+ * write call rather than a disk flush, and a killed process loses nothing;
+ * only a machine crash can lose the last window.
+ *
+ * A snapshot holds the facts and justifications of a FactBase in binary, so
+ * recovery loads it without parsing anything and then replays only the
+ * journal written since. Taking a snapshot empties the journal. Both files
+ * carry an epoch that a snapshot bumps, so a journal left over from before
+ * the latest snapshot is recognized and ignored. A torn record at the end of
+ * the journal, left by a crash mid-append, is dropped.
+ *
+ * @author Ryan Kenney
+ */
+public class SessionJournal implements Closeable {
+
+    private static final int SNAPSHOT_MAGIC = 0x50524F53;
+    private static final int JOURNAL_MAGIC = 0x50524F4A;
+    private static final int HEADER = 8;
+    // Bits of the snapshot's mode byte
+    private static final int CANONICAL_FLAG = 1, FILTER_FLAG = 2;
+    private final File file;
+    private final File snapshotFile;
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private final Object lock = new Object();
+    private final Thread committer;
+    private long commitWindowNanos = TimeUnit.MILLISECONDS.toNanos(2);
+    private long written;
+    private long forced;
+    private long commits;
+    private int entries;
+    private int epoch = -1;
+    private IOException failure;
+    private volatile boolean closed;
+
+    /**
+     * The kinds of events a journal records
+     */
+    public enum Type {
+
+	PREMISE, CONCLUSION, RULE, RESET, CANONICAL, ASSUME, FILTER;
+    }
+
+    /**
+     * A journaled event
+     */
+    public static class Entry {
+
+	private final Type type;
+	private final Statable statement;
+	private final String command;
+
+	Entry(Type type, Statable statement, String command) {
+	    this.type = type;
+	    this.statement = statement;
+	    this.command = command;
+	}
+
+	public Type getType() {
+	    return type;
+	}
+
+	/**
+	 * @return the premise, the conclusion, the assumption, the statement
+	 * entered for Addition, or null
+	 */
+	public Statable getStatement() {
+	    return statement;
+	}
+
+	/**
+	 * @return the rule command as entered, or null for other events
+	 */
+	public String getCommand() {
+	    return command;
+	}
+    }
+
+    /**
+     * Opens a journal, creating it if needed. The snapshot lives next to it
+     * with the extension .snap.
+     *
+     * @param file The journal file
+     * @throws IOException The journal could not be opened
+     */
+    public SessionJournal(File file) throws IOException {
+	this.file = file;
+	this.snapshotFile = new File(file.getPath() + ".snap");
+	channel = new RandomAccessFile(file, "rw").getChannel();
+	committer = new Thread(new Runnable() {
+	    @Override
+	    public void run() {
+		commitLoop();
+	    }
+	}, "proofer-journal");
+	committer.setDaemon(true);
+	committer.start();
+    }
+
+    /**
+     * @param commitWindowMillis How long the committer gathers appends before
+     * forcing them to disk
+     */
+    public void setCommitWindow(long commitWindowMillis) {
+	commitWindowNanos = TimeUnit.MILLISECONDS.toNanos(commitWindowMillis);
+    }
+
+    /**
+     * @return the number of forces the committer has made
+     */
+    public long getCommits() {
+	return commits;
+    }
+
+    /**
+     * @return the number of entries appended since the last snapshot
+     */
+    public int getEntries() {
+	return entries;
+    }
+
+    /**
+     * Loads the snapshot into fb and reads the entries journaled since. This
+     * must be called before anything is appended, and the caller replays the
+     * entries before appending.
+     *
+     * @param fb The FactBase to restore, which should be empty
+     * @return The entries to replay, in order
+     * @throws IOException The snapshot or journal could not be read
+     */
+    public List<Entry> recover(FactBase fb) throws IOException {
+	int snapshotEpoch = snapshotFile.exists() ? loadSnapshot(fb) : 0;
+
+	List<Entry> ret = new ArrayList<>();
+	long size = channel.size();
+	ByteBuffer buf = ByteBuffer.allocate((int) size);
+	channel.read(buf, 0);
+	buf.flip();
+	if (size < HEADER || buf.getInt() != JOURNAL_MAGIC
+		|| buf.getInt() != snapshotEpoch) {
+	    // Missing, or already covered by the snapshot
+	    startEpoch(snapshotEpoch);
+	    return ret;
+	}
+	epoch = snapshotEpoch;
+	long good = HEADER;
+	while (buf.remaining() > HEADER) {
+	    int length = buf.getInt();
+	    int checksum = buf.getInt();
+	    if (length < 1 || length > buf.remaining()) {
+		break;
+	    }
+	    crc.reset();
+	    crc.update(buf.array(), buf.position(), length);
+	    if ((int) crc.getValue() != checksum) {
+		break;
+	    }
+	    ByteBuffer record = ByteBuffer.wrap(buf.array(), buf.position(), length);
+	    buf.position(buf.position() + length);
+	    try {
+		ret.add(readEntry(record));
+	    } catch (RuntimeException ex) {
+		break;
+	    }
+	    good = buf.position();
+	}
+
+	// Drop a torn tail so new records follow the last good one
+	channel.truncate(good);
+	channel.position(good);
+	synchronized (lock) {
+	    written = forced = good;
+	}
+	entries = ret.size();
+	return ret;
+    }
+
+    /**
+     * Waits until everything appended so far is on disk
+     *
+     * @throws IOException The committer failed to force the journal
+     */
+    public void sync() throws IOException {
+	synchronized (lock) {
+	    long target = written;
+	    while (forced < target && failure == null && !closed) {
+		try {
+		    lock.wait();
+		} catch (InterruptedException ex) {
+		    Thread.currentThread().interrupt();
+		    return;
+		}
+	    }
+	    if (failure != null) {
+		throw failure;
+	    }
+	}
+    }
+
+    /**
+     * Writes the state of fb to the snapshot and empties the journal. The
+     * snapshot is written to a temporary file and moved into place, so a
+     * crash leaves either the old snapshot and journal or the new ones.
+     *
+     * @param fb The FactBase to save
+     * @throws IOException The snapshot could not be written
+     */
+    public void snapshot(FactBase fb) throws IOException {
+	sync();
+	List<ProofStep> steps = fb.toProof().getSteps();
+	int size = 20;
+	for (ProofStep step : steps) {
+	    size += stepSize(step);
+	}
+	Statable conclusion = fb.getConclusion();
+	size += (conclusion == null) ? 0 : StatableCodec.encodedSize(conclusion);
+
+	ByteBuffer buf = ByteBuffer.allocate(size);
+	buf.putInt(SNAPSHOT_MAGIC);
+	buf.putInt(epoch + 1);
+	buf.put((byte) ((fb.isCanonicalEquality() ? CANONICAL_FLAG : 0)
+		| (fb.isRedundancyFilter() ? FILTER_FLAG : 0)));
+	buf.put((byte) ((conclusion == null) ? 0 : 1));
+	if (conclusion != null) {
+	    StatableCodec.encode(conclusion, buf);
+	}
+	buf.putInt(steps.size());
+	for (ProofStep step : steps) {
+	    writeStep(step, buf);
+	}
+	buf.flip();
+
+	File tmp = new File(snapshotFile.getPath() + ".tmp");
+	try (FileChannel out = new RandomAccessFile(tmp, "rw").getChannel()) {
+	    out.truncate(0);
+	    while (buf.hasRemaining()) {
+		out.write(buf);
+	    }
+	    out.force(true);
+	}
+	Files.move(tmp.toPath(), snapshotFile.toPath(),
+		StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+	startEpoch(epoch + 1);
+    }
+
+    /**
+     * Empties the journal and stamps it with a new epoch
+     */
+    private void startEpoch(int epoch) throws IOException {
+	synchronized (lock) {
+	    ByteBuffer header = ByteBuffer.allocate(HEADER);
+	    header.putInt(JOURNAL_MAGIC).putInt(epoch).flip();
+	    channel.truncate(0);
+	    channel.position(0);
+	    while (header.hasRemaining()) {
+		channel.write(header);
+	    }
+	    channel.force(true);
+	    written = forced = HEADER;
+	    entries = 0;
+	    this.epoch = epoch;
+	}
+    }
+
+    /**
+     * Forces what is left and stops the committer
+     *
+     * @throws IOException The journal could not be forced or closed
+     */
+    @Override
+    public void close() throws IOException {
+	try {
+	    sync();
+	} finally {
+	    closed = true;
+	    committer.interrupt();
+	    synchronized (lock) {
+		channel.close();
+	    }
+	}
+    }
+
+    /**
+     * @return the journal file
+     */
+    public File getFile() {
+	return file;
+    }
+
+    /**
+     * Appends an event. It reaches the disk with the next group commit.
+     *
+     * @param type The kind of event
+     * @param statement The premise, the conclusion, the assumption, the
+     * statement entered for Addition, or null
+     * @param command The rule command as entered, or null
+     * @throws IOException The entry could not be written
+     */
+    public void append(Type type, Statable statement, String command)
+	    throws IOException {
+	if (epoch < 0) {
+	    throw new IllegalStateException("Journal not recovered");
+	}
+	byte[] text = (command == null) ? new byte[0]
+		: command.getBytes(StandardCharsets.UTF_8);
+	int length = 1 + 1 + ((statement == null) ? 0
+		: StatableCodec.encodedSize(statement)) + 4 + text.length;
+	ByteBuffer buf = ByteBuffer.allocate(HEADER + length);
+	buf.position(HEADER);
+	buf.put((byte) type.ordinal());
+	buf.put((byte) ((statement == null) ? 0 : 1));
+	if (statement != null) {
+	    StatableCodec.encode(statement, buf);
+	}
+	buf.putInt(text.length);
+	buf.put(text);
+	crc.reset();
+	crc.update(buf.array(), HEADER, length);
+	buf.putInt(0, length);
+	buf.putInt(4, (int) crc.getValue());
+	buf.flip();
+
+	synchronized (lock) {
+	    if (failure != null) {
+		throw failure;
+	    }
+	    while (buf.hasRemaining()) {
+		channel.write(buf);
+	    }
+	    written += HEADER + length;
+	    entries++;
+	    lock.notifyAll();
+	}
+    }
+
+    private static Entry readEntry(ByteBuffer record) {
+	Type type = Type.values()[record.get()];
+	Statable statement = (record.get() != 0)
+		? StatableCodec.decode(record) : null;
+	int length = record.getInt();
+	String command = (length == 0) ? null : new String(record.array(),
+		record.position(), length, StandardCharsets.UTF_8);
+	return new Entry(type, statement, command);
+    }
+
+    /**
+     * Waits for unforced appends, gathers more for the commit window and
+     * forces them all at once
+     */
+    private void commitLoop() {
+	while (!closed) {
+	    try {
+		synchronized (lock) {
+		    while (written == forced && !closed) {
+			lock.wait();
+		    }
+		}
+		TimeUnit.NANOSECONDS.sleep(commitWindowNanos);
+		long target;
+		synchronized (lock) {
+		    target = written;
+		}
+		// Force outside the lock so appends never wait on the disk
+		channel.force(false);
+		synchronized (lock) {
+		    forced = Math.max(forced, target);
+		    commits++;
+		    lock.notifyAll();
+		}
+	    } catch (InterruptedException ex) {
+		return;
+	    } catch (IOException ex) {
+		synchronized (lock) {
+		    failure = ex;
+		    lock.notifyAll();
+		}
+		return;
+	    }
+	}
+    }
+
+    /**
+     * @return the epoch of the journal that follows the snapshot
+     */
+    private int loadSnapshot(FactBase fb) throws IOException {
+	ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(snapshotFile.toPath()));
+	try {
+	    if (buf.getInt() != SNAPSHOT_MAGIC) {
+		throw new IOException("Not a snapshot: " + snapshotFile);
+	    }
+	    int snapshotEpoch = buf.getInt();
+	    int flags = buf.get();
+	    fb.setCanonicalEquality((flags & CANONICAL_FLAG) != 0);
+	    if (buf.get() != 0) {
+		fb.setConclusion(StatableCodec.decode(buf));
+	    }
+	    int count = buf.getInt();
+	    for (int i = 0; i < count; i++) {
+		fb.restore(readStep(buf));
+	    }
+	    // Only affects facts added from now on
+	    fb.setRedundancyFilter((flags & FILTER_FLAG) != 0);
+	    return snapshotEpoch;
+	} catch (RuntimeException ex) {
+	    throw new IOException("Corrupt snapshot: " + snapshotFile, ex);
+	}
+    }
+
+    private static int stepSize(ProofStep step) {
+	int[] coordinates = step.getCoordinates();
+	return StatableCodec.encodedSize(step.getFact()) + 1 + 4
+		+ 4 * step.getReferences().length + 4
+		+ ((coordinates == null) ? 0 : 4 * coordinates.length);
+    }
+
+    private static void writeStep(ProofStep step, ByteBuffer buf) {
+	StatableCodec.encode(step.getFact(), buf);
+	buf.put((byte) (step.isPremise() ? -1
+		: step.isAssumption() ? -2 : step.getRule().ordinal()));
+	buf.putInt(step.getReferences().length);
+	for (int ref : step.getReferences()) {
+	    buf.putInt(ref);
+	}
+	int[] coordinates = step.getCoordinates();
+	buf.putInt((coordinates == null) ? -1 : coordinates.length);
+	if (coordinates != null) {
+	    for (int c : coordinates) {
+		buf.putInt(c);
+	    }
+	}
+    }
+
+    private static ProofStep readStep(ByteBuffer buf) {
+	Statable fact = StatableCodec.decode(buf);
+	int rule = buf.get();
+	int[] references = new int[buf.getInt()];
+	for (int i = 0; i < references.length; i++) {
+	    references[i] = buf.getInt();
+	}
+	int length = buf.getInt();
+	int[] coordinates = (length < 0) ? null : new int[length];
+	for (int i = 0; i < length; i++) {
+	    coordinates[i] = buf.getInt();
+	}
+	if (rule == -2) {
+	    return ProofStep.assumption(fact);
+	}
+	return (rule < 0) ? new ProofStep(fact)
+		: new ProofStep(fact, Rule.values()[rule], references, coordinates);
+    }
+}
@@ -0,0 +1,225 @@
+package proofer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The open set of a best-first proof search. Entries are kept in a heap until
+ * their estimated footprint passes the budget, at which point the heap is
+ * written out as a sorted run to a memory-mapped file. poll() merges the heap
+ * with the heads of every run, so entries still come out in priority order.
+ *
+ * @author Ryan Kenney
+ */
+class SpillingFrontier implements Closeable {
+
+    /**
+     * Header of a spilled entry: size, sequence number, rule and two parents
+     */
+    private static final int HEADER_BYTES = 4 + 8 + 1 + 4 + 4;
+    private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+	@Override
+	public int compare(Entry a, Entry b) {
+	    if (a.size != b.size) {
+		return Integer.compare(a.size, b.size);
+	    }
+	    return Long.compare(a.seq, b.seq);
+	}
+    };
+    private final PriorityQueue<Entry> heap = new PriorityQueue<>(64, ORDER);
+    private final List<Run> runs = new ArrayList<>();
+    private final long budget;
+    private final File directory;
+    private long heapBytes = 0;
+    private long size = 0;
+    private int spills = 0;
+
+    /**
+     * A candidate fact waiting to be processed
+     */
+    static class Entry {
+
+	final Statable fact;
+	final Rule rule;
+	final int parent0, parent1;
+	final int size;
+	final long seq;
+
+	Entry(Statable fact, Rule rule, int parent0, int parent1, long seq) {
+	    this.fact = fact;
+	    this.rule = rule;
+	    this.parent0 = parent0;
+	    this.parent1 = parent1;
+	    this.size = Statement.size(fact);
+	    this.seq = seq;
+	}
+
+	/**
+	 * @return a rough estimate of the heap bytes held by the entry
+	 */
+	long footprint() {
+	    return 48 + 40L * size;
+	}
+    }
+
+    /**
+     * A sorted run of spilled entries
+     */
+    private static class Run {
+
+	final File file;
+	final RandomAccessFile raf;
+	final ByteBuffer buf;
+	Entry head;
+
+	Run(File file, RandomAccessFile raf, ByteBuffer buf) {
+	    this.file = file;
+	    this.raf = raf;
+	    this.buf = buf;
+	    advance();
+	}
+
+	void advance() {
+	    if (!buf.hasRemaining()) {
+		head = null;
+		return;
+	    }
+	    buf.getInt(); // size, recomputed from the fact
+	    long seq = buf.getLong();
+	    int rule = buf.get();
+	    int parent0 = buf.getInt();
+	    int parent1 = buf.getInt();
+	    head = new Entry(StatableCodec.decode(buf),
+		    (rule < 0) ? null : Rule.values()[rule], parent0, parent1, seq);
+	}
+    }
+
+    /**
+     * @param budget The heap bytes the frontier may hold before spilling
+     * @param directory Where to create run files, or null for the default
+     * temporary directory
+     */
+    SpillingFrontier(long budget, File directory) {
+	this.budget = budget;
+	this.directory = directory;
+    }
+
+    /**
+     * Adds e to the frontier, spilling the heap if it grows past the budget
+     *
+     * @param e The entry to add
+     * @throws IOException A run could not be written
+     */
+    void add(Entry e) throws IOException {
+	heap.add(e);
+	heapBytes += e.footprint();
+	size++;
+	if (heapBytes > budget) {
+	    spill();
+	}
+    }
+
+    /**
+     * Removes the entry with the smallest fact, oldest first on ties
+     *
+     * @return The entry, or null if the frontier is empty
+     */
+    Entry poll() {
+	Entry best = heap.peek();
+	Run from = null;
+	for (Run run : runs) {
+	    if (run.head != null && (best == null || ORDER.compare(run.head, best) < 0)) {
+		best = run.head;
+		from = run;
+	    }
+	}
+	if (best == null) {
+	    return null;
+	}
+	if (from == null) {
+	    heap.poll();
+	    heapBytes -= best.footprint();
+	} else {
+	    from.advance();
+	}
+	size--;
+	return best;
+    }
+
+    /**
+     * @return True if no entries are left, false otherwise
+     */
+    boolean isEmpty() {
+	return size == 0;
+    }
+
+    /**
+     * @return the number of entries, in memory and spilled
+     */
+    long size() {
+	return size;
+    }
+
+    /**
+     * @return the number of runs written so far
+     */
+    int getSpills() {
+	return spills;
+    }
+
+    /**
+     * Writes the heap out as a sorted run
+     *
+     * @throws IOException The run could not be written
+     */
+    private void spill() throws IOException {
+	List<Entry> sorted = new ArrayList<>(heap.size());
+	long bytes = 0;
+	while (!heap.isEmpty()) {
+	    Entry e = heap.poll();
+	    sorted.add(e);
+	    bytes += HEADER_BYTES + StatableCodec.encodedSize(e.fact);
+	}
+	heapBytes = 0;
+
+	File file = File.createTempFile("proofer-frontier", ".run", directory);
+	file.deleteOnExit();
+	RandomAccessFile raf = new RandomAccessFile(file, "rw");
+	ByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+	for (Entry e : sorted) {
+	    buf.putInt(e.size);
+	    buf.putLong(e.seq);
+	    buf.put((byte) ((e.rule == null) ? -1 : e.rule.ordinal()));
+	    buf.putInt(e.parent0);
+	    buf.putInt(e.parent1);
+	    StatableCodec.encode(e.fact, buf);
+	}
+	buf.flip();
+	runs.add(new Run(file, raf, buf));
+	spills++;
+    }
+
+    /**
+     * Releases and deletes every run file
+     *
+     * @throws IOException A run file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+	for (Run run : runs) {
+	    run.raf.close();
+	    run.file.delete();
+	}
+	runs.clear();
+	heap.clear();
+	size = 0;
+    }
+}
@@ -1,10 +1,22 @@
 package proofer;
 
 /**
- * Common interface between Statement and BaseFact
+ * Common interface between Statement and BaseFact, and the first-order
+ * Predicate and Quantified formulas
  * @author Ryan Kenney
  */
 public interface Statable {
     public Operator getOperator();
     public Statable[] getOperands();
+
+    /**
+     * Atoms have no operator and are their own only operand. Quantified
+     * formulas count as atoms too, since the connectives cannot see into
+     * them.
+     *
+     * @return True if this is an atom as far as the connectives go
+     */
+    public default boolean isAtomic() {
+        return false;
+    }
 }
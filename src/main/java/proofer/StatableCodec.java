@@ -0,0 +1,105 @@
+package proofer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary encoding of Statables, one byte per node in prefix order. Decoding
+ * rebuilds the structure directly, so encoded facts never go back through the
+ * parser. Predicates and quantified formulas are the exception: they are
+ * stored as their text, behind a tag and a length, and parsed back.
+ *
+ * @author Ryan Kenney
+ */
+public final class StatableCodec {
+
+    private static final int ATOM_TAG = 0x20;
+    private static final int FIRST_ORDER_TAG = 0x40;
+
+    private StatableCodec() {
+    }
+
+    /**
+     * @param s The Statable to measure
+     * @return The number of bytes encode() writes for s
+     */
+    public static int encodedSize(Statable s) {
+	Operator op = s.getOperator();
+	if (op == null) {
+	    if (s instanceof BaseFact) {
+		return 1;
+	    } else if (s.isAtomic()) {
+		return 3 + s.toString().length();
+	    }
+	    return encodedSize(s.getOperands()[0]);
+	}
+	return 1 + encodedSize(s.getOperands()[0])
+		+ ((op == Operator.NOT) ? 0 : encodedSize(s.getOperands()[1]));
+    }
+
+    /**
+     * Writes s to buf
+     *
+     * @param s The Statable to encode
+     * @param buf The buffer to write to, at its current position
+     */
+    public static void encode(Statable s, ByteBuffer buf) {
+	Operator op = s.getOperator();
+	if (op == null) {
+	    if (s instanceof BaseFact) {
+		buf.put((byte) (ATOM_TAG | ((BaseFact) s).ordinal()));
+	    } else if (s.isAtomic()) {
+		String text = s.toString();
+		buf.put((byte) FIRST_ORDER_TAG);
+		buf.putShort((short) text.length());
+		for (int i = 0; i < text.length(); i++) {
+		    buf.put((byte) text.charAt(i));
+		}
+	    } else {
+		encode(s.getOperands()[0], buf);
+	    }
+	    return;
+	}
+	buf.put((byte) op.ordinal());
+	encode(s.getOperands()[0], buf);
+	if (op != Operator.NOT) {
+	    encode(s.getOperands()[1], buf);
+	}
+    }
+
+    /**
+     * Reads a Statable from buf
+     *
+     * @param buf The buffer to read from, at its current position
+     * @return The decoded Statable
+     * @throws IllegalArgumentException The buffer does not hold an encoded
+     * Statable at its position
+     */
+    public static Statable decode(ByteBuffer buf) {
+	int tag = buf.get();
+	if (tag == FIRST_ORDER_TAG) {
+	    char[] text = new char[buf.getShort()];
+	    for (int i = 0; i < text.length; i++) {
+		text[i] = (char) buf.get();
+	    }
+	    try {
+		return FirstOrderParser.parse(new String(text));
+	    } catch (StatementParsingException ex) {
+		throw new IllegalArgumentException(ex.getMessage());
+	    }
+	}
+	if ((tag & ATOM_TAG) != 0) {
+	    int atom = tag & ~ATOM_TAG;
+	    if (atom >= BaseFact.values().length) {
+		throw new IllegalArgumentException("Unknown BaseFact " + atom);
+	    }
+	    return BaseFact.values()[atom];
+	}
+	if (tag < 0 || tag >= Operator.values().length) {
+	    throw new IllegalArgumentException("Unknown operator " + tag);
+	}
+	Operator op = Operator.values()[tag];
+	Statable left = decode(buf);
+	Statable right = (op == Operator.NOT) ? null : decode(buf);
+	return Statement.compose(op, left, right);
+    }
+}
@@ -109,6 +109,39 @@ public class Statement implements Statable {
         return neg;
     }
 
+    /**
+     * Builds a Statable directly from its parts, without going through the
+     * parser.
+     *
+     * @param op The main operator
+     * @param left The first operand
+     * @param right The second operand, or null if op is NOT
+     * @return The composed Statable
+     */
+    public static Statable compose(Operator op, Statable left, Statable right) {
+        Statement statement = new Statement();
+        statement.op = op;
+        statement.operands[0] = left;
+        statement.operands[1] = (op == Operator.NOT) ? null : right;
+        return statement;
+    }
+
+    /**
+     * Counts the operators and atoms making up s
+     *
+     * @param s The Statable to measure
+     * @return The number of nodes in s
+     */
+    public static int size(Statable s) {
+        if (s.getOperator() == null) {
+            return s.isAtomic() ? 1 : size(s.getOperands()[0]);
+        } else if (s.getOperator() == Operator.NOT) {
+            return 1 + size(s.getOperands()[0]);
+        } else {
+            return 1 + size(s.getOperands()[0]) + size(s.getOperands()[1]);
+        }
+    }
+
     /**
      * Check if c is a BaseFact
      *
@@ -163,7 +196,7 @@ public class Statement implements Statable {
     @Override
     public String toString() {
         if (op == null) {
-            return "(" + ((BaseFact) operands[0]).toString() + ")";
+            return "(" + operands[0].toString() + ")";
         } else if (operands[1] == null) {
             return op.toString() + operands[0].toString();
         } else {
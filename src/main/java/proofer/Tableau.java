@@ -0,0 +1,355 @@
+package proofer;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An analytic tableau over signed formulas. A formula signed true must hold
+ * on the branch and one signed false must not, so negations only flip a sign
+ * and no formula is ever rebuilt.
+ *
+ * Formulas waiting on a branch are kept in immutable linked lists. A split
+ * gives each child its own short list of new formulas and both children share
+ * the rest, so branching copies nothing. The literals of the current branch
+ * live in a table indexed by BaseFact with an undo trail, and a branch closes
+ * the moment a literal meets its opposite. Non-branching formulas are always
+ * expanded first, and among the branching ones a formula with a branch that
+ * closes at once is split first, since it does not really branch. A
+ * branching formula with a branch already satisfied is dropped.
+ *
+ * Validity of an argument is checked by refutation: the premises signed true
+ * and the conclusion signed false close every branch exactly when the
+ * argument is valid, and the literals of an open branch are a counter-model.
+ *
+ * @author Ryan Kenney
+ */
+public class Tableau {
+
+    private static final byte TRUE = 1, FALSE = -1;
+    private static final int CLOSES = -1, UNDECIDED = 0, SATISFIED = 1,
+	    COMPOUND = 2;
+    private final byte[] values = new byte[BaseFact.values().length];
+    private final BaseFact[] trail = new BaseFact[values.length];
+    private final Set<BaseFact> atoms = EnumSet.noneOf(BaseFact.class);
+    private int trailSize;
+    private Node roots;
+    private Boolean closed;
+    private Map<BaseFact, Boolean> counterModel;
+    private long expansions;
+    private long closedBranches;
+
+    /**
+     * A signed formula waiting on a branch, and the ones after it
+     */
+    private static final class Node {
+
+	final Statable formula;
+	final boolean sign;
+	final Node next;
+
+	Node(Statable formula, boolean sign, Node next) {
+	    this.formula = formula;
+	    this.sign = sign;
+	    this.next = next;
+	}
+    }
+
+    /**
+     * Checks an argument by refutation
+     *
+     * @param premises The premises
+     * @param conclusion The conclusion
+     * @return True if the argument is valid, false otherwise
+     * @throws InterruptedException The thread was interrupted while expanding
+     */
+    public static boolean isValid(List<Statable> premises, Statable conclusion)
+	    throws InterruptedException {
+	return findCounterModel(premises, conclusion) == null;
+    }
+
+    /**
+     * Looks for an assignment under which every premise holds and the
+     * conclusion does not
+     *
+     * @param premises The premises
+     * @param conclusion The conclusion
+     * @return The assignment, or null if the argument is valid
+     * @throws InterruptedException The thread was interrupted while expanding
+     */
+    public static Map<BaseFact, Boolean> findCounterModel(List<Statable> premises,
+	    Statable conclusion) throws InterruptedException {
+	Tableau tableau = new Tableau();
+	for (Statable premise : premises) {
+	    tableau.add(premise, true);
+	}
+	tableau.add(conclusion, false);
+	return tableau.isClosed() ? null : tableau.getCounterModel();
+    }
+
+    /**
+     * Puts a formula at the root of the tableau
+     *
+     * @param s The formula
+     * @param sign True if s must hold, false if it must not
+     */
+    public void add(Statable s, boolean sign) {
+	collectAtoms(s);
+	roots = new Node(s, sign, roots);
+	closed = null;
+    }
+
+    /**
+     * Expands the tableau, unless it already was since the last add()
+     *
+     * @return True if every branch closes, false if one stays open
+     * @throws InterruptedException The thread was interrupted while expanding
+     */
+    public boolean isClosed() throws InterruptedException {
+	if (closed == null) {
+	    counterModel = null;
+	    closed = !open(roots, null);
+	}
+	return closed;
+    }
+
+    /**
+     * @return the literals of the open branch found by isClosed(), with
+     * every other atom of the formulas false, or null if the tableau closes
+     * or was not expanded
+     */
+    public Map<BaseFact, Boolean> getCounterModel() {
+	return counterModel;
+    }
+
+    /**
+     * @return the number of formulas expanded so far
+     */
+    public long getExpansions() {
+	return expansions;
+    }
+
+    /**
+     * @return the number of branches closed so far
+     */
+    public long getClosedBranches() {
+	return closedBranches;
+    }
+
+    /**
+     * Expands a branch depth first
+     *
+     * @param alphas Formulas still to expand that do not branch, or may not
+     * @param betas Formulas known to branch
+     * @return True if the branch or one below it stays open, false if all
+     * close
+     */
+    private boolean open(Node alphas, Node betas) throws InterruptedException {
+	int mark = trailSize;
+	try {
+	    while (true) {
+		if ((++expansions & 0x3FF) == 0
+			&& Thread.currentThread().isInterrupted()) {
+		    throw new InterruptedException();
+		}
+		if (alphas != null) {
+		    Statable f = unwrap(alphas.formula);
+		    boolean sign = alphas.sign;
+		    alphas = alphas.next;
+		    Operator op = f.getOperator();
+		    if (op == null) {
+			if (!assign((BaseFact) f, sign)) {
+			    closedBranches++;
+			    return false;
+			}
+		    } else if (op == Operator.NOT) {
+			alphas = new Node(f.getOperands()[0], !sign, alphas);
+		    } else if (isAlpha(op, sign)) {
+			// Both operands go on the branch, the antecedent of a
+			// false conditional signed true
+			Statable[] operands = f.getOperands();
+			alphas = new Node(operands[1], sign, alphas);
+			alphas = new Node(operands[0], sign || op == Operator.COND,
+				alphas);
+		    } else {
+			betas = new Node(f, sign, betas);
+		    }
+		    continue;
+		}
+
+		if (betas == null) {
+		    recordModel();
+		    return true;
+		}
+		Node chosen = null;
+		int best = -1;
+		for (Node n = betas; n != null; n = n.next) {
+		    int score = score(n);
+		    if (score > best) {
+			best = score;
+			chosen = n;
+		    }
+		}
+		betas = without(betas, chosen);
+		if (best == Integer.MAX_VALUE) {
+		    // A branch is already satisfied, so splitting gains nothing
+		    continue;
+		}
+		Node[] children = split(chosen);
+		for (Node child : children) {
+		    if (open(child, betas)) {
+			return true;
+		    }
+		}
+		return false;
+	    }
+	} finally {
+	    undo(mark);
+	}
+    }
+
+    /**
+     * @return True for T AND, F OR and F COND, which do not branch
+     */
+    private static boolean isAlpha(Operator op, boolean sign) {
+	switch (op) {
+	    case AND:
+		return sign;
+	    case OR:
+	    case COND:
+		return !sign;
+	    default:
+		return false;
+	}
+    }
+
+    /**
+     * The two branches of a branching formula, as lists of the formulas
+     * each one adds
+     */
+    private static Node[] split(Node n) {
+	Statable[] operands = unwrap(n.formula).getOperands();
+	Statable a = operands[0], b = operands[1];
+	switch (unwrap(n.formula).getOperator()) {
+	    case AND:
+		// F AND
+		return new Node[]{new Node(a, false, null), new Node(b, false, null)};
+	    case OR:
+		// T OR
+		return new Node[]{new Node(a, true, null), new Node(b, true, null)};
+	    case COND:
+		// T COND
+		return new Node[]{new Node(a, false, null), new Node(b, true, null)};
+	    default:
+		// T BICOND agrees, F BICOND disagrees
+		return new Node[]{new Node(a, true, new Node(b, n.sign, null)),
+		    new Node(a, false, new Node(b, !n.sign, null))};
+	}
+    }
+
+    /**
+     * Rates a branching formula against the literals of the branch
+     *
+     * @return Integer.MAX_VALUE if a branch is already satisfied, more for a
+     * branch that closes at once, then more for branches that are literals
+     */
+    private int score(Node n) {
+	Node[] children = split(n);
+	int score = 0;
+	for (Node child : children) {
+	    int status = status(child.formula, child.sign);
+	    if (status == SATISFIED && child.next == null) {
+		return Integer.MAX_VALUE;
+	    } else if (status == CLOSES) {
+		score += 4;
+	    } else if (status != COMPOUND) {
+		score += 1;
+	    }
+	}
+	return score;
+    }
+
+    /**
+     * @return how a signed formula stands against the literals of the
+     * branch: CLOSES, SATISFIED, UNDECIDED or COMPOUND if it is no literal
+     */
+    private int status(Statable s, boolean sign) {
+	s = unwrap(s);
+	while (s.getOperator() == Operator.NOT) {
+	    s = unwrap(s.getOperands()[0]);
+	    sign = !sign;
+	}
+	if (s.getOperator() != null) {
+	    return COMPOUND;
+	}
+	byte value = values[((BaseFact) s).ordinal()];
+	if (value == 0) {
+	    return UNDECIDED;
+	}
+	return ((value == TRUE) == sign) ? SATISFIED : CLOSES;
+    }
+
+    /**
+     * @return list without target, sharing the nodes after it
+     */
+    private static Node without(Node list, Node target) {
+	if (list == target) {
+	    return list.next;
+	}
+	return new Node(list.formula, list.sign, without(list.next, target));
+    }
+
+    /**
+     * Puts a literal on the branch
+     *
+     * @return False if its opposite is already there, true otherwise
+     */
+    private boolean assign(BaseFact atom, boolean sign) {
+	byte value = sign ? TRUE : FALSE;
+	byte present = values[atom.ordinal()];
+	if (present == 0) {
+	    values[atom.ordinal()] = value;
+	    trail[trailSize++] = atom;
+	    return true;
+	}
+	return present == value;
+    }
+
+    private void undo(int mark) {
+	while (trailSize > mark) {
+	    values[trail[--trailSize].ordinal()] = 0;
+	}
+    }
+
+    private void recordModel() {
+	counterModel = new EnumMap<>(BaseFact.class);
+	for (BaseFact atom : atoms) {
+	    counterModel.put(atom, values[atom.ordinal()] == TRUE);
+	}
+    }
+
+    private void collectAtoms(Statable s) {
+	if (s instanceof BaseFact) {
+	    atoms.add((BaseFact) s);
+	    return;
+	}
+	for (Statable operand : s.getOperands()) {
+	    if (operand != null) {
+		collectAtoms(operand);
+	    }
+	}
+    }
+
+    /**
+     * Skips the operator-less Statements the parser wraps around
+     * sub-formulas
+     */
+    private static Statable unwrap(Statable s) {
+	while (s.getOperator() == null && !s.isAtomic()) {
+	    s = s.getOperands()[0];
+	}
+	return s;
+    }
+}
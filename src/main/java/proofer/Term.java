@@ -0,0 +1,71 @@
+package proofer;
+
+/**
+ * A term of a first-order formula: an individual constant, a to o, or an
+ * individual variable, w to z. Terms are interned, so there is only ever one
+ * instance per letter and they may be compared with ==.
+ *
+ * @author Ryan Kenney
+ */
+public final class Term {
+
+    private static final Term[] TERMS = new Term[26];
+    private final char name;
+
+    static {
+	for (char c = 'a'; c <= 'z'; c++) {
+	    if (isConstant(c) || isVariable(c)) {
+		TERMS[c - 'a'] = new Term(c);
+	    }
+	}
+    }
+
+    private Term(char name) {
+	this.name = name;
+    }
+
+    /**
+     * Looks up the term written as c
+     *
+     * @param c The letter
+     * @return The term, or null if c is neither a constant nor a variable
+     */
+    public static Term of(char c) {
+	return (c >= 'a' && c <= 'z') ? TERMS[c - 'a'] : null;
+    }
+
+    /**
+     * @param c The letter to check
+     * @return True if c names an individual constant, false otherwise
+     */
+    public static boolean isConstant(char c) {
+	return c >= 'a' && c <= 'o';
+    }
+
+    /**
+     * @param c The letter to check
+     * @return True if c names an individual variable, false otherwise
+     */
+    public static boolean isVariable(char c) {
+	return c >= 'w' && c <= 'z';
+    }
+
+    /**
+     * @return the letter naming the term
+     */
+    public char getName() {
+	return name;
+    }
+
+    /**
+     * @return True if the term is a variable, false if it is a constant
+     */
+    public boolean isVariable() {
+	return isVariable(name);
+    }
+
+    @Override
+    public String toString() {
+	return String.valueOf(name);
+    }
+}
@@ -0,0 +1,249 @@
+package proofer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A path index over the atomic predicates of the facts. Every atom is filed
+ * under its predicate and arity, and under each (position, term) pair it
+ * has, so the atoms a pattern can unify with are found by looking up the
+ * positions the pattern fixes and keeping the shortest list, instead of
+ * trying the pattern against every atom. Only the surviving candidates are
+ * unified.
+ *
+ * Atoms under a quantifier that mention its variable are not filed, as that
+ * variable is no term; their constants are still recorded, since a constant
+ * anywhere in the proof is no longer fresh for Existential Instantiation.
+ * Atoms are counted per formula filing them and unfiled with the last one,
+ * ie when a sub-proof closes. Constants are never forgotten, as the lines of
+ * a closed sub-proof are still part of the proof.
+ *
+ * @author Ryan Kenney
+ */
+public class TermIndex {
+
+    private final List<Predicate> atoms = new ArrayList<>();
+    private final List<Integer> counts = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Map<String, List<Integer>> postings = new HashMap<>();
+    private final Set<Term> constants = new LinkedHashSet<>();
+
+    /**
+     * Files the atoms of a formula
+     *
+     * @param s The formula
+     */
+    public void add(Statable s) {
+	visit(s, Collections.<Term>emptySet(), true);
+    }
+
+    /**
+     * Unfiles the atoms of a formula added before, dropping those no other
+     * formula files
+     *
+     * @param s The formula
+     */
+    public void remove(Statable s) {
+	visit(s, Collections.<Term>emptySet(), false);
+    }
+
+    private void visit(Statable s, Set<Term> bound, boolean adding) {
+	if (s instanceof Predicate) {
+	    Predicate p = (Predicate) s;
+	    boolean closed = true;
+	    for (int i = 0; i < p.getArity(); i++) {
+		Term t = p.getArgument(i);
+		if (!t.isVariable()) {
+		    constants.add(t);
+		} else if (bound.contains(t)) {
+		    closed = false;
+		}
+	    }
+	    if (closed && adding) {
+		file(p);
+	    } else if (closed) {
+		unfile(p);
+	    }
+	} else if (s instanceof Quantified) {
+	    Quantified q = (Quantified) s;
+	    Set<Term> inner = new LinkedHashSet<>(bound);
+	    inner.add(q.getVariable());
+	    visit(q.getBody(), inner, adding);
+	} else if (!s.isAtomic()) {
+	    visit(s.getOperands()[0], bound, adding);
+	    if (s.getOperator() != null && s.getOperator() != Operator.NOT) {
+		visit(s.getOperands()[1], bound, adding);
+	    }
+	}
+    }
+
+    private void file(Predicate p) {
+	String text = p.toString();
+	Integer present = ids.get(text);
+	if (present != null) {
+	    counts.set(present, counts.get(present) + 1);
+	    return;
+	}
+	int id = atoms.size();
+	atoms.add(p);
+	counts.add(1);
+	ids.put(text, id);
+	post(symbol(p), id);
+	for (int i = 0; i < p.getArity(); i++) {
+	    post(path(p, i, p.getArgument(i)), id);
+	}
+    }
+
+    private void unfile(Predicate p) {
+	Integer id = ids.get(p.toString());
+	if (id == null) {
+	    return;
+	}
+	int count = counts.get(id) - 1;
+	counts.set(id, count);
+	if (count > 0) {
+	    return;
+	}
+	ids.remove(p.toString());
+	atoms.set(id, null);
+	unpost(symbol(p), id);
+	for (int i = 0; i < p.getArity(); i++) {
+	    unpost(path(p, i, p.getArgument(i)), id);
+	}
+    }
+
+    private void post(String key, int id) {
+	List<Integer> list = postings.get(key);
+	if (list == null) {
+	    list = new ArrayList<>();
+	    postings.put(key, list);
+	}
+	list.add(id);
+    }
+
+    private void unpost(String key, Integer id) {
+	List<Integer> list = postings.get(key);
+	list.remove(id);
+	if (list.isEmpty()) {
+	    postings.remove(key);
+	}
+    }
+
+    /**
+     * Finds the atoms a pattern may unify with
+     *
+     * @param pattern The pattern
+     * @param open The terms of the pattern that may stand for any term
+     * @return The atoms with the pattern's predicate and arity that agree with
+     * it on the shortest posting list of its fixed positions
+     */
+    public List<Predicate> candidates(Predicate pattern, Set<Term> open) {
+	List<Integer> shortest = postings.get(symbol(pattern));
+	for (int i = 0; i < pattern.getArity() && shortest != null; i++) {
+	    Term t = pattern.getArgument(i);
+	    if (open.contains(t)) {
+		continue;
+	    }
+	    List<Integer> list = postings.get(path(pattern, i, t));
+	    if (list == null || list.size() < shortest.size()) {
+		shortest = list;
+	    }
+	}
+	if (shortest == null) {
+	    return Collections.emptyList();
+	}
+	List<Predicate> ret = new ArrayList<>(shortest.size());
+	for (int id : shortest) {
+	    ret.add(atoms.get(id));
+	}
+	return ret;
+    }
+
+    /**
+     * Unifies a pattern with an atom of the facts. The atom's terms are
+     * rigid, so this is one-sided matching.
+     *
+     * @param pattern The pattern
+     * @param open The terms of the pattern that may stand for any term
+     * @param atom The atom
+     * @return The terms the open terms stand for, or null if the two do not
+     * unify
+     */
+    public static Map<Term, Term> unify(Predicate pattern, Set<Term> open,
+	    Predicate atom) {
+	if (pattern.getName() != atom.getName()
+		|| pattern.getArity() != atom.getArity()) {
+	    return null;
+	}
+	Map<Term, Term> binding = new HashMap<>();
+	for (int i = 0; i < pattern.getArity(); i++) {
+	    Term t = pattern.getArgument(i);
+	    Term a = atom.getArgument(i);
+	    if (open.contains(t)) {
+		Term present = binding.put(t, a);
+		if (present != null && present != a) {
+		    return null;
+		}
+	    } else if (t != a) {
+		return null;
+	    }
+	}
+	return binding;
+    }
+
+    /**
+     * Finds every way a pattern unifies with an atom of the facts
+     *
+     * @param pattern The pattern
+     * @param open The terms of the pattern that may stand for any term
+     * @return One binding per atom the pattern unifies with
+     */
+    public List<Map<Term, Term>> match(Predicate pattern, Set<Term> open) {
+	List<Map<Term, Term>> ret = new ArrayList<>();
+	for (Predicate atom : candidates(pattern, open)) {
+	    Map<Term, Term> binding = unify(pattern, open, atom);
+	    if (binding != null) {
+		ret.add(binding);
+	    }
+	}
+	return ret;
+    }
+
+    /**
+     * @return every constant seen in the facts so far
+     */
+    public Set<Term> getConstants() {
+	return Collections.unmodifiableSet(constants);
+    }
+
+    /**
+     * @return the number of atoms filed
+     */
+    public int size() {
+	return ids.size();
+    }
+
+    /**
+     * Empties the index
+     */
+    public void clear() {
+	atoms.clear();
+	counts.clear();
+	ids.clear();
+	postings.clear();
+	constants.clear();
+    }
+
+    private static String symbol(Predicate p) {
+	return p.getName() + "/" + p.getArity();
+    }
+
+    private static String path(Predicate p, int position, Term t) {
+	return p.getName() + "/" + p.getArity() + "/" + position + "/" + t;
+    }
+}
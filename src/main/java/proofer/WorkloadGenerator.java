@@ -0,0 +1,562 @@
+package proofer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates reproducible random arguments for load tests. The same seed and
+ * settings always give the same workload.
+ *
+ * Valid arguments are built forward: starting from a random premise, rules
+ * are applied to facts already present, adding whatever premises a rule
+ * needs to apply, and the last derived fact becomes the conclusion. Each one
+ * therefore comes with a proof. Invalid arguments are random premises and a
+ * random conclusion that the SAT solver finds a counter-model for. Every
+ * label is confirmed by the SAT solver and every proof by the ProofVerifier,
+ * and formulas that Statement.parseString() would read back differently
+ * from how they print are redrawn.
+ *
+ * Arguments are written one block each, separated by blank lines:
+ *
+ * <pre>
+ * # valid
+ * (p -> q)
+ * p
+ * Therefore q
+ * </pre>
+ *
+ * @author Ryan Kenney
+ */
+public class WorkloadGenerator {
+
+    private static final String VALID = "# valid";
+    private static final String INVALID = "# invalid";
+    private static final String THEREFORE = "Therefore ";
+    private static final Operator[] BINARY = {Operator.AND, Operator.OR,
+	Operator.COND, Operator.BICOND};
+    private static final int MAX_ATTEMPTS = 1000;
+    private final Random random;
+    private int variables = BaseFact.values().length;
+    private int depth = 2;
+    private int premises = 4;
+    private int steps = 3;
+    private double negation = 0.2;
+    private double invalidFraction = 0.5;
+    private final double[] weights = {1, 1, 1, 1};
+
+    /**
+     * A generated or stored argument
+     */
+    public static class Argument {
+
+	private final List<Statable> premises;
+	private final Statable conclusion;
+	private final boolean valid;
+	private final Proof proof;
+
+	Argument(List<Statable> premises, Statable conclusion, boolean valid,
+		Proof proof) {
+	    this.premises = Collections.unmodifiableList(premises);
+	    this.conclusion = conclusion;
+	    this.valid = valid;
+	    this.proof = proof;
+	}
+
+	public List<Statable> getPremises() {
+	    return premises;
+	}
+
+	public Statable getConclusion() {
+	    return conclusion;
+	}
+
+	/**
+	 * @return True if the conclusion follows from the premises
+	 */
+	public boolean isValid() {
+	    return valid;
+	}
+
+	/**
+	 * @return a proof of a valid argument, or null if it is invalid or was
+	 * read back from a file
+	 */
+	public Proof getProof() {
+	    return proof;
+	}
+
+	@Override
+	public String toString() {
+	    StringBuilder sb = new StringBuilder(valid ? VALID : INVALID);
+	    for (Statable premise : premises) {
+		sb.append('\n').append(premise);
+	    }
+	    return sb.append('\n').append(THEREFORE).append(conclusion).toString();
+	}
+    }
+
+    /**
+     * @param seed The seed all randomness is drawn from
+     */
+    public WorkloadGenerator(long seed) {
+	random = new Random(seed);
+    }
+
+    /**
+     * @param variables How many of the BaseFacts formulas may use
+     */
+    public void setVariables(int variables) {
+	this.variables = Math.max(1, Math.min(variables, BaseFact.values().length));
+    }
+
+    /**
+     * @param depth The deepest nesting of binary operators in a random formula
+     */
+    public void setDepth(int depth) {
+	this.depth = Math.max(0, depth);
+    }
+
+    /**
+     * @param premises The number of premises of every argument. Valid
+     * arguments may need more.
+     */
+    public void setPremises(int premises) {
+	this.premises = Math.max(1, premises);
+    }
+
+    /**
+     * @param steps The number of rule applications behind a valid argument
+     */
+    public void setSteps(int steps) {
+	this.steps = Math.max(1, steps);
+    }
+
+    /**
+     * @param negation The chance that a random formula is negated
+     */
+    public void setNegation(double negation) {
+	this.negation = negation;
+    }
+
+    /**
+     * @param invalidFraction The share of arguments that are invalid
+     */
+    public void setInvalidFraction(double invalidFraction) {
+	this.invalidFraction = invalidFraction;
+    }
+
+    /**
+     * Sets the relative weight of a binary operator in random formulas
+     *
+     * @param op AND, OR, COND or BICOND
+     * @param weight The weight, 0 to leave the operator out
+     */
+    public void setWeight(Operator op, double weight) {
+	for (int i = 0; i < BINARY.length; i++) {
+	    if (BINARY[i] == op) {
+		weights[i] = Math.max(0, weight);
+	    }
+	}
+    }
+
+    /**
+     * Generates the next argument
+     *
+     * @return The argument
+     */
+    public Argument next() {
+	Argument ret = null;
+	if (random.nextDouble() < invalidFraction) {
+	    ret = nextInvalid();
+	}
+	while (ret == null) {
+	    ret = nextValid();
+	}
+	return ret;
+    }
+
+    /**
+     * Reads arguments written by write()
+     *
+     * @param in The stream to read
+     * @return The arguments, without proofs
+     * @throws IOException The stream could not be read
+     * @throws StatementParsingException A formula could not be parsed
+     */
+    public static List<Argument> read(Reader in) throws IOException,
+	    StatementParsingException {
+	BufferedReader reader = new BufferedReader(in);
+	List<Argument> ret = new ArrayList<>();
+	List<Statable> premises = new ArrayList<>();
+	boolean valid = true;
+	String line;
+	while ((line = reader.readLine()) != null) {
+	    line = line.trim();
+	    if (line.isEmpty()) {
+		continue;
+	    } else if (line.startsWith("#")) {
+		valid = !line.equals(INVALID);
+	    } else if (line.startsWith(THEREFORE)) {
+		ret.add(new Argument(premises, Statement.parseString(
+			line.substring(THEREFORE.length())), valid, null));
+		premises = new ArrayList<>();
+		valid = true;
+	    } else {
+		premises.add(Statement.parseString(line));
+	    }
+	}
+	return ret;
+    }
+
+    /**
+     * Writes count arguments to arguments.txt in dir, and the proofs of the
+     * valid ones to proofs.txt in the ProofVerifier format
+     *
+     * @param dir The directory to write to, created if needed
+     * @param count The number of arguments
+     * @return The number of valid arguments written
+     * @throws IOException A file could not be written
+     */
+    public int write(File dir, int count) throws IOException {
+	if (!dir.isDirectory() && !dir.mkdirs()) {
+	    throw new IOException("Cannot create " + dir);
+	}
+	int valid = 0;
+	try (Writer arguments = new FileWriter(new File(dir, "arguments.txt"));
+		Writer proofs = new FileWriter(new File(dir, "proofs.txt"))) {
+	    for (int i = 0; i < count; i++) {
+		Argument a = next();
+		arguments.write(a + "\n\n");
+		if (a.getProof() != null) {
+		    proofs.write(a.getProof() + "\n\n");
+		    valid++;
+		}
+	    }
+	}
+	return valid;
+    }
+
+    /**
+     * Random premises and conclusion, kept once a counter-model turns up
+     */
+    private Argument nextInvalid() {
+	for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+	    List<Statable> prem = new ArrayList<>();
+	    for (int i = 0; i < premises; i++) {
+		prem.add(formula(depth));
+	    }
+	    Statable conclusion = formula(depth);
+	    try {
+		if (SatSolver.findCounterModel(prem, conclusion) != null) {
+		    return new Argument(prem, conclusion, false, null);
+		}
+	    } catch (InterruptedException ex) {
+		Thread.currentThread().interrupt();
+		return null;
+	    }
+	}
+	// Every attempt was valid, ie the settings only allow tautologies
+	return null;
+    }
+
+    /**
+     * Derives a conclusion forward from random premises
+     *
+     * @return The argument, or null if this attempt went nowhere
+     */
+    private Argument nextValid() {
+	List<ProofStep> lines = new ArrayList<>();
+	lines.add(new ProofStep(formula(depth)));
+	int derived = 0;
+	int limit = 4 * (1 << depth) + 4;
+	for (int attempt = 0; derived < steps && attempt < 4 * steps; attempt++) {
+	    // Mostly extend the latest fact so the derivation gets deep
+	    int line = random.nextInt(4) > 0 ? lines.size()
+		    : 1 + random.nextInt(lines.size());
+	    if (step(lines, line, limit)) {
+		derived++;
+	    }
+	}
+	if (derived == 0) {
+	    return null;
+	}
+	Statable conclusion = lines.get(lines.size() - 1).getFact();
+
+	// Distractors
+	int count = 0;
+	for (ProofStep s : lines) {
+	    count += s.isPremise() ? 1 : 0;
+	}
+	for (; count < premises; count++) {
+	    lines.add(new ProofStep(formula(depth)));
+	}
+
+	Proof proof = premisesFirst(lines, conclusion);
+	List<Statable> prem = new ArrayList<>();
+	for (ProofStep s : proof.getSteps()) {
+	    if (s.isPremise()) {
+		prem.add(s.getFact());
+	    }
+	}
+	try {
+	    ProofVerifier.Result check = new ProofVerifier(
+		    new StringReader(proof.toString())).next();
+	    if (!check.isValid() || !SatSolver.isValid(prem, conclusion)) {
+		return null;
+	    }
+	} catch (IOException ex) {
+	    return null;
+	} catch (InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	    return null;
+	}
+	return new Argument(prem, conclusion, true, proof);
+    }
+
+    /**
+     * Applies a random rule that fits the fact on the given line, adding
+     * the premises it needs
+     *
+     * @return True if a fact was derived, false otherwise
+     */
+    private boolean step(List<ProofStep> lines, int line, int limit) {
+	Statable x = lines.get(line - 1).getFact();
+	Operator op = x.getOperator();
+	List<Rule> options = new ArrayList<>();
+	options.add(Rule.MP);
+	options.add(Rule.CONJ);
+	if (op == Operator.AND) {
+	    options.add(Rule.SIMP);
+	} else if (op == Operator.COND) {
+	    options.add(Rule.HS);
+	    options.add(Rule.ABS);
+	} else if (op == Operator.NOT) {
+	    options.add(Rule.MT);
+	    options.add(Rule.DS);
+	} else if (op == Operator.OR) {
+	    options.add(Rule.CD);
+	}
+	Rule rule = options.get(random.nextInt(options.size()));
+
+	List<ProofStep> added = new ArrayList<>();
+	int next = lines.size() + 1;
+	Statable arg0, arg1 = null;
+	int[] refs;
+	switch (rule) {
+	    case MP:
+		arg0 = Statement.compose(Operator.COND, x, formula(depth - 1));
+		arg1 = x;
+		refs = new int[]{next, line};
+		break;
+	    case MT:
+		arg0 = Statement.compose(Operator.COND, formula(depth - 1),
+			x.getOperands()[0]);
+		arg1 = x;
+		refs = new int[]{next, line};
+		break;
+	    case DS:
+		arg0 = Statement.compose(Operator.OR, x.getOperands()[0],
+			formula(depth - 1));
+		arg1 = x;
+		refs = new int[]{next, line};
+		break;
+	    case HS:
+		arg0 = x;
+		arg1 = Statement.compose(Operator.COND, x.getOperands()[1],
+			formula(depth - 1));
+		refs = new int[]{line, next};
+		break;
+	    case CD:
+		arg0 = Statement.compose(Operator.AND,
+			Statement.compose(Operator.COND, x.getOperands()[0],
+				formula(depth - 1)),
+			Statement.compose(Operator.COND, x.getOperands()[1],
+				formula(depth - 1)));
+		arg1 = x;
+		refs = new int[]{next, line};
+		break;
+	    case CONJ:
+		int other = 1 + random.nextInt(lines.size());
+		arg0 = x;
+		arg1 = lines.get(other - 1).getFact();
+		refs = new int[]{line, other};
+		break;
+	    default:
+		// SIMP and ABS need nothing new
+		arg0 = x;
+		refs = new int[]{line};
+		break;
+	}
+	if (refs.length == 2 && (refs[0] == next || refs[1] == next)) {
+	    Statable premise = (refs[0] == next) ? arg0 : arg1;
+	    if (!isPortable(premise)) {
+		return false;
+	    }
+	    added.add(new ProofStep(premise));
+	}
+
+	Statable result;
+	try {
+	    result = rule.apply(arg0, arg1);
+	} catch (RuleFormatException ex) {
+	    return false;
+	}
+	if (Statement.size(result) > limit || !isPortable(result)) {
+	    return false;
+	}
+	lines.addAll(added);
+	lines.add(new ProofStep(result, rule, refs));
+	return true;
+    }
+
+    /**
+     * Moves the premises to the top of the proof and renumbers references
+     */
+    private static Proof premisesFirst(List<ProofStep> lines, Statable conclusion) {
+	int[] renumber = new int[lines.size() + 1];
+	List<ProofStep> ret = new ArrayList<>();
+	for (int pass = 0; pass < 2; pass++) {
+	    for (int line = 1; line <= lines.size(); line++) {
+		ProofStep s = lines.get(line - 1);
+		if (s.isPremise() != (pass == 0)) {
+		    continue;
+		}
+		if (s.isPremise()) {
+		    ret.add(s);
+		} else {
+		    int[] refs = s.getReferences().clone();
+		    for (int i = 0; i < refs.length; i++) {
+			refs[i] = renumber[refs[i]];
+		    }
+		    ret.add(new ProofStep(s.getFact(), s.getRule(), refs));
+		}
+		renumber[line] = ret.size();
+	    }
+	}
+	return new Proof(ret, conclusion);
+    }
+
+    /**
+     * Draws a random formula that prints the way it parses
+     */
+    private Statable formula(int maxDepth) {
+	while (true) {
+	    Statable s = randomFormula(Math.max(0, maxDepth));
+	    if (isPortable(s)) {
+		return s;
+	    }
+	}
+    }
+
+    private Statable randomFormula(int maxDepth) {
+	Statable s;
+	if (maxDepth == 0 || random.nextInt(3) == 0) {
+	    s = BaseFact.values()[random.nextInt(variables)];
+	} else {
+	    s = Statement.compose(pickOperator(), randomFormula(maxDepth - 1),
+		    randomFormula(maxDepth - 1));
+	}
+	return (random.nextDouble() < negation) ? Statement.negation(s) : s;
+    }
+
+    private Operator pickOperator() {
+	double total = 0;
+	for (double w : weights) {
+	    total += w;
+	}
+	double r = random.nextDouble() * total;
+	for (int i = 0; i < BINARY.length; i++) {
+	    r -= weights[i];
+	    if (r < 0) {
+		return BINARY[i];
+	    }
+	}
+	return Operator.AND;
+    }
+
+    /**
+     * Checks that Statement.parseString() reads s back as s
+     */
+    private static boolean isPortable(Statable s) {
+	String text = s.toString();
+	try {
+	    return Statement.parseString(text).toString().equals(text);
+	} catch (StatementParsingException | RuntimeException ex) {
+	    return false;
+	}
+    }
+
+    /**
+     * Writes a workload
+     *
+     * @param args The output directory followed by options: --seed,
+     * --count, --variables, --depth, --premises, --steps, --negation,
+     * --invalid and --weights, the last as four numbers for ^,V,->,&lt;->
+     * separated by commas
+     * @throws IOException A file could not be written
+     */
+    public static void main(String[] args) throws IOException {
+	if (args.length < 1 || args.length % 2 != 1) {
+	    System.err.println("Usage: WorkloadGenerator <directory> [--option value]...");
+	    return;
+	}
+	long seed = 1;
+	int count = 1000;
+	for (int i = 1; i < args.length; i += 2) {
+	    if (args[i].equals("--seed")) {
+		seed = Long.parseLong(args[i + 1]);
+	    } else if (args[i].equals("--count")) {
+		count = Integer.parseInt(args[i + 1]);
+	    }
+	}
+	WorkloadGenerator gen = new WorkloadGenerator(seed);
+	for (int i = 1; i < args.length; i += 2) {
+	    String value = args[i + 1];
+	    switch (args[i]) {
+		case "--seed":
+		case "--count":
+		    break;
+		case "--variables":
+		    gen.setVariables(Integer.parseInt(value));
+		    break;
+		case "--depth":
+		    gen.setDepth(Integer.parseInt(value));
+		    break;
+		case "--premises":
+		    gen.setPremises(Integer.parseInt(value));
+		    break;
+		case "--steps":
+		    gen.setSteps(Integer.parseInt(value));
+		    break;
+		case "--negation":
+		    gen.setNegation(Double.parseDouble(value));
+		    break;
+		case "--invalid":
+		    gen.setInvalidFraction(Double.parseDouble(value));
+		    break;
+		case "--weights":
+		    String[] w = value.split(",");
+		    for (int j = 0; j < w.length && j < BINARY.length; j++) {
+			gen.setWeight(BINARY[j], Double.parseDouble(w[j]));
+		    }
+		    break;
+		default:
+		    System.err.println("Unknown option " + args[i]);
+		    return;
+	    }
+	}
+	File dir = new File(args[0]);
+	int valid = gen.write(dir, count);
+	System.out.println("Wrote " + count + " arguments, " + valid
+		+ " valid, to " + dir);
+    }
+}
@@ -0,0 +1,49 @@
+package proofer;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ *
+ * @author Ryan Kenney
+ */
+public class FactBaseTest {
+
+    /**
+     * From (x)(Ey)Lxy, UI and EI give Lxa, where a was picked for x. UG on x
+     * would turn that into (x)Lxa and EG into (Ey)(x)Lxy, the quantifier
+     * shift fallacy.
+     */
+    @Test
+    public void universalGeneralizationRefusesVariableFreeInEI()
+	    throws Exception {
+	FactBase fb = new FactBase();
+	fb.add(FirstOrderParser.parse("(x)(Ey)Lxy"));
+	fb.setConclusion(FirstOrderParser.parse("(Ey)(x)Lxy"));
+	assertTrue(fb.instantiate(Rule.UI, 1, Term.of('x')));
+	assertTrue(fb.instantiate(Rule.EI, 2, Term.of('a')));
+	try {
+	    fb.generalize(Rule.UG, 3, Term.of('x'), Term.of('x'));
+	    fail("UG generalized a variable free in a line obtained by EI");
+	} catch (RuleFormatException ex) {
+	    // Expected
+	}
+	assertFalse(fb.contains(FirstOrderParser.parse("(x)Lxa")));
+	assertFalse(fb.contains(fb.getConclusion()));
+    }
+
+    @Test
+    public void universalGeneralizationOfArbitraryVariable() throws Exception {
+	FactBase fb = new FactBase();
+	fb.add(FirstOrderParser.parse("(x)(Fx -> Gx)"));
+	fb.add(FirstOrderParser.parse("(x)Fx"));
+	assertTrue(fb.instantiate(Rule.UI, 1, Term.of('y')));
+	assertTrue(fb.instantiate(Rule.UI, 2, Term.of('y')));
+	fb.add(Rule.MP.doRule(fb.getValues("3"), fb.getValues("4"), false),
+		Rule.MP, new int[]{3, 4}, null);
+	assertTrue(fb.generalize(Rule.UG, 5, Term.of('y'), Term.of('x')));
+	assertTrue(fb.contains(FirstOrderParser.parse("(x)Gx")));
+    }
+}
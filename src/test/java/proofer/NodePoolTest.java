@@ -0,0 +1,151 @@
+package proofer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Ryan Kenney
+ */
+public class NodePoolTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+	dir = Files.createTempDirectory("proofer-pool").toFile();
+    }
+
+    @After
+    public void tearDown() {
+	for (File f : dir.listFiles()) {
+	    f.delete();
+	}
+	dir.delete();
+    }
+
+    @Test
+    public void heapPoolInternsNodes() throws Exception {
+	checkInterning(new NodePool());
+    }
+
+    @Test
+    public void offHeapPoolInternsNodes() throws Exception {
+	NodePool pool = NodePool.offHeap(8);
+	try {
+	    checkInterning(pool);
+	} finally {
+	    pool.close();
+	}
+    }
+
+    /**
+     * Builds past the initial capacity so the off-heap buffers have to grow
+     */
+    private static void checkInterning(NodePool pool) throws Exception {
+	int p = pool.atom(BaseFact.P);
+	int q = pool.atom(BaseFact.Q);
+	int cond = pool.node(Operator.COND, p, q);
+	assertEquals(p, pool.atom(BaseFact.P));
+	assertEquals(cond, pool.node(Operator.COND, p, q));
+	assertEquals(cond, pool.intern(Statement.parseString("(p -> q)")));
+	assertNotEquals(cond, pool.node(Operator.COND, q, p));
+
+	int id = p;
+	for (int i = 0; i < 100; i++) {
+	    id = pool.not(id);
+	}
+	int size = pool.size();
+	int again = p;
+	for (int i = 0; i < 100; i++) {
+	    again = pool.not(again);
+	}
+	assertEquals(id, again);
+	assertEquals(size, pool.size());
+	assertEquals(q, pool.apply(Rule.MP, cond, p));
+    }
+
+    /**
+     * A mapped pool reopened from its file has the same nodes and facts, and
+     * building a node it already holds finds the old id instead of adding one
+     */
+    @Test
+    public void mappedPoolSurvivesReopen() throws Exception {
+	File file = new File(dir, "nodes.pool");
+	NodePool pool = NodePool.open(file);
+	int p, cond, deep, size;
+	try {
+	    p = pool.atom(BaseFact.P);
+	    cond = pool.intern(Statement.parseString("(p -> q)"));
+	    int q = pool.apply(Rule.MP, cond, p);
+	    assertEquals(1, pool.addFact(cond));
+	    assertEquals(2, pool.addFact(p));
+	    assertEquals(3, pool.addFact(q));
+	    assertEquals(0, pool.addFact(p));
+	    // Past the 1024 nodes the file is first mapped with
+	    deep = q;
+	    for (int i = 0; i < 2000; i++) {
+		deep = pool.not(deep);
+	    }
+	    size = pool.size();
+	} finally {
+	    pool.close();
+	}
+
+	pool = NodePool.open(file);
+	try {
+	    assertEquals(size, pool.size());
+	    assertEquals(3, pool.factCount());
+	    assertEquals(cond, pool.fact(1));
+	    assertEquals(p, pool.fact(2));
+	    assertEquals(2, pool.lineOf(p));
+	    assertEquals("(p -> q)", pool.toString(pool.fact(1)));
+	    assertEquals(cond, pool.intern(Statement.parseString("(p -> q)")));
+	    assertEquals(pool.fact(3), pool.apply(Rule.MP, cond, p));
+	    int again = pool.fact(3);
+	    for (int i = 0; i < 2000; i++) {
+		again = pool.not(again);
+	    }
+	    assertEquals(deep, again);
+	    assertEquals(size, pool.size());
+	    assertEquals(4, pool.addFact(pool.atom(BaseFact.R)));
+	} finally {
+	    pool.close();
+	}
+    }
+
+    @Test
+    public void verifierChecksProofsInOffHeapPool() throws Exception {
+	String proofs = "1\t(p -> q)\tPremise\n"
+		+ "2\tp\tPremise\n"
+		+ "3\tq\tMP 1,2\n"
+		+ "Therefore q\n"
+		+ "\n"
+		+ "1\t(p -> q)\tPremise\n"
+		+ "2\tq\tPremise\n"
+		+ "3\tp\tMP 1,2\n"
+		+ "Therefore p\n";
+	NodePool pool = NodePool.offHeap(8);
+	try {
+	    ProofVerifier verifier = new ProofVerifier(
+		    new StringReader(proofs), pool);
+	    assertTrue(verifier.next().isValid());
+	    ProofVerifier.Result rejected = verifier.next();
+	    assertEquals(2, rejected.getProof());
+	    assertFalse(rejected.isValid());
+	    assertNull(verifier.next());
+	} finally {
+	    pool.close();
+	}
+    }
+}
@@ -0,0 +1,76 @@
+package proofer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Ryan Kenney
+ */
+public class SessionJournalTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+	dir = Files.createTempDirectory("proofer-journal").toFile();
+    }
+
+    @After
+    public void tearDown() {
+	for (File f : dir.listFiles()) {
+	    f.delete();
+	}
+	dir.delete();
+    }
+
+    /**
+     * Switching to canonical equality keeps (p ^ q) and (q ^ p) on their own
+     * lines, so a restart must bring both back at the same numbers, or every
+     * line after them would shift.
+     */
+    @Test
+    public void snapshotKeepsLinesOfCanonicalDuplicates() throws Exception {
+	FactBase fb = new FactBase();
+	fb.add(Statement.parseString("(p ^ q)"));
+	fb.add(Statement.parseString("(q ^ p)"));
+	fb.setCanonicalEquality(true);
+	fb.add(Statement.parseString("r"));
+	fb.setConclusion(Statement.parseString("(r ^ p)"));
+
+	File file = new File(dir, "session.journal");
+	SessionJournal journal = new SessionJournal(file);
+	try {
+	    journal.recover(new FactBase());
+	    journal.snapshot(fb);
+	} finally {
+	    journal.close();
+	}
+
+	FactBase restored = new FactBase();
+	journal = new SessionJournal(file);
+	try {
+	    List<SessionJournal.Entry> entries = journal.recover(restored);
+	    assertTrue(entries.isEmpty());
+	} finally {
+	    journal.close();
+	}
+
+	assertTrue(restored.isCanonicalEquality());
+	assertEquals(fb.toProof().toString(), restored.toProof().toString());
+	for (int line = 1; line <= 3; line++) {
+	    assertEquals(fb.get(line).toString(), restored.get(line).toString());
+	}
+	assertEquals(Integer.valueOf(1),
+		restored.lineOf(Statement.parseString("(q ^ p)")));
+	assertEquals(Integer.valueOf(3),
+		restored.lineOf(Statement.parseString("r")));
+    }
+}